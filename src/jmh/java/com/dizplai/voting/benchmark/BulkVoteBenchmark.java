@@ -0,0 +1,76 @@
+package com.dizplai.voting.benchmark;
+
+import com.dizplai.voting.VotingApiApplication;
+import com.dizplai.voting.model.BulkVoteRequest;
+import com.dizplai.voting.model.BulkVoteResponse;
+import com.dizplai.voting.model.PollRequest;
+import com.dizplai.voting.model.VoteRequest;
+import com.dizplai.voting.service.BulkVoteService;
+import com.dizplai.voting.service.VoteService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to cast 100000 votes in one bulk request through BulkVoteService against an embedded in-memory H2, as
+ * ballots or as counts by option. Scores are milliseconds per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class BulkVoteBenchmark {
+    private static final String[] OPTIONS = {"Manchester City", "Arsenal", "Liverpool"};
+    private static final int VOTES = 100_000;
+
+    @Param({"ballots", "counts"})
+    public String payload;
+
+    private ConfigurableApplicationContext context;
+    private BulkVoteService bulkVoteService;
+    private long pollId;
+    private BulkVoteRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(VotingApiApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID(),
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--logging.level.root=WARN");
+        bulkVoteService = context.getBean(BulkVoteService.class);
+        pollId = context.getBean(VoteService.class)
+                .createPoll(new PollRequest("Who will win the Premier League?", List.of(OPTIONS)));
+
+        if ("counts".equals(payload)) {
+            request = BulkVoteRequest.builder()
+                    .counts(Map.of(OPTIONS[0], 50_000L, OPTIONS[1], 30_000L, OPTIONS[2], 20_000L))
+                    .build();
+        } else {
+            List<VoteRequest> ballots = new ArrayList<>(VOTES);
+            for (int i = 0; i < VOTES; i++) {
+                ballots.add(new VoteRequest(OPTIONS[i % OPTIONS.length], null));
+            }
+            request = BulkVoteRequest.builder().ballots(ballots).build();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BulkVoteResponse castVotes() {
+        return bulkVoteService.castVotes(pollId, request);
+    }
+}
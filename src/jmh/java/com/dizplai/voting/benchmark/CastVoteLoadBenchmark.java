@@ -0,0 +1,99 @@
+package com.dizplai.voting.benchmark;
+
+import com.dizplai.voting.VotingApiApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for a burst of concurrent clients to each cast a vote over HTTP, with the requests served on the Tomcat
+ * pool of platform threads or on virtual threads. Every client has its own connection, so the process needs
+ * two file descriptors per client e.g. ulimit -n 110000 for 50000 clients.
+ * Scores are seconds per burst; votes a second are clients / score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class CastVoteLoadBenchmark {
+    @Param({"false", "true"})
+    public boolean virtual;
+
+    @Param({"1000", "10000", "50000"})
+    public int clients;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest vote;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(VotingApiApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--server.tomcat.max-connections=" + (clients + 100),
+                        "--server.tomcat.accept-count=" + clients,
+                        "--spring.threads.virtual.enabled=" + virtual,
+                        "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID(),
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--logging.level.root=WARN");
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofMinutes(1))
+                .build();
+        String poll = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/poll"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "{\"question\": \"Who will win the Premier League?\", \"options\": [\"Arsenal\", \"Liverpool\"]}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        vote = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/poll/" + poll + "/vote"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"voteCast\": \"Arsenal\"}"))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        List<Future<HttpResponse<Void>>> responses = new ArrayList<>(clients);
+        try (ExecutorService burst = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                responses.add(burst.submit(() -> client.send(vote, HttpResponse.BodyHandlers.discarding())));
+            }
+        }
+        int failed = 0;
+        for (Future<HttpResponse<Void>> response : responses) {
+            if (response.get().statusCode() != 200) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " of " + clients + " votes failed");
+        }
+        return clients;
+    }
+}
@@ -0,0 +1,69 @@
+package com.dizplai.voting.benchmark;
+
+import com.dizplai.voting.VotingApiApplication;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.repository.VoteRepository;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput of ballots for a range of vote_seq allocation sizes. The database is an in-memory H2
+ * reached through its TCP server, so that every call to the sequence is a network round trip as it is
+ * with a database server. An allocation size of 1 calls the sequence for every insert.
+ * Scores are ballots inserted per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdGenerationBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"1", "50", "500"})
+    public int allocationSize;
+
+    private Server server;
+    private ConfigurableApplicationContext context;
+    private VoteRepository voteRepository;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        context = new SpringApplicationBuilder(VotingApiApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:" + UUID.randomUUID(),
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--logging.level.root=WARN",
+                        "--voting.id.allocation-size.vote_seq=" + allocationSize);
+        voteRepository = context.getBean(VoteRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        server.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Vote> insertBatch() {
+        List<Vote> votes = new ArrayList<>(BATCH_SIZE);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            votes.add(Vote.builder().poll(1).option("Arsenal").castOn(now).build());
+        }
+        return voteRepository.saveAllAndFlush(votes);
+    }
+}
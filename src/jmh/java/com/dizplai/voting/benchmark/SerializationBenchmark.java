@@ -0,0 +1,61 @@
+package com.dizplai.voting.benchmark;
+
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.model.VoteResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing the response bodies with Jackson: the vote distribution of a poll of 3 options and a page
+ * of the ballots of a poll. Run with -prof gc for the allocation rate.
+ * Scores are nanoseconds per body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"100"})
+    public int pageSize;
+
+    private ObjectMapper mapper;
+    private List<OptionResponse> distribution;
+    private VoteResponse page;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // the defaults of the application's mapper e.g. dates as ISO-8601 text
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        distribution = List.of(
+                OptionResponse.builder().option("Liverpool").count("23.08%").poll("1").build(),
+                OptionResponse.builder().option("Manchester City").count("76.92%").poll("1").build(),
+                OptionResponse.builder().option("Arsenal").count("0%").poll("1").build());
+
+        List<Vote> votes = new ArrayList<>(pageSize);
+        LocalDateTime castOn = LocalDateTime.of(2024, 10, 6, 12, 24, 41, 154181000);
+        for (int i = 0; i < pageSize; i++) {
+            votes.add(Vote.builder().id(i + 1L).poll(1).optionId(1L).option("Arsenal").castOn(castOn.plusSeconds(i)).build());
+        }
+        page = VoteResponse.builder().votes(votes).next((long) pageSize).build();
+    }
+
+    @Benchmark
+    public byte[] distribution() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(distribution);
+    }
+
+    @Benchmark
+    public byte[] ballotPage() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(page);
+    }
+}
@@ -0,0 +1,96 @@
+package com.dizplai.voting.benchmark;
+
+import com.dizplai.voting.VotingApiApplication;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.repository.VoteRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read latency of the vote lookups of a single poll, with and without the indexes declared on Vote. The
+ * vote table is filled with the given number of rows spread evenly over the given number of polls, each
+ * poll having 5 options. Every invocation reads a randomly chosen poll.
+ * Scores are milliseconds per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class VoteIndexBenchmark {
+    private static final int OPTIONS = 5;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    @Param("2000000")
+    public int rows;
+
+    @Param("200")
+    public int polls;
+
+    private ConfigurableApplicationContext context;
+    private VoteRepository voteRepository;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(VotingApiApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID(),
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--logging.level.root=WARN");
+        voteRepository = context.getBean(VoteRepository.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        if (!indexed) {
+            jdbcTemplate.execute("drop index idx_vote_poll");
+            jdbcTemplate.execute("drop index idx_vote_poll_option");
+            jdbcTemplate.execute("drop index idx_vote_poll_cast_on");
+        }
+        jdbcTemplate.update(("insert into vote (id, poll, option_id, cast_on) " +
+                "select x, mod(x, %1$d) + 1, mod(x / %1$d, %2$d) + 1, dateadd(millisecond, x, timestamp '2024-10-06 12:00:00') " +
+                "from system_range(1, %3$d)").formatted(polls, OPTIONS, rows));
+        jdbcTemplate.execute("analyze");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private long poll() {
+        return ThreadLocalRandom.current().nextLong(polls) + 1;
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> countByOption() {
+        return jdbcTemplate.queryForList("select option_id, count(*) from vote where poll = ? group by option_id", poll());
+    }
+
+    @Benchmark
+    public List<Vote> findVotesByPoll() {
+        return voteRepository.findVotesByPoll(poll());
+    }
+
+    @Benchmark
+    public List<Vote> firstPageById() {
+        return voteRepository.findByPollAndIdGreaterThanOrderById(poll(), 0, PageRequest.ofSize(100)).getContent();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> pageByCastOn() {
+        return jdbcTemplate.queryForList("select id, option_id, cast_on from vote where poll = ? order by poll, cast_on limit 100", poll());
+    }
+}
@@ -0,0 +1,90 @@
+package com.dizplai.voting.benchmark;
+
+import com.dizplai.voting.VotingApiApplication;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.PollRequest;
+import com.dizplai.voting.service.VoteService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency of casting a vote through VoteService with the ballots written behind, with votes cast at a steady
+ * rate (10k votes a second by default), under three logging setups, see logback-spring.xml:
+ * 1. sync - every vote logged at INFO straight to the console by the request thread, as before
+ * 2. async - the same lines, handed to the console by the async appender
+ * 3. sampled - the defaults, vote lines at DEBUG and one structured line for 1% of the votes
+ * Scores are microseconds per vote, sampled so the percentiles show the stalls on the console. The wait for
+ * the next vote is not measured, and leaves the CPU to the ballot writer and the log appender.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class VoteLoggingBenchmark {
+    private static final String[] OPTIONS = {"Manchester City", "Arsenal", "Liverpool"};
+
+    @Param({"sync", "async", "sampled"})
+    public String logging;
+
+    @Param({"10000"})
+    public int votesPerSecond;
+
+    private ConfigurableApplicationContext context;
+    private VoteService voteService;
+    private long pollId;
+    private long interval;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID(),
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--voting.write-behind.enabled=true"));
+        if (!"sampled".equals(logging)) {
+            // the vote lines were logged at INFO before they were moved to DEBUG
+            args.add("--logging.level.com.dizplai.voting=DEBUG");
+        }
+        if ("sync".equals(logging)) {
+            args.add("--spring.profiles.active=sync-logging");
+        }
+        context = new SpringApplicationBuilder(VotingApiApplication.class).run(args.toArray(String[]::new));
+        voteService = context.getBean(VoteService.class);
+        pollId = voteService.createPoll(new PollRequest("Who will win the Premier League?", List.of(OPTIONS)));
+        interval = TimeUnit.SECONDS.toNanos(1) / votesPerSecond;
+        next = System.nanoTime();
+    }
+
+    @Setup(Level.Invocation)
+    public void pace() {
+        next += interval;
+        long wait = next - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        } else if (wait < -TimeUnit.SECONDS.toNanos(1)) {
+            // too far behind to catch up, start again from now rather than casting a burst
+            next = System.nanoTime();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<OptionResponse> castVote() {
+        return voteService.castVote(pollId, OPTIONS[ThreadLocalRandom.current().nextInt(OPTIONS.length)]);
+    }
+}
@@ -0,0 +1,43 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of the ballot log, see LogBallotStore and BallotLog.
+ * 1. enabled - append the ballots to the log and feed them to the data store in the background, instead of
+ *    saving them in the data store with the vote. Takes the place of voting.write-behind.enabled
+ * 2. directory - where the segment files of the log are kept
+ * 3. segmentSize - the size of a segment file, a multiple of the 128 byte record e.g. 64MB is 524288 ballots
+ * 4. fsync - group, a vote returns once its ballot is written to the disk, with the ballots appended meanwhile
+ *    in the same write. interval, a vote returns once its ballot is in the file and the file is written to the
+ *    disk every sync-interval - a ballot cast since is lost if the machine, not only the application, stops
+ * 5. syncInterval - how often the log is written to the disk with fsync=interval
+ * 6. batchSize - the most ballots fed to the data store in one transaction
+ * 7. feedInterval - how long the feeder waits for ballots when the log is fed up to its end
+ *
+ * @param enabled
+ * @param directory
+ * @param segmentSize
+ * @param fsync
+ * @param syncInterval
+ * @param batchSize
+ * @param feedInterval
+ */
+@ConfigurationProperties(prefix = "voting.ballot-log")
+public record BallotLogProperties(@DefaultValue("false") boolean enabled,
+                                  @DefaultValue("data/ballots") Path directory,
+                                  @DefaultValue("64MB") DataSize segmentSize,
+                                  @DefaultValue("group") Fsync fsync,
+                                  @DefaultValue("1s") Duration syncInterval,
+                                  @DefaultValue("1000") int batchSize,
+                                  @DefaultValue("50ms") Duration feedInterval) {
+    public enum Fsync {
+        GROUP,
+        INTERVAL
+    }
+}
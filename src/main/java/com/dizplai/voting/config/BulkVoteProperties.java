@@ -0,0 +1,18 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of casting votes in bulk, see BulkVoteService.
+ * 1. maxVotes - the most votes in a request, the counts and the ballots together. The votes of a request are
+ *    held in memory until they are saved, about 200 bytes each
+ * 2. batchSize - the votes sent to the data store in one JDBC batch
+ *
+ * @param maxVotes
+ * @param batchSize
+ */
+@ConfigurationProperties(prefix = "voting.bulk")
+public record BulkVoteProperties(@DefaultValue("100000") int maxVotes,
+                                 @DefaultValue("5000") int batchSize) {
+}
@@ -0,0 +1,16 @@
+package com.dizplai.voting.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The caches of the application, backed by Caffeine, see spring.cache.caffeine.spec. Hit and miss counts are
+ * published as the cache.gets metric.
+ * 1. polls - the detail of a poll keyed by its identity, see VoteService.getPoll. Put when a poll is created
+ *    and warmed at startup when voting.poll-cache.warm-up is set. Votes do not change the options of a poll.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableCaching
+public class CacheConfig {
+    public static final String POLLS = "polls";
+}
@@ -0,0 +1,36 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings of the instances that serve the same polls, see TallyExchange.
+ * 1. nodeId - names the instance, unique amongst the instances and the same across restarts e.g. voting-api-1.
+ *    The votes of an instance are counted under its name, see PollOptionTally
+ * 2. enabled - exchange the tallies with the peers, so every instance serves the votes cast on all of them
+ * 3. peers - the base URLs of the other instances e.g. http://voting-api-2:8080
+ * 4. exchangeInterval - how often the tallies changed are sent to the peers, the most a result lags the votes
+ *    of a peer while it is reachable
+ * 5. fullStateInterval - how often every tally is sent, so a peer that missed a change or started since
+ *    catches up
+ * 6. secret - sent with the tallies and required of the tallies received, as a peer can set any count
+ *
+ * @param nodeId
+ * @param enabled
+ * @param peers
+ * @param exchangeInterval
+ * @param fullStateInterval
+ * @param secret
+ */
+@ConfigurationProperties(prefix = "voting.cluster")
+public record ClusterProperties(@DefaultValue("local") String nodeId,
+                                @DefaultValue("false") boolean enabled,
+                                @DefaultValue List<URI> peers,
+                                @DefaultValue("1s") Duration exchangeInterval,
+                                @DefaultValue("30s") Duration fullStateInterval,
+                                @DefaultValue("") String secret) {
+}
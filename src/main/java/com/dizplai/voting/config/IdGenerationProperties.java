@@ -0,0 +1,20 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Settings of the sequences the entity identities are generated from, see PooledSequenceGenerator.
+ * 1. optimizer - the Hibernate optimizer of the sequences e.g. pooled-lo, pooled or none
+ * 2. allocationSize - the number of identities reserved per call, keyed by sequence name e.g. vote_seq=500.
+ *    The increment of an existing sequence has to be altered to match before the value is changed.
+ *
+ * @param optimizer
+ * @param allocationSize
+ */
+@ConfigurationProperties(prefix = "voting.id")
+public record IdGenerationProperties(@DefaultValue("pooled-lo") String optimizer,
+                                     Map<String, Integer> allocationSize) {
+}
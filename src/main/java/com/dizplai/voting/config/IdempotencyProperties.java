@@ -0,0 +1,25 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the deduplication of retried votes, see IdempotencyIndex.
+ * 1. window - how long the result of a vote is kept for its retries, and a key remembered by the Bloom filter
+ * 2. expectedKeys - the keys expected in a window, sizes the Bloom filter
+ * 3. falsePositiveRate - the rate of new keys that are looked up in the data store once the window is full
+ * 4. cacheSize - the most results kept for retries, the oldest are evicted first
+ *
+ * @param window
+ * @param expectedKeys
+ * @param falsePositiveRate
+ * @param cacheSize
+ */
+@ConfigurationProperties(prefix = "voting.idempotency")
+public record IdempotencyProperties(@DefaultValue("10m") Duration window,
+                                    @DefaultValue("1000000") int expectedKeys,
+                                    @DefaultValue("0.01") double falsePositiveRate,
+                                    @DefaultValue("100000") int cacheSize) {
+}
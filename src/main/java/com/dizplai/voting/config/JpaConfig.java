@@ -0,0 +1,21 @@
+package com.dizplai.voting.config;
+
+import com.dizplai.voting.model.PooledSequenceGenerator;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JpaConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer idGenerationCustomizer(IdGenerationProperties properties) {
+        return hibernateProperties -> {
+            hibernateProperties.put(PooledSequenceGenerator.OPTIMIZER_SETTING, properties.optimizer());
+            if (properties.allocationSize() != null) {
+                properties.allocationSize().forEach((sequence, size) ->
+                        hibernateProperties.put(PooledSequenceGenerator.ALLOCATION_SIZE_SETTING + sequence, size));
+            }
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the application logs, see logback-spring.xml.
+ * 1. queueSize - the log events that can wait for the console before new ones are dropped
+ * 2. voteSampleRate - the share of votes logged to the com.dizplai.voting.vote logger, between 0 and 1
+ *
+ * @param queueSize
+ * @param voteSampleRate
+ */
+@ConfigurationProperties(prefix = "voting.logging")
+public record LoggingProperties(@DefaultValue("8192") int queueSize,
+                                @DefaultValue("0.01") double voteSampleRate) {
+}
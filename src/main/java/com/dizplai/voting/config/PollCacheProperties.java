@@ -0,0 +1,18 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the poll detail cache warm-up, see PollCacheWarmer. The size and eviction of the cache are set
+ * with spring.cache.caffeine.spec.
+ * 1. warmUp - load the most recent open polls into the cache when the application starts
+ * 2. warmUpLimit - the most polls loaded, keep it below the maximum size of the cache
+ *
+ * @param warmUp
+ * @param warmUpLimit
+ */
+@ConfigurationProperties(prefix = "voting.poll-cache")
+public record PollCacheProperties(@DefaultValue("false") boolean warmUp,
+                                  @DefaultValue("10000") int warmUpLimit) {
+}
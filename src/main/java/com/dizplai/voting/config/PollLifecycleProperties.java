@@ -0,0 +1,26 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of closing polls, see PollLifecycleService.
+ * 1. archiveDirectory - where the ballots of closed polls are kept, a compressed file per poll. Instances serving
+ *    the same polls share the directory, a poll is archived by one of them
+ * 2. compactionDelay - how long after its closing time a poll is compacted, so the ballots queued or written
+ *    behind before it closed are stored first, see voting.write-behind and voting.ballot-log
+ * 3. checkInterval - how often the polls past their closing time are looked for. The polls closed on another
+ *    instance stop accepting votes here within this interval
+ *
+ * @param archiveDirectory
+ * @param compactionDelay
+ * @param checkInterval
+ */
+@ConfigurationProperties(prefix = "voting.polls")
+public record PollLifecycleProperties(@DefaultValue("data/archive") Path archiveDirectory,
+                                      @DefaultValue("1m") Duration compactionDelay,
+                                      @DefaultValue("10s") Duration checkInterval) {
+}
@@ -0,0 +1,17 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the cached results served by /votes, /options and /{pollId}, see ResultSnapshotService.
+ * 1. maxAge - how long a client or a CDN may serve a result before revalidating it with its ETag. A
+ *    revalidated result that has not changed is answered with 304 and no body.
+ *
+ * @param maxAge
+ */
+@ConfigurationProperties(prefix = "voting.results")
+public record ResultProperties(@DefaultValue("1s") Duration maxAge) {
+}
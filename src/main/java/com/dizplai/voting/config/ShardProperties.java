@@ -0,0 +1,30 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the vote shards, see VoteShards.
+ * 1. enabled - store the ballots in the shards instead of the vote table of the main data store
+ * 2. count - the number of shards. A poll is stored in the shard its identity hashes to, so the count cannot
+ *    change once ballots are stored
+ * 3. url - the JDBC URL of a shard, {shard} is replaced by the number of the shard e.g.
+ *    jdbc:h2:file:D:/data/shards/vote-{shard} for a database per shard
+ * 4. username and password - of every shard
+ * 5. poolSize - the most connections kept to each shard
+ *
+ * @param enabled
+ * @param count
+ * @param url
+ * @param username
+ * @param password
+ * @param poolSize
+ */
+@ConfigurationProperties(prefix = "voting.shards")
+public record ShardProperties(@DefaultValue("false") boolean enabled,
+                              @DefaultValue("4") int count,
+                              @DefaultValue("jdbc:h2:file:./data/shards/vote-{shard}") String url,
+                              @DefaultValue("sa") String username,
+                              @DefaultValue("") String password,
+                              @DefaultValue("10") int poolSize) {
+}
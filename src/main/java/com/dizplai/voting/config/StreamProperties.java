@@ -0,0 +1,15 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the live vote distribution feed, see TallyBroadcaster.
+ * 1. maxRate - the most updates a second sent to the viewers of a poll. Votes cast between two updates are
+ *    sent together in the next one.
+ *
+ * @param maxRate
+ */
+@ConfigurationProperties(prefix = "voting.stream")
+public record StreamProperties(@DefaultValue("4") double maxRate) {
+}
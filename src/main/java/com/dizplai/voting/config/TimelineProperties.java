@@ -0,0 +1,21 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the vote timelines, see VoteTimeline.
+ * 1. buckets - the buckets of each width kept in memory for a poll, the most recent ones. Older buckets are read
+ *    from poll_timeline e.g. 120 keeps 20 minutes of 10s, 2 hours of 1m and 5 days of 1h buckets
+ * 2. flushInterval - how often the votes counted in memory are added to poll_timeline. The votes counted since
+ *    are missing from the history if the application stops
+ *
+ * @param buckets
+ * @param flushInterval
+ */
+@ConfigurationProperties(prefix = "voting.timeline")
+public record TimelineProperties(@DefaultValue("120") int buckets,
+                                 @DefaultValue("10s") Duration flushInterval) {
+}
@@ -0,0 +1,64 @@
+package com.dizplai.voting.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Settings applied when requests are served on virtual threads, see spring.threads.virtual.enabled.
+ * H2 waits for a row lock with Object.wait inside a synchronized block, which pins a virtual thread to its
+ * carrier. Votes for the same option wait on the same poll_option_tally row, so with more connections than
+ * carriers every carrier can be pinned by a waiting vote while the vote holding the lock has none to commit
+ * on. The connection pool is capped at the number of carriers so a connection holder can always run.
+ * Requests beyond the pool wait in arrival order for a connection, see ConnectionLimitingDataSource.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadsConfig {
+    static final String PARALLELISM = "jdk.virtualThreadScheduler.parallelism";
+
+    @Bean
+    public static BeanPostProcessor connectionPoolLimit() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource) {
+                    int carriers = Integer.getInteger(PARALLELISM, Runtime.getRuntime().availableProcessors());
+                    if (dataSource.getMaximumPoolSize() > carriers) {
+                        log.info("Capping connection pool at {} connections, the number of virtual thread carriers. " +
+                                "Set -D{} to raise it", carriers, PARALLELISM);
+                        dataSource.setMaximumPoolSize(carriers);
+                    }
+                    return new ConnectionLimitingDataSource(dataSource, dataSource.getMaximumPoolSize(),
+                            dataSource.getConnectionTimeout());
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Publish the number of requests waiting for a connection as voting.datasource.waiting. They wait before
+     * the pool in this mode, so hikaricp.connections.pending stays low while the pool is saturated.
+     */
+    @Bean
+    public MeterBinder connectionLimitMetrics(ObjectProvider<DataSource> dataSource) {
+        return registry -> {
+            if (dataSource.getIfAvailable() instanceof ConnectionLimitingDataSource limited) {
+                Gauge.builder("voting.datasource.waiting", limited, ConnectionLimitingDataSource::getWaiting)
+                        .description("Requests waiting for a connection")
+                        .register(registry);
+            }
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of the voters of the polls that allow one vote per voter, see VoterRegistry.
+ * 1. directory - where the voters of each poll are kept, a file per poll
+ * 2. initialCapacity - the slots of a new file, 8 bytes each. The file doubles when it is 70% full
+ * 3. syncInterval - how often the files are written to the disk. A vote cast since may be cast again if the
+ *    machine, not only the application, stops
+ *
+ * @param directory
+ * @param initialCapacity
+ * @param syncInterval
+ */
+@ConfigurationProperties(prefix = "voting.voters")
+public record VoterProperties(@DefaultValue("data/voters") Path directory,
+                              @DefaultValue("65536") int initialCapacity,
+                              @DefaultValue("1s") Duration syncInterval) {
+}
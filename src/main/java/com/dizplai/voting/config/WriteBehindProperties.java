@@ -0,0 +1,32 @@
+package com.dizplai.voting.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the write-behind ballot persistence, see WriteBehindBallotStore.
+ * 1. enabled - queue the ballots and save them in batches instead of one transaction per vote
+ * 2. queueCapacity - the number of ballots that can wait to be written
+ * 3. maxBatchSize - the most ballots saved in one transaction
+ * 4. flushInterval - the longest a ballot waits for a batch to fill before it is written
+ * 5. backpressure - what a vote does when the queue is full, wait for space or fail with 503
+ *
+ * @param enabled
+ * @param queueCapacity
+ * @param maxBatchSize
+ * @param flushInterval
+ * @param backpressure
+ */
+@ConfigurationProperties(prefix = "voting.write-behind")
+public record WriteBehindProperties(@DefaultValue("false") boolean enabled,
+                                    @DefaultValue("100000") int queueCapacity,
+                                    @DefaultValue("1000") int maxBatchSize,
+                                    @DefaultValue("50ms") Duration flushInterval,
+                                    @DefaultValue("block") Backpressure backpressure) {
+    public enum Backpressure {
+        BLOCK,
+        REJECT
+    }
+}
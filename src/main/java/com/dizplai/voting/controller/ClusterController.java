@@ -0,0 +1,55 @@
+package com.dizplai.voting.controller;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.model.TallyDelta;
+import com.dizplai.voting.tally.TallyExchange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Receives the tallies of the peers, see TallyExchange. Only served when voting.cluster.enabled is set, and
+ * only to requests with the voting.cluster.secret, as the tallies sent set the counts of the polls.
+ */
+@RestController
+@RequestMapping("/api/v1/cluster")
+@ConditionalOnProperty(prefix = "voting.cluster", name = "enabled", havingValue = "true")
+@Slf4j
+public class ClusterController {
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private final TallyExchange tallyExchange;
+    private final byte[] secret;
+
+    public ClusterController(TallyExchange tallyExchange, ClusterProperties properties) {
+        if (properties.secret().isBlank()) {
+            throw new IllegalStateException("voting.cluster.secret is required to exchange tallies");
+        }
+        this.tallyExchange = tallyExchange;
+        this.secret = properties.secret().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Merge the tallies sent by a peer.
+     *
+     * @param peerSecret - the voting.cluster.secret of the peer
+     * @param delta - the tallies, see TallyDelta
+     * @return - 204 No Content once the tallies are merged
+     */
+    @PostMapping("/tally")
+    public ResponseEntity<Void> receiveTallies(final @RequestHeader(value = SECRET_HEADER, required = false) String peerSecret,
+                                               final @RequestBody TallyDelta delta) {
+        if (peerSecret == null || !MessageDigest.isEqual(secret, peerSecret.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("Rejected tallies from {} without the cluster secret", delta.node());
+            throw new HttpClientErrorException(HttpStatus.FORBIDDEN, "Invalid input - The cluster secret is missing or wrong");
+        }
+        tallyExchange.receive(delta);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,23 +1,63 @@
 package com.dizplai.voting.controller;
 
+import com.dizplai.voting.config.BulkVoteProperties;
+import com.dizplai.voting.config.ResultProperties;
 import com.dizplai.voting.model.*;
+import com.dizplai.voting.service.BallotLog;
+import com.dizplai.voting.service.BulkVoteService;
+import com.dizplai.voting.service.PollLifecycleService;
+import com.dizplai.voting.service.ResultSnapshotService;
 import com.dizplai.voting.service.VoteService;
+import com.dizplai.voting.tally.TallyBroadcaster;
+import com.dizplai.voting.tally.VoteTimeline;
 import com.dizplai.voting.util.MessageUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/v1/poll")
 @RequiredArgsConstructor
 @Slf4j
 public class VoteController {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+    // a key is stored whole in a record of the ballot log
+    private static final int MAX_IDEMPOTENCY_KEY_BYTES = BallotLog.MAX_KEY_BYTES;
+    private static final int DEFAULT_TIMELINE_BUCKETS = 60;
+    private static final int MAX_TIMELINE_BUCKETS = 1_000;
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final VoteService voteService;
+    private final ResultSnapshotService resultSnapshotService;
+    private final TallyBroadcaster tallyBroadcaster;
+    private final ResultProperties resultProperties;
+    private final BulkVoteService bulkVoteService;
+    private final BulkVoteProperties bulkVoteProperties;
+    private final PollLifecycleService pollLifecycleService;
+    private final VoteTimeline voteTimeline;
+    private final ObjectMapper mapper;
 
     /**
      * Create a new poll with the given detail. If the payload constraint test fails, an error is thrown
@@ -30,18 +70,28 @@ public class VoteController {
      *              "Liverpool"
      *          ]
      *     }
+     * A poll stops accepting votes at the optional "closesAt" e.g. "2024-10-06T20:00:00", which has to be ahead.
+     * A poll has between 2 and 7 options, each different.
      *
      * @param pollRequest - the input payload shown above.
      * @return - the identity of the created poll.
      */
     @PostMapping(produces = "application/json")
     public Long createPoll(final @RequestBody PollRequest pollRequest) {
-        log.info("Creating poll: {}",pollRequest);
+        log.debug("Creating poll: {}",pollRequest);
 
         if (pollRequest.options().size() < 2 || pollRequest.options().size() > 7) {
             log.error("Invalid input - A poll can have between 2 and 7 options. Actual {}", pollRequest.options().size());
             throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - A poll can have between 2 and 7 options");
         }
+        if (new HashSet<>(pollRequest.options()).size() < pollRequest.options().size()) {
+            log.error("Invalid input - A poll cannot have the same option twice. Actual {}", pollRequest.options());
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - A poll cannot have the same option twice");
+        }
+        if (pollRequest.closesAt() != null && !pollRequest.closesAt().isAfter(LocalDateTime.now())) {
+            log.error("Invalid input - A poll has to close after it is created. Actual {}", pollRequest.closesAt());
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - A poll has to close after it is created");
+        }
         Long id = voteService.createPoll(pollRequest);
 
         log.info("Created poll with id: {}", id);
@@ -61,25 +111,47 @@ public class VoteController {
      *     ]
      * }
      *
+     * The response carries an ETag, a request with a matching If-None-Match is answered with 304 and no body.
+     *
      * @param pollId - the identity of the poll
      * @return poll details. See example above.
      */
     @GetMapping(value = "/{pollId}",produces = "application/json")
-    public PollResponse getPollDetail(final @PathVariable String pollId) {
-        log.info("Retrieving poll: {}",pollId);
+    public ResponseEntity<byte[]> getPollDetail(final @PathVariable String pollId) {
+        log.debug("Retrieving poll: {}",pollId);
 
-        PollResponse response = voteService.getPoll(pollId);
+        ResultSnapshot response = resultSnapshotService.getPoll(pollId);
 
-        log.info("Retrieved poll: {}", response);
+        log.debug("Retrieved poll: {} with tag {}", pollId, response.etag());
 
-        return response;
+        return toResponse(response);
+    }
+
+    /**
+     * Close the poll with the given identity now, a poll closed before keeps its closing time. Votes for a closed
+     * poll are rejected with 409. Its final count and ballots are kept once it has been closed for
+     * voting.polls.compaction-delay, see PollLifecycleService.
+     *
+     * @param pollId - the identity of the poll e.g 1
+     */
+    @PostMapping(value = "/{pollId}/close")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void closePoll(final @PathVariable String pollId) {
+        log.info("Closing poll: {}", pollId);
+        pollLifecycleService.close(Long.parseLong(pollId));
     }
 
     /**
-     * Save the vote cast for the associated poll identity.
+     * Save the vote cast for the associated poll identity. A client that retries a vote sends the same
+     * Idempotency-Key with each attempt, the vote is saved once and every attempt is answered with the
+     * distribution after it - see IdempotencyIndex. Keys are unique within a poll and up to 64 characters, and
+     * 88 bytes in UTF-8.
+     * A poll created with oneVotePerVoter needs a voterToken, a second vote of the voter is rejected with 409.
+     * A voteCast that is not an option of the poll is rejected with 400, a vote for a closed poll with 409.
      *
      * @param pollId - the identity of the associated poll e.g 1
-     * @param voteRequest - the input payload e.g. {"voteCast": "Arsenal"}
+     * @param voteRequest - the input payload e.g. {"voteCast": "Arsenal"} or {"voteCast": "Arsenal", "voterToken": "6f3b2a91"}
+     * @param idempotencyKey - the key of the vote e.g. 2f1c7a4e-0d7b-4b8e-9a51-3c0e8e1f6d2b, optional
      *
      * @return a list of votes distribution amongst the available options for the poll e.g.
      * [
@@ -101,13 +173,71 @@ public class VoteController {
      * ]
      */
     @PostMapping(value = "/{pollId}/vote",  consumes = "application/json", produces = "application/json")
-    public List<OptionResponse> castVote(final @PathVariable String pollId, final @RequestBody VoteRequest voteRequest) {
-        log.info("Casting vote {} for poll id: {}", voteRequest, pollId);
-        return MessageUtil.toPollResponses(voteService.castVote(Long.parseLong(pollId), voteRequest.voteCast()), Optional.of(Long.parseLong(pollId)), true);
+    public List<OptionResponse> castVote(final @PathVariable String pollId, final @RequestBody VoteRequest voteRequest,
+                                         final @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        log.debug("Casting vote {} for poll id: {} with key {}", voteRequest, pollId, idempotencyKey);
+
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            log.error("Invalid input - An Idempotency-Key can have between 1 and {} characters. Actual {}",
+                    MAX_IDEMPOTENCY_KEY_LENGTH, idempotencyKey.length());
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - An Idempotency-Key can have between 1 and " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        if (idempotencyKey != null && idempotencyKey.getBytes(StandardCharsets.UTF_8).length > MAX_IDEMPOTENCY_KEY_BYTES) {
+            log.error("Invalid input - An Idempotency-Key can have up to {} bytes in UTF-8. Actual {}",
+                    MAX_IDEMPOTENCY_KEY_BYTES, idempotencyKey.getBytes(StandardCharsets.UTF_8).length);
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - An Idempotency-Key can have up to " + MAX_IDEMPOTENCY_KEY_BYTES + " bytes in UTF-8");
+        }
+        return voteService.castVote(Long.parseLong(pollId), voteRequest.voteCast(), voteRequest.voterToken(), idempotencyKey);
+    }
+
+    /**
+     * Cast many votes for the associated poll identity in one request, e.g. the votes a partner collected by SMS.
+     * The votes are given as counts by option, as ballots one by one, or both - see BulkVoteRequest. At most
+     * voting.bulk.max-votes votes are accepted in a request.
+     *  1. atomic (the default) - an invalid count or ballot rejects the request with 400 and the errors, no vote
+     *     is saved
+     *  2. not atomic - the invalid counts and ballots are listed in the errors, the rest are saved. A request
+     *     with no valid count or ballot saves no vote and is rejected with 400, with the errors and the
+     *     distribution
+     *
+     * @param pollId - the identity of the associated poll e.g 1
+     * @param bulkVoteRequest - the input payload e.g. {"counts": {"Arsenal": 1200}, "ballots": [{"voteCast": "Liverpool"}]}
+     * @return - the votes accepted, the errors and the vote distribution after the votes e.g.
+     * {
+     *     "accepted": 1201,
+     *     "rejected": 0,
+     *     "results": [
+     *         {
+     *             "option": "Liverpool",
+     *             "count": "0.08%",
+     *             "poll": "1"
+     *         },
+     *         {
+     *             "option": "Arsenal",
+     *             "count": "99.92%",
+     *             "poll": "1"
+     *         }
+     *     ]
+     * }
+     */
+    @PostMapping(value = "/{pollId}/ballots", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<BulkVoteResponse> castVotes(final @PathVariable String pollId,
+                                                      final @RequestBody BulkVoteRequest bulkVoteRequest) {
+        log.debug("Casting {} votes in bulk for poll id: {}", bulkVoteRequest.votes(), pollId);
+
+        if (bulkVoteRequest.votes() > bulkVoteProperties.maxVotes()) {
+            log.error("Invalid input - A request can have up to {} votes. Actual {}", bulkVoteProperties.maxVotes(), bulkVoteRequest.votes());
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - A request can have up to " + bulkVoteProperties.maxVotes() + " votes");
+        }
+        BulkVoteResponse response = bulkVoteService.castVotes(Long.parseLong(pollId), bulkVoteRequest);
+
+        boolean rejected = response.results() == null || response.accepted() == 0 && response.rejected() > 0;
+        return ResponseEntity.status(rejected ? HttpStatus.BAD_REQUEST : HttpStatus.OK).body(response);
     }
 
     /**
-     * List all the options associated with a given poll
+     * List all the options associated with a given poll. The response carries an ETag, a request with a matching
+     * If-None-Match is answered with 304 and no body.
      * @param pollId - the identity of the associated poll e.g 1
      * @return a list of votes distribution amongst the available options for the poll e.g.
      * [
@@ -129,12 +259,14 @@ public class VoteController {
      * ]
      */
     @GetMapping(value = "/{pollId}/options",produces = "application/json")
-    public List<OptionResponse> getPollOptions(final @PathVariable String pollId) {
-        log.info("Retrieving poll options for poll id: {}", pollId);
-        return MessageUtil.toPollResponses(voteService.getVotes(pollId), Optional.of(Long.parseLong(pollId)), false);
+    public ResponseEntity<byte[]> getPollOptions(final @PathVariable String pollId) {
+        log.debug("Retrieving poll options for poll id: {}", pollId);
+        return toResponse(resultSnapshotService.getResults(pollId, false));
     }
 
     /**
+     * Return the vote distribution of a given poll. The response carries an ETag that changes with every vote, a
+     * request with a matching If-None-Match is answered with 304 and no body.
      *
      * @param pollId - the identity of the associated poll e.g 1
      * @return - a list of votes distribution amongst the available options for the poll e.g.
@@ -157,15 +289,36 @@ public class VoteController {
      * ]
      */
     @GetMapping(value = "/{pollId}/votes",produces = "application/json")
-    public List<OptionResponse> getPollResult(final @PathVariable String pollId) {
-        log.info("Retrieving vote distribution for poll id: {}", pollId);
-        return MessageUtil.toPollResponses(voteService.getVotes(pollId), Optional.of(Long.parseLong(pollId)), true);
+    public ResponseEntity<byte[]> getPollResult(final @PathVariable String pollId) {
+        log.debug("Retrieving vote distribution for poll id: {}", pollId);
+        return toResponse(resultSnapshotService.getResults(pollId, true));
+    }
+
+    /**
+     * Follow the vote distribution of a poll as server-sent events, instead of polling /votes. The current
+     * distribution is sent on connect, then a new one whenever votes are cast - at most voting.stream.max-rate
+     * times a second. The client reconnects when the stream times out, see spring.mvc.async.request-timeout.
+     * An unknown poll is not found (404) rather than streamed.
+     *
+     * @param pollId - the identity of the associated poll e.g 1
+     * @return - a stream of votes events, each with the payload of /votes e.g.
+     * event:votes
+     * data:[{"option":"Liverpool","count":"25%","poll":"1"},{"option":"Manchester City","count":"25%","poll":"1"},{"option":"Arsenal","count":"50%","poll":"1"}]
+     */
+    @GetMapping(value = "/{pollId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPollResult(final @PathVariable Integer pollId) {
+        log.info("Streaming vote distribution for poll id: {}", pollId);
+        return tallyBroadcaster.subscribe(pollId, new SseEmitter());
     }
 
     /**
-     * View all votes for a given poll and the time the ballot was cast
+     * View all votes for a given poll and the time the ballot was cast. When after or limit is given, a page of
+     * the votes is returned in the order they were cast, with the cursor of the next page. Request the first
+     * page without after (or with 0), then pass the next cursor of each page to get the one that follows.
      *
      * @param pollId - the identity of the associated poll e.g 1
+     * @param after - the cursor of the page to return e.g. 1234, optional
+     * @param limit - the most votes to return on a page, between 1 and 10000, optional - defaults to 100
      * @return - a list of all the ballot detail e.g.
      * Example:
      *      {
@@ -189,10 +342,125 @@ public class VoteController {
      * }
      */
     @GetMapping(value = "/{pollId}/ballots",  produces = "application/json")
-    public VoteResponse getVoteDetail(final @PathVariable Integer pollId) {
-        log.info("Retrieving vote details for poll id: {}", pollId);
-        return VoteResponse.builder()
-                .votes(voteService.getVotes(Integer.toString(pollId)))
-                .build();
+    public VoteResponse getVoteDetail(final @PathVariable Integer pollId,
+                                      final @RequestParam(required = false) Long after,
+                                      final @RequestParam(required = false) Integer limit) {
+        log.debug("Retrieving vote details for poll id: {}", pollId);
+
+        if (after == null && limit == null) {
+            return VoteResponse.builder()
+                    .votes(voteService.getVotes(Integer.toString(pollId)))
+                    .build();
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            log.error("Invalid input - A page can have between 1 and {} votes. Actual {}", MAX_PAGE_SIZE, pageSize);
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - A page can have between 1 and " + MAX_PAGE_SIZE + " votes");
+        }
+        return voteService.getVotes(Integer.toString(pollId), after == null ? 0 : after, pageSize);
+    }
+
+    /**
+     * Export all votes for a given poll, one vote per line, in the order they were cast. The votes are streamed
+     * to the client as they are read, so a poll of any size can be exported.
+     *  1. ndjson - a JSON document per line e.g. {"poll":1,"option":"Arsenal","castOn":"2024-10-06T12:24:41.154181"}
+     *  2. csv - a header line followed by a line per vote e.g. 1,Arsenal,2024-10-06T12:24:41.154181
+     *
+     * @param pollId - the identity of the associated poll e.g 1
+     * @param format - ndjson or csv, optional - defaults to ndjson
+     * @return - the votes in the requested format
+     */
+    @GetMapping(value = "/{pollId}/ballots/export")
+    public ResponseEntity<StreamingResponseBody> exportVoteDetail(final @PathVariable Integer pollId,
+                                                                  final @RequestParam(defaultValue = "ndjson") String format) {
+        log.info("Exporting vote details for poll id: {} as {}", pollId, format);
+
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            log.error("Invalid input - Votes can be exported as ndjson or csv. Actual {}", format);
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - Votes can be exported as ndjson or csv");
+        }
+
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (csv) {
+                writer.write(MessageUtil.CSV_HEADER);
+            }
+            voteService.exportVotes(pollId, vote -> {
+                try {
+                    writer.write(csv ? MessageUtil.toCsv(vote) : mapper.writeValueAsString(vote) + "\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(csv ? TEXT_CSV : APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=poll-" + pollId + "-ballots." + (csv ? "csv" : "ndjson"))
+                .body(body);
+    }
+
+    /**
+     * Return the votes cast for each option of a poll in buckets of time, the most recent ones up to the current
+     * bucket, which is still counting. The buckets are counted as votes are cast, a refresh reads a count per
+     * bucket and option rather than the ballots, see VoteTimeline.
+     * Example:
+     * {
+     *     "poll": 1,
+     *     "bucket": "1m",
+     *     "options": [
+     *         "Manchester City",
+     *         "Arsenal"
+     *     ],
+     *     "buckets": [
+     *         {
+     *             "start": "2024-10-06T12:24:00",
+     *             "votes": [12, 30]
+     *         },
+     *         {
+     *             "start": "2024-10-06T12:25:00",
+     *             "votes": [15, 21]
+     *         }
+     *     ]
+     * }
+     *
+     * @param pollId - the identity of the associated poll e.g 1
+     * @param bucket - the width of a bucket, 10s, 1m or 1h, optional - defaults to 1m
+     * @param limit - the number of buckets, optional - defaults to 60
+     * @return - the buckets from the oldest
+     */
+    @GetMapping(value = "/{pollId}/timeline", produces = "application/json")
+    public TimelineResponse getTimeline(final @PathVariable Integer pollId,
+                                        final @RequestParam(defaultValue = "1m") String bucket,
+                                        final @RequestParam(required = false) Integer limit) {
+        log.debug("Retrieving the {} timeline for poll id: {}", bucket, pollId);
+
+        TimelineResolution resolution = TimelineResolution.of(bucket);
+        if (resolution == null) {
+            log.error("Invalid input - A bucket can be 10s, 1m or 1h. Actual {}", bucket);
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - A bucket can be 10s, 1m or 1h");
+        }
+        int buckets = limit == null ? DEFAULT_TIMELINE_BUCKETS : limit;
+        if (buckets < 1 || buckets > MAX_TIMELINE_BUCKETS) {
+            log.error("Invalid input - A timeline can have between 1 and {} buckets. Actual {}", MAX_TIMELINE_BUCKETS, buckets);
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Invalid input - A timeline can have between 1 and " + MAX_TIMELINE_BUCKETS + " buckets");
+        }
+        return voteTimeline.getTimeline(pollId, resolution, buckets);
+    }
+
+    /**
+     * Wrap a serialized result in a response that may be cached for voting.results.max-age. Spring answers a
+     * request whose If-None-Match matches the ETag with 304, see HttpEntityMethodProcessor.
+     */
+    private ResponseEntity<byte[]> toResponse(ResultSnapshot snapshot) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (snapshot.etag() == null) {
+            return response.cacheControl(CacheControl.noStore()).body(snapshot.body());
+        }
+        return response.eTag(snapshot.etag())
+                .cacheControl(CacheControl.maxAge(resultProperties.maxAge()).cachePublic().mustRevalidate())
+                .body(snapshot.body());
     }
-}
\ No newline at end of file
+}
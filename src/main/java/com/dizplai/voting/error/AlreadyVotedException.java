@@ -0,0 +1,11 @@
+package com.dizplai.voting.error;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class AlreadyVotedException extends RuntimeException {
+    public AlreadyVotedException(long pollId) {
+        super("The voter has already voted in poll " + pollId);
+    }
+}
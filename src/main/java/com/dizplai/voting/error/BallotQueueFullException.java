@@ -0,0 +1,11 @@
+package com.dizplai.voting.error;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class BallotQueueFullException extends RuntimeException {
+    public BallotQueueFullException(long pollId) {
+        super("Too many votes waiting to be saved, could not accept vote for poll " + pollId);
+    }
+}
@@ -0,0 +1,11 @@
+package com.dizplai.voting.error;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class PollClosedException extends RuntimeException {
+    public PollClosedException(long pollId) {
+        super("Poll " + pollId + " is closed");
+    }
+}
@@ -1,5 +1,9 @@
 package com.dizplai.voting.error;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
 public class PollNotFoundException  extends RuntimeException {
     public PollNotFoundException(String id) {
         super("Could not find poll with identifier " + id);
@@ -0,0 +1,11 @@
+package com.dizplai.voting.error;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnknownOptionException extends RuntimeException {
+    public UnknownOptionException(long pollId) {
+        super("The vote is not for an option of poll " + pollId);
+    }
+}
@@ -0,0 +1,11 @@
+package com.dizplai.voting.error;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class VoterTokenRequiredException extends RuntimeException {
+    public VoterTokenRequiredException(long pollId) {
+        super("Poll " + pollId + " allows one vote per voter, a voterToken is required");
+    }
+}
@@ -0,0 +1,77 @@
+package com.dizplai.voting.migration;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves a data store written before poll options had their own table to the current schema. It runs before
+ * Hibernate updates the schema, see MigrationConfig, and does nothing when the vote table has no option column.
+ * 1. Every distinct option of a poll becomes a poll_option row, ordered by the first vote stored for it
+ * 2. The first vote of every option - the row created for the option with the poll - is removed
+ * 3. Votes refer to their option by identity and the option column is dropped
+ * 4. The poll_option_tally table is dropped, to be created again and counted on startup, see TallyReconciler
+ * Back up the data store before upgrading, the steps are not run in a single transaction.
+ */
+@Component
+@Slf4j
+public class LegacyVoteMigration {
+    private final JdbcTemplate jdbcTemplate;
+
+    public LegacyVoteMigration(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!hasColumn("vote", "option")) {
+            return;
+        }
+        log.info("Migrating vote options to the poll_option table");
+
+        jdbcTemplate.execute("create sequence if not exists poll_option_seq start with 1 increment by 50");
+        jdbcTemplate.execute("create table if not exists poll_option (id bigint not null, poll bigint not null, " +
+                "ordinal integer not null, option varchar(255) not null, primary key (id), " +
+                "constraint uk_poll_option_poll_ordinal unique (poll, ordinal))");
+
+        List<Object[]> legacyOptions = jdbcTemplate.query(
+                "select poll, option, min(id) from vote group by poll, option order by poll, min(id)",
+                (rs, row) -> new Object[] {rs.getLong(1), rs.getString(2), rs.getLong(3)});
+
+        List<Object[]> options = new ArrayList<>();
+        List<Object[]> optionRows = new ArrayList<>();
+        Map<Long, Integer> ordinals = new HashMap<>();
+        for (Object[] legacyOption : legacyOptions) {
+            long poll = (Long) legacyOption[0];
+            int ordinal = ordinals.merge(poll, 1, Integer::sum) - 1;
+            Long id = jdbcTemplate.queryForObject("select next value for poll_option_seq", Long.class);
+            options.add(new Object[] {id, poll, ordinal, legacyOption[1]});
+            optionRows.add(new Object[] {legacyOption[2]});
+        }
+
+        jdbcTemplate.batchUpdate("insert into poll_option (id, poll, ordinal, option) values (?, ?, ?, ?)", options);
+        jdbcTemplate.batchUpdate("delete from vote where id = ?", optionRows);
+
+        jdbcTemplate.execute("alter table vote add column if not exists option_id bigint");
+        jdbcTemplate.update("update vote v set option_id = " +
+                "(select o.id from poll_option o where o.poll = v.poll and o.option = v.option)");
+        jdbcTemplate.execute("alter table vote alter column option_id set not null");
+        jdbcTemplate.execute("alter table vote drop column option");
+        jdbcTemplate.execute("drop table if exists poll_option_tally");
+
+        log.info("Migrated {} options of {} polls", options.size(), ordinals.size());
+    }
+
+    private boolean hasColumn(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                "where lower(table_name) = ? and lower(column_name) = ?", Integer.class, table, column);
+        return count != null && count > 0;
+    }
+}
@@ -0,0 +1,15 @@
+package com.dizplai.voting.migration;
+
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs the data migrations before the entity manager factory is created, so Hibernate updates a schema that
+ * has already been migrated.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MigrationConfig extends EntityManagerFactoryDependsOnPostProcessor {
+    public MigrationConfig() {
+        super(LegacyVoteMigration.class, NodeTallyMigration.class);
+    }
+}
@@ -0,0 +1,45 @@
+package com.dizplai.voting.migration;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Drops a poll_option_tally table written before the counts were kept by instance, see PollOptionTally. The
+ * node column is part of the key, which Hibernate does not change in an existing table. The table is created
+ * again and counted on startup, see TallyReconciler. It runs before Hibernate updates the schema, see
+ * MigrationConfig, and does nothing when the table has a node column or does not exist.
+ */
+@Component
+@Slf4j
+public class NodeTallyMigration {
+    private final JdbcTemplate jdbcTemplate;
+
+    public NodeTallyMigration(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!hasTable("poll_option_tally") || hasColumn("poll_option_tally", "node")) {
+            return;
+        }
+        log.info("Dropping the poll_option_tally table to count the votes by instance");
+        jdbcTemplate.execute("drop table poll_option_tally");
+    }
+
+    private boolean hasTable(String table) {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from information_schema.tables " +
+                "where lower(table_name) = ?", Integer.class, table);
+        return count != null && count > 0;
+    }
+
+    private boolean hasColumn(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                "where lower(table_name) = ? and lower(column_name) = ?", Integer.class, table, column);
+        return count != null && count > 0;
+    }
+}
@@ -0,0 +1,22 @@
+package com.dizplai.voting.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * An entity to store how far a ballot log has been fed to the vote table, see LogBallotStore.
+ * 1. Directory is the directory of the ballot log e.g. data/ballots
+ * 2. Position is the sequence number of the first ballot not in the vote table. It is updated in the
+ *    transaction that stores the ballots before it, so a ballot is stored once however the feeder stops.
+ */
+@Entity(name = "ballot_log_position")
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BallotLogPosition {
+    @Id @Column(name = "directory", nullable = false) private String directory;
+    @Column(name = "position", nullable = false) private long position;
+}
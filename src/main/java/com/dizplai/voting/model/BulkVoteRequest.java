@@ -0,0 +1,44 @@
+package com.dizplai.voting.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An input payload for casting many votes for a poll in one request, e.g. the votes a partner collected by SMS.
+ * 1. counts - the number of votes for each option, for votes collected without a voter
+ * 2. ballots - the votes one by one, each as the payload of a single vote
+ * 3. atomic - optional, defaults to true. When true a single invalid count or ballot rejects the request and no
+ *    vote is saved, when false the invalid ones are left out and the rest are saved
+ * Example:
+ *      {
+ *          "counts": {"Arsenal": 1200, "Liverpool": 800},
+ *          "ballots": [{"voteCast": "Arsenal"}, {"voteCast": "Manchester City"}],
+ *          "atomic": false
+ *      }
+ * @param counts
+ * @param ballots
+ * @param atomic
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Builder
+public record BulkVoteRequest(Map<String, Long> counts, List<VoteRequest> ballots, Boolean atomic) {
+    /**
+     * @return - the votes in the request, the ballots and the positive counts. Saturates rather than overflows
+     */
+    public long votes() {
+        long votes = ballots == null ? 0 : ballots.size();
+        if (counts != null) {
+            for (Long count : counts.values()) {
+                if (count != null && count > 0) {
+                    votes = votes + count < votes ? Long.MAX_VALUE : votes + count;
+                }
+            }
+        }
+        return votes;
+    }
+}
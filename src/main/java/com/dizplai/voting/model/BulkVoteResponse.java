@@ -0,0 +1,34 @@
+package com.dizplai.voting.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+
+import java.util.List;
+
+/**
+ * A response from a call to cast many votes. The errors name the count or the ballot they are about, counts by
+ * option text and ballots by their position in the request. The distribution is left out when no vote is saved.
+ * Example:
+ *      {
+ *          "accepted": 2001,
+ *          "rejected": 1,
+ *          "errors": [{"item": "ballots[1]", "error": "The vote is not for an option of poll 1"}],
+ *          "results": [{"option": "Arsenal", "count": "60.02%", "poll": "1"}, ...]
+ *      }
+ * @param accepted
+ * @param rejected
+ * @param errors
+ * @param results
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Builder
+public record BulkVoteResponse(long accepted, long rejected, List<Error> errors, List<OptionResponse> results) {
+    /**
+     * @param item - the count or ballot rejected e.g. counts.Everton or ballots[3]
+     * @param error - why it was rejected
+     */
+    public record Error(String item, String error) {
+    }
+}
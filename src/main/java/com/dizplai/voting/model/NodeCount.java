@@ -0,0 +1,15 @@
+package com.dizplai.voting.model;
+
+/**
+ * The number of votes an instance stored for an option of a poll, see PollOptionTally. e.g.
+ *     {
+ *         "optionId": 3,
+ *         "node": "voting-api-1",
+ *         "count": 23
+ *     }
+ * @param optionId - the identity of the PollOption counted
+ * @param node - the instance that stored the votes
+ * @param count - the number of votes the instance stored for the option
+ */
+public record NodeCount(long optionId, String node, long count) {
+}
@@ -0,0 +1,13 @@
+package com.dizplai.voting.model;
+
+/**
+ * The number of votes cast for an option of a poll, as counted by the data store. e.g.
+ *     {
+ *         "optionId": 3,
+ *         "count": 23
+ *     }
+ * @param optionId - the identity of the PollOption counted
+ * @param count - the number of votes cast for the option
+ */
+public record OptionCount(long optionId, long count) {
+}
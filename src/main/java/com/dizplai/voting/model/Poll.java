@@ -4,9 +4,15 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.LocalDateTime;
+
 /**
  * An entity to represent a poll. A poll has an id and a poll question
  * The column value cannot be null.
+ * One_vote_per_voter - when true a vote needs a voter token and a voter votes once, see VoterRegistry. Null for
+ * polls created before the column was added, which allow any number of votes.
+ * Closes_at - the date and time the poll stops accepting votes, null for a poll that stays open.
+ * Status - the stage of the poll, see PollStatus. Null for polls created before the column was added, which are open.
  */
 @Entity(name = "poll")
 @Getter
@@ -18,7 +24,18 @@ import lombok.*;
 public class Poll {
     @JsonIgnore
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @PooledSequence(name = "poll_seq")
     private Long id;
     @Column(name = "question", nullable = false) String question;
+    @Column(name = "one_vote_per_voter") Boolean oneVotePerVoter;
+    @Column(name = "closes_at", columnDefinition = "TIMESTAMP") LocalDateTime closesAt;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16) PollStatus status;
+
+    /**
+     * @return - true once the final count of the poll is stored in poll_result
+     */
+    public boolean isCompacted() {
+        return status == PollStatus.CLOSED || status == PollStatus.ARCHIVED;
+    }
 }
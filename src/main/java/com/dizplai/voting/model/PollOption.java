@@ -0,0 +1,31 @@
+package com.dizplai.voting.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * An entity to represent an option of a poll.
+ * 1. Poll is the poll the option is associated
+ * 2. Ordinal is the position of the option in the poll, starting from 0 - unique within the poll
+ * 3. Option is the text of the option e.g. Arsenal
+ * A vote refers to the option it was cast for by the option identity.
+ */
+@Entity(name = "poll_option")
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_poll_option_poll_ordinal", columnNames = {"poll", "ordinal"}))
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PollOption {
+    @JsonIgnore
+    @Id
+    @PooledSequence(name = "poll_option_seq")
+    private Long id;
+
+    @Column(name = "poll", nullable = false) private long poll;
+    @Column(name = "ordinal", nullable = false) private int ordinal;
+    @Column(name = "option", nullable = false) private String option;
+}
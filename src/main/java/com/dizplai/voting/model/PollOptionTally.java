@@ -0,0 +1,40 @@
+package com.dizplai.voting.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * An entity to store the running count of an option of a poll, so results are read from a handful of rows
+ * instead of the ballots.
+ * 1. Poll is the poll the option is associated
+ * 2. Option_id is the identity of the PollOption counted
+ * 3. Node is the instance that stored the votes counted, see voting.cluster.node-id. Every instance counts its
+ *    own votes, so instances never update the same row and the votes of an option are the sum of its rows.
+ * 4. Count is the number of votes cast for the option. It is incremented in the transaction that
+ *    stores a vote and can be rebuilt from the vote table, see TallyReconciler.
+ */
+@Entity(name = "poll_option_tally")
+@IdClass(PollOptionTally.Key.class)
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PollOptionTally {
+    @Id @Column(name = "poll", nullable = false) private long poll;
+    @Id @Column(name = "option_id", nullable = false) private long optionId;
+    @Id @Column(name = "node", nullable = false, length = 64) private String node;
+    @Column(name = "count", nullable = false) private long count;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private long poll;
+        private long optionId;
+        private String node;
+    }
+}
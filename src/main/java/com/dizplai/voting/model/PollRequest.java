@@ -2,6 +2,7 @@ package com.dizplai.voting.model;
 
 import jakarta.validation.constraints.NotNull;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -10,6 +11,9 @@ import java.util.List;
  *    A non-null constraint is applied to the input
  * 2. Options - a list of options available for the poll question e.g. 'Manchester City, Liverpool, Arsenal'
  *    A length condition is applied to the list of options =< length <=7
+ * 3. OneVotePerVoter - optional, when true every vote needs a voterToken and a voter can vote once
+ * 4. ClosesAt - optional, the date and time the poll stops accepting votes e.g. 2024-10-06T20:00:00. A poll
+ *    without it stays open until it is closed, see PollLifecycleService
  *
  *    Example:
  *    {
@@ -22,6 +26,16 @@ import java.util.List;
  *     }
  * @param question
  * @param options
+ * @param oneVotePerVoter
+ * @param closesAt
  */
-public record PollRequest(@NotNull String question, List<String> options) {
+public record PollRequest(@NotNull String question, List<String> options, Boolean oneVotePerVoter,
+                          LocalDateTime closesAt) {
+    public PollRequest(String question, List<String> options) {
+        this(question, options, null, null);
+    }
+
+    public PollRequest(String question, List<String> options, Boolean oneVotePerVoter) {
+        this(question, options, oneVotePerVoter, null);
+    }
 }
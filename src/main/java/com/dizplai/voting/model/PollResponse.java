@@ -1,6 +1,9 @@
 package com.dizplai.voting.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -15,9 +18,15 @@ import java.util.List;
  *         "Manchester City"
  *     ]
  * }
+ * A poll with a closing time also has "closesAt": "2024-10-06T20:00:00", see PollRequest.
  * @param id
  * @param question
  * @param options
+ * @param closesAt
  */
-public record PollResponse(@NotNull long id, @NotNull String question, List<String> options) {
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PollResponse(@NotNull long id, @NotNull String question, List<String> options, LocalDateTime closesAt) {
+    public PollResponse(long id, String question, List<String> options) {
+        this(id, question, options, null);
+    }
 }
@@ -0,0 +1,36 @@
+package com.dizplai.voting.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+
+/**
+ * An entity to store the final count of an option of a closed poll, written once when the poll is compacted,
+ * see PollLifecycleService. The results of a closed poll are read from these rows, never from the ballots.
+ * 1. Poll is the poll the option is associated
+ * 2. Option_id is the identity of the PollOption counted
+ * 3. Count is the number of ballots cast for the option, the ballots written to the archive, see BallotArchive
+ */
+@Entity(name = "poll_result")
+@IdClass(PollResult.Key.class)
+@Immutable
+@Getter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PollResult {
+    @Id @Column(name = "poll", nullable = false) private long poll;
+    @Id @Column(name = "option_id", nullable = false) private long optionId;
+    @Column(name = "count", nullable = false) private long count;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private long poll;
+        private long optionId;
+    }
+}
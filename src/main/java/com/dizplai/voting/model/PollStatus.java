@@ -0,0 +1,15 @@
+package com.dizplai.voting.model;
+
+/**
+ * The stage of a poll in its lifecycle, see PollLifecycleService.
+ * 1. OPEN - votes are accepted until the poll closes, see Poll.closesAt. Polls created before the column was
+ *    added have no status and are open
+ * 2. CLOSED - the final count of every option is stored in poll_result, the ballots are written to the archive
+ *    and may still be in the vote table
+ * 3. ARCHIVED - the ballots are removed from the vote table and only read from the archive, see BallotArchive
+ */
+public enum PollStatus {
+    OPEN,
+    CLOSED,
+    ARCHIVED
+}
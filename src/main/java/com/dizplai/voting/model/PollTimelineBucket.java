@@ -0,0 +1,46 @@
+package com.dizplai.voting.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * An entity to store the number of votes cast for an option of a poll in a bucket of time, so a timeline is read
+ * from a row per bucket and option instead of the ballots, see VoteTimeline.
+ * 1. Poll is the poll the option is associated
+ * 2. Width is the width of the bucket in seconds, see TimelineResolution. A vote is counted in a bucket of every
+ *    width, so a timeline of any width reads one row per bucket and option
+ * 3. Bucket is the number of the bucket, the epoch second it starts at divided by the width
+ * 4. Option_id is the identity of the PollOption counted
+ * 5. Node is the instance that counted the votes, see voting.cluster.node-id, so instances never update the
+ *    same row and the votes of a bucket are the sum of its rows
+ * 6. Count is the number of votes, added to from the buckets in memory every voting.timeline.flush-interval
+ */
+@Entity(name = "poll_timeline")
+@IdClass(PollTimelineBucket.Key.class)
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PollTimelineBucket {
+    @Id @Column(name = "poll", nullable = false) private long poll;
+    @Id @Column(name = "width", nullable = false) private int width;
+    @Id @Column(name = "bucket", nullable = false) private long bucket;
+    @Id @Column(name = "option_id", nullable = false) private long optionId;
+    @Id @Column(name = "node", nullable = false, length = 64) private String node;
+    @Column(name = "count", nullable = false) private long count;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private long poll;
+        private int width;
+        private long bucket;
+        private long optionId;
+        private String node;
+    }
+}
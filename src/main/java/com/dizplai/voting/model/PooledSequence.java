@@ -0,0 +1,27 @@
+package com.dizplai.voting.model;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generate the identity of an entity from a database sequence, reserving a block of values per round trip.
+ * See PooledSequenceGenerator for how the block size and the optimizer are configured.
+ */
+@IdGeneratorType(PooledSequenceGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface PooledSequence {
+    /**
+     * @return - the name of the database sequence e.g. vote_seq
+     */
+    String name();
+
+    /**
+     * @return - the number of identities reserved per call to the sequence, unless configured otherwise
+     */
+    int allocationSize() default 50;
+}
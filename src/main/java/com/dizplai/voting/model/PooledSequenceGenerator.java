@@ -0,0 +1,39 @@
+package com.dizplai.voting.model;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A sequence generator whose allocation size and optimizer are read from the application configuration.
+ * 1. Every call to the sequence reserves a block of allocation size identities, which are then handed out
+ *    in memory. Each instance reserves its own blocks, so identities stay unique across a cluster.
+ * 2. The pooled-lo optimizer treats the sequence value as the first identity of the block.
+ * Both values are passed in as Hibernate settings, see JpaConfig and IdGenerationProperties.
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+    public static final String OPTIMIZER_SETTING = "voting.id.optimizer";
+    public static final String ALLOCATION_SIZE_SETTING = "voting.id.allocation-size.";
+
+    private final PooledSequence sequence;
+
+    public PooledSequenceGenerator(PooledSequence sequence) {
+        this.sequence = sequence;
+    }
+
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) throws MappingException {
+        Map<String, Object> settings = serviceRegistry.requireService(ConfigurationService.class).getSettings();
+
+        parameters.put(SEQUENCE_PARAM, sequence.name());
+        parameters.put(INCREMENT_PARAM, settings.getOrDefault(ALLOCATION_SIZE_SETTING + sequence.name(), sequence.allocationSize()).toString());
+        parameters.put(OPT_PARAM, settings.getOrDefault(OPTIMIZER_SETTING, "pooled-lo").toString());
+
+        super.configure(type, parameters, serviceRegistry);
+    }
+}
@@ -0,0 +1,16 @@
+package com.dizplai.voting.model;
+
+import lombok.Builder;
+
+/**
+ * A result of a poll serialized as JSON, with the entity tag of the version it was taken at e.g.
+ *      ETag: "1.1728213481154.42"
+ * The tag is the poll identity, the generation of the tally and its version, see PollTally. It is left out
+ * when the poll is not tallied e.g. it does not exist, and the result is then not cached.
+ *
+ * @param etag
+ * @param body
+ */
+@Builder
+public record ResultSnapshot(String etag, byte[] body) {
+}
@@ -0,0 +1,30 @@
+package com.dizplai.voting.model;
+
+import java.util.List;
+
+/**
+ * The tallies an instance sends to its peers, see TallyExchange. e.g.
+ *     {
+ *         "node": "voting-api-1",
+ *         "counters": [
+ *             {"poll": 1, "node": "voting-api-1", "optionId": 3, "increments": 23, "decrements": 0},
+ *             {"poll": 1, "node": "voting-api-2", "optionId": 3, "increments": 17, "decrements": 1}
+ *         ]
+ *     }
+ * @param node - the instance that sent the tallies
+ * @param counters - the counters of the polls changed since the last exchange, of every instance it knows
+ */
+public record TallyDelta(String node, List<Counter> counters) {
+    /**
+     * The votes counted for an option by an instance, as the votes added and removed. Both only grow, so two
+     * counters of the same instance and option merge by taking the larger of each (a PN-counter).
+     *
+     * @param poll - poll identifier e.g. 1
+     * @param node - the instance that counted the votes
+     * @param optionId - the identity of the option
+     * @param increments - the votes added
+     * @param decrements - the votes removed, e.g. a retried vote found when it was stored
+     */
+    public record Counter(long poll, String node, long optionId, long increments, long decrements) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.dizplai.voting.model;
+
+/**
+ * The number of votes cast for an option of a poll in a bucket of time, as stored in poll_timeline. e.g.
+ *     {
+ *         "bucket": 28803624,
+ *         "optionId": 3,
+ *         "count": 23
+ *     }
+ * @param bucket - the number of the bucket, see TimelineResolution.bucketOf
+ * @param optionId - the identity of the PollOption counted
+ * @param count - the number of votes cast for the option in the bucket
+ */
+public record TimelineCount(long bucket, long optionId, long count) {
+}
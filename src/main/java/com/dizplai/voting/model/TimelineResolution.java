@@ -0,0 +1,52 @@
+package com.dizplai.voting.model;
+
+import java.util.Arrays;
+
+/**
+ * The width of the buckets of a vote timeline, see VoteTimeline.
+ * 1. TEN_SECONDS - 10s
+ * 2. ONE_MINUTE - 1m
+ * 3. ONE_HOUR - 1h
+ * Buckets start at a multiple of their width since the epoch, so a bucket is numbered by the epoch second it
+ * starts at divided by the width.
+ */
+public enum TimelineResolution {
+    TEN_SECONDS("10s", 10),
+    ONE_MINUTE("1m", 60),
+    ONE_HOUR("1h", 3600);
+
+    private final String label;
+    private final int seconds;
+
+    TimelineResolution(String label, int seconds) {
+        this.label = label;
+        this.seconds = seconds;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return - the width of a bucket in seconds e.g. 60
+     */
+    public int getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * @param epochSecond - a time in seconds since the epoch e.g. 1728217481
+     * @return - the number of the bucket the time falls in
+     */
+    public long bucketOf(long epochSecond) {
+        return Math.floorDiv(epochSecond, seconds);
+    }
+
+    /**
+     * @param label - the width of a bucket e.g. 1m
+     * @return - the resolution with the label, null if there is none
+     */
+    public static TimelineResolution of(String label) {
+        return Arrays.stream(values()).filter(resolution -> resolution.label.equals(label)).findFirst().orElse(null);
+    }
+}
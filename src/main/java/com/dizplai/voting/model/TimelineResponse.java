@@ -0,0 +1,40 @@
+package com.dizplai.voting.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The votes cast for each option of a poll, in buckets of time. The votes of a bucket are listed in the order
+ * of the options, the buckets from the oldest to the current one, which is still counting. e.g.
+ * {
+ *     "poll": 1,
+ *     "bucket": "1m",
+ *     "options": [
+ *         "Manchester City",
+ *         "Arsenal",
+ *         "Liverpool"
+ *     ],
+ *     "buckets": [
+ *         {
+ *             "start": "2024-10-06T12:24:00",
+ *             "votes": [12, 30, 4]
+ *         },
+ *         {
+ *             "start": "2024-10-06T12:25:00",
+ *             "votes": [15, 21, 9]
+ *         }
+ *     ]
+ * }
+ * @param poll
+ * @param bucket
+ * @param options
+ * @param buckets
+ */
+public record TimelineResponse(long poll, String bucket, List<String> options, List<Bucket> buckets) {
+    /**
+     * @param start - the time the bucket starts at, in the zone of the application
+     * @param votes - the votes cast for each option in the bucket
+     */
+    public record Bucket(LocalDateTime start, long[] votes) {
+    }
+}
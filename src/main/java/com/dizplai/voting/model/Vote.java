@@ -10,10 +10,26 @@ import java.time.LocalDateTime;
 /**
  * An entity to store a vote cast.
  * 1. Poll is a poll the vote is associated
- * 2. Option is one of the option available for the poll question
+ * 2. Option_id is the identity of the PollOption the vote was cast for. The text of the option is not
+ *    stored with the vote; it is filled in from the poll options when votes are listed.
  * 3. Cast_on is the date and time the vote was cast - useful for audit.
+ * 4. Ballot_key is the Idempotency-Key the vote was cast with, if any. A key is cast once per poll, see
+ *    IdempotencyIndex.
+ * 5. Voter_hash is the hash of the voter token, for polls that allow one vote per voter, see VoterRegistry.
+ * Votes are always read by poll, so the poll leads every index:
+ * 1. idx_vote_poll - the votes of a poll in the order they were stored, so that a page of votes is a range scan
+ * 2. idx_vote_poll_option - covers counting the votes of a poll by option without reading the table
+ * 3. idx_vote_poll_cast_on - the votes of a poll in the order they were cast
+ * 4. uk_vote_poll_ballot_key - the vote cast with a key, votes without a key are not constrained
  */
 @Entity(name = "vote")
+@Table(name = "vote", indexes = {
+        @Index(name = "idx_vote_poll", columnList = "poll, id"),
+        @Index(name = "idx_vote_poll_option", columnList = "poll, option_id"),
+        @Index(name = "idx_vote_poll_cast_on", columnList = "poll, cast_on")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_vote_poll_ballot_key", columnNames = {"poll", "ballot_key"})
+})
 @Getter
 @Setter
 @ToString
@@ -24,10 +40,16 @@ import java.time.LocalDateTime;
 public class Vote {
     @JsonIgnore
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @PooledSequence(name = "vote_seq")
     private Long id;
 
     @Column(name = "poll", nullable = false) private long poll;
-    @Column(name = "option", nullable = false) private String option;
+    @JsonIgnore
+    @Column(name = "option_id", nullable = false) private long optionId;
+    @Transient private String option;
     @Column(name = "cast_on", columnDefinition = "TIMESTAMP") private LocalDateTime castOn;
+    @JsonIgnore
+    @Column(name = "ballot_key", length = 64) private String ballotKey;
+    @JsonIgnore
+    @Column(name = "voter_hash") private Long voterHash;
 }
@@ -8,12 +8,14 @@ import lombok.Builder;
 /**
  * An input payload for casting a vote.
  * 1. voteCast is the value of the selected option from one of the available ones.
+ * 2. voterToken identifies the voter, required by the polls that allow one vote per voter.
  * Example:
- *      {"voteCast": "Arsenal"}
+ *      {"voteCast": "Arsenal", "voterToken": "6f3b2a91-53c4-4d1e-8f0a-2e7c9d5b1a44"}
  * @param voteCast
+ * @param voterToken
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @Builder
-public record VoteRequest(@NotNull String voteCast) {
+public record VoteRequest(@NotNull String voteCast, String voterToken) {
 }
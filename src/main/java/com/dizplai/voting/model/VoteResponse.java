@@ -7,7 +7,9 @@ import lombok.Builder;
 import java.util.List;
 
 /**
- * A payload for all the ballot associated with a poll. It is a list of all the votes cast.
+ * A payload for the ballot associated with a poll. It is a list of all the votes cast, or of a page of them
+ * when a page is requested. The next field is the cursor to request the following page with, and is left
+ * out on the last page.
  * Example:
  *      {
  *     "votes": [
@@ -26,12 +28,14 @@ import java.util.List;
  *             "option": "Liverpool",
  *             "castOn": "2024-10-06T12:24:41.154181"
  *         }
- *     ]
+ *     ],
+ *     "next": 1234
  * }
  * @param votes
+ * @param next
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @Builder
-public record VoteResponse(List<Vote> votes) {
+public record VoteResponse(List<Vote> votes, Long next) {
 }
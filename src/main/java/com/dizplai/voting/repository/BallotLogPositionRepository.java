@@ -0,0 +1,10 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.BallotLogPosition;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * A proxy for a class to interact with data store for BallotLogPosition object - see description about BallotLogPosition abject
+ */
+public interface BallotLogPositionRepository extends JpaRepository<BallotLogPosition, String> {
+}
@@ -0,0 +1,16 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.PollOption;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A proxy for a class to interact with data store for PollOption object - see description about PollOption abject
+ */
+public interface PollOptionRepository extends JpaRepository<PollOption, Long> {
+    List<PollOption> findByPollOrderByOrdinal(long poll);
+
+    List<PollOption> findByPollInOrderByPollAscOrdinalAsc(Collection<Long> polls);
+}
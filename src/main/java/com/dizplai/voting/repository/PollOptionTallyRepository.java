@@ -0,0 +1,88 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.NodeCount;
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.PollOptionTally;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * A proxy for a class to interact with data store for PollOptionTally object - see description about PollOptionTally abject
+ */
+public interface PollOptionTallyRepository extends JpaRepository<PollOptionTally, PollOptionTally.Key> {
+    List<PollOptionTally> findByPoll(long poll);
+
+    /**
+     * The votes of every option of a poll, summed over the instances that stored them.
+     */
+    @Query("select new com.dizplai.voting.model.OptionCount(t.optionId, sum(t.count)) from poll_option_tally t " +
+            "where t.poll = ?1 group by t.optionId")
+    List<OptionCount> findCountsByPoll(long poll);
+
+    @Query("select new com.dizplai.voting.model.NodeCount(t.optionId, t.node, t.count) from poll_option_tally t where t.poll = ?1")
+    List<NodeCount> findNodeCountsByPoll(long poll);
+
+    /**
+     * Add a count of zero for every option of a poll that the instance has not counted yet. Counts are created
+     * before the votes, as two votes inserting the first count of an option at once would violate the key.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into poll_option_tally (poll, option_id, node, count) select o.poll, o.id, ?2, 0 from poll_option o " +
+            "where o.poll = ?1 and not exists " +
+            "(select 1 from poll_option_tally t where t.poll = o.poll and t.option_id = o.id and t.node = ?2)", nativeQuery = true)
+    int initialize(long poll, String node);
+
+    /**
+     * Add to the count of an option by an instance in a single statement, creating the row for an option not
+     * counted before.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "merge into poll_option_tally t using (values (?1, ?2, ?3)) s(poll, option_id, node) " +
+            "on t.poll = s.poll and t.option_id = s.option_id and t.node = s.node " +
+            "when matched then update set t.count = t.count + ?4 " +
+            "when not matched then insert (poll, option_id, node, count) values (?1, ?2, ?3, ?4)", nativeQuery = true)
+    int increment(long poll, long optionId, String node, long delta);
+
+    /**
+     * Remove the counts of a poll by the instances other than the given one, see reconcile.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "delete from poll_option_tally where poll = ?1 and node <> ?2", nativeQuery = true)
+    int removeOtherNodes(long poll, String node);
+
+    /**
+     * Set the counts of a poll by an instance to the number of votes stored for each of its options. The vote
+     * table does not record the instance, so the other instances are expected to have no counts, see
+     * removeOtherNodes.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "merge into poll_option_tally t " +
+            "using (select poll, option_id, count(*) c from vote where poll = ?1 group by poll, option_id) s " +
+            "on t.poll = s.poll and t.option_id = s.option_id and t.node = ?2 " +
+            "when matched then update set t.count = s.c " +
+            "when not matched then insert (poll, option_id, node, count) values (s.poll, s.option_id, ?2, s.c)", nativeQuery = true)
+    int reconcile(long poll, String node);
+
+    /**
+     * Set the count of an option by an instance, creating the row for an option not counted before.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "merge into poll_option_tally t using (values (?1, ?2, ?3)) s(poll, option_id, node) " +
+            "on t.poll = s.poll and t.option_id = s.option_id and t.node = s.node " +
+            "when matched then update set t.count = ?4 " +
+            "when not matched then insert (poll, option_id, node, count) values (?1, ?2, ?3, ?4)", nativeQuery = true)
+    int setCount(long poll, long optionId, String node, long count);
+
+    @Query("select distinct o.poll from poll_option o " +
+            "where not exists (select t from poll_option_tally t where t.poll = o.poll and t.optionId = o.id)")
+    List<Long> findPollsWithoutTally();
+}
@@ -1,10 +1,54 @@
 package com.dizplai.voting.repository;
 
 import com.dizplai.voting.model.Poll;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * A proxy for a class to interact with data store for Poll object - see description about Poll abject
  */
 public interface PollRepository extends JpaRepository<Poll, Long> {
+    /**
+     * The polls closed at or before the given time whose ballots are still in the vote table, see PollLifecycleService.
+     */
+    @Query("select p from poll p where p.closesAt <= ?1 " +
+            "and (p.status is null or p.status <> com.dizplai.voting.model.PollStatus.ARCHIVED) order by p.closesAt")
+    List<Poll> findClosedBefore(LocalDateTime closedBefore);
+
+    /**
+     * The polls still open at the given time, the most recent first, see PollCacheWarmer.
+     */
+    @Query("select p from poll p where (p.status is null or p.status = com.dizplai.voting.model.PollStatus.OPEN) " +
+            "and (p.closesAt is null or p.closesAt > ?1) order by p.id desc")
+    Slice<Poll> findOpen(LocalDateTime now, Pageable pageable);
+
+    /**
+     * Move the closing time of a poll forward to the given time, a poll closed earlier is left as it is.
+     */
+    @Transactional
+    @Modifying
+    @Query("update poll p set p.closesAt = ?2 where p.id = ?1 and (p.closesAt is null or p.closesAt > ?2)")
+    int closeAt(long id, LocalDateTime closesAt);
+
+    /**
+     * Mark an open poll as closed, in a single statement so only one instance stores its final count.
+     */
+    @Transactional
+    @Modifying
+    @Query("update poll p set p.status = com.dizplai.voting.model.PollStatus.CLOSED where p.id = ?1 " +
+            "and (p.status is null or p.status = com.dizplai.voting.model.PollStatus.OPEN)")
+    int markClosed(long id);
+
+    @Transactional
+    @Modifying
+    @Query("update poll p set p.status = com.dizplai.voting.model.PollStatus.ARCHIVED where p.id = ?1 " +
+            "and p.status = com.dizplai.voting.model.PollStatus.CLOSED")
+    int markArchived(long id);
 }
@@ -0,0 +1,13 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.PollResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+/**
+ * A proxy for a class to interact with data store for PollResult object - see description about PollResult abject
+ */
+public interface PollResultRepository extends JpaRepository<PollResult, PollResult.Key> {
+    List<PollResult> findByPoll(long poll);
+}
@@ -0,0 +1,45 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.PollTimelineBucket;
+import com.dizplai.voting.model.TimelineCount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * A proxy for a class to interact with data store for PollTimelineBucket object - see description about PollTimelineBucket abject
+ */
+public interface PollTimelineRepository extends JpaRepository<PollTimelineBucket, PollTimelineBucket.Key> {
+    /**
+     * The votes an instance counted for a poll in the buckets of a width from the given bucket on, read from the
+     * primary key.
+     */
+    @Query("select new com.dizplai.voting.model.TimelineCount(t.bucket, t.optionId, t.count) from poll_timeline t " +
+            "where t.poll = ?1 and t.width = ?2 and t.bucket >= ?3 and t.node = ?4")
+    List<TimelineCount> findNodeCounts(long poll, int width, long fromBucket, String node);
+
+    /**
+     * The votes of a poll in the buckets of a width between two buckets, summed over the instances. The votes of
+     * the given instance from the held bucket on are left out, as they are kept in memory.
+     */
+    @Query("select new com.dizplai.voting.model.TimelineCount(t.bucket, t.optionId, sum(t.count)) from poll_timeline t " +
+            "where t.poll = ?1 and t.width = ?2 and t.bucket between ?3 and ?4 and (t.node <> ?5 or t.bucket < ?6) " +
+            "group by t.bucket, t.optionId")
+    List<TimelineCount> findCounts(long poll, int width, long fromBucket, long toBucket, String node, long heldBucket);
+
+    /**
+     * Add to the votes of an option in a bucket by an instance in a single statement, creating the row for a
+     * bucket not counted before.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "merge into poll_timeline t using (values (?1, ?2, ?3, ?4, ?5)) s(poll, width, bucket, option_id, node) " +
+            "on t.poll = s.poll and t.width = s.width and t.bucket = s.bucket and t.option_id = s.option_id and t.node = s.node " +
+            "when matched then update set t.count = t.count + ?6 " +
+            "when not matched then insert (poll, width, bucket, option_id, node, count) values (?1, ?2, ?3, ?4, ?5, ?6)",
+            nativeQuery = true)
+    int increment(long poll, int width, long bucket, long optionId, String node, long delta);
+}
@@ -0,0 +1,104 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.Vote;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The ballot reads and writes of VoteRepository, served from the vote table of the main data store or, when
+ * voting.shards.enabled is set, from the shard of the poll, see VoteShards. Ballots are written with insert
+ * and insertAll, the save methods of JpaRepository always write to the main data store.
+ */
+public interface ShardedVoteRepository {
+    /**
+     * Store a ballot, in the vote table flushed at once, or in the shard of its poll.
+     *
+     * @return - the ballot with its identity
+     */
+    Vote insert(Vote vote);
+
+    /**
+     * Store ballots of any poll, in the vote table or in the shards of their polls. The vote table is not
+     * flushed, flush in the transaction of the caller. Ballots may be stored again after the caller failed: a
+     * shard leaves out the ballots it stored under their identities before, the vote table takes new ones.
+     *
+     * @return - the ballots with their identities
+     */
+    List<Vote> insertAll(List<Vote> votes);
+
+    /**
+     * Store the ballots of a feed up to a position, as insertAll does. A shard stores the position with the
+     * ballots, so ballots fed again after the caller failed are stored once, see VoteShards.
+     *
+     * @param feed - the name of the feed e.g. data/ballots
+     * @param position - the position of the feed after the ballots e.g. 1234
+     * @return - the ballots a shard left out as their Idempotency-Key is stored, the vote table fails on
+     * uk_vote_poll_ballot_key instead
+     */
+    List<Vote> insertAll(List<Vote> votes, String feed, long position);
+
+    /**
+     * @return - the positions of a feed stored with the ballots in the shards, none when shards are not enabled
+     */
+    List<Long> findFeedPositions(String feed);
+
+    /**
+     * @return - the number of votes stored, in every shard
+     */
+    long count();
+
+    List<Vote> findVotesByPoll(long poll);
+
+    /**
+     * Return a page of the votes of a poll that were stored after the given vote, in the order they were stored.
+     * The poll is part of the ordering so that the page is read in the order of idx_vote_poll rather than sorted.
+     */
+    Slice<Vote> findByPollAndIdGreaterThanOrderById(long poll, long id, Pageable pageable);
+
+    /**
+     * Stream the votes of a poll in the order they were stored, fetching them from the data store in batches.
+     * Must be called in a transaction and the stream closed after use.
+     */
+    Stream<Vote> streamByPollOrderById(long poll);
+
+    /**
+     * Stream the voter hashes of the votes of a poll, see VoterRegistry. Must be called in a transaction and the
+     * stream closed after use.
+     */
+    Stream<Long> streamVoterHashesByPoll(long poll);
+
+    /**
+     * Count the votes of a poll by option in the data store, read from idx_vote_poll_option. Options with no
+     * votes are not returned.
+     */
+    List<OptionCount> countVotesByOption(long poll);
+
+    /**
+     * Whether a vote was cast for a poll with the given Idempotency-Key, read from uk_vote_poll_ballot_key.
+     */
+    boolean existsByPollAndBallotKey(long poll, String ballotKey);
+
+    /**
+     * Whether another vote than the given one was cast for a poll with the given Idempotency-Key.
+     *
+     * @param id - the identity of the vote, or null for none
+     */
+    boolean existsByPollAndBallotKeyAndIdNot(long poll, String ballotKey, Long id);
+
+    /**
+     * Remove the given votes of a poll, once they are archived, see PollLifecycleService.
+     *
+     * @param ids - the identities of the votes e.g. [1234]
+     * @return - the number of votes removed
+     */
+    int deleteByPollAndIdIn(long poll, List<Long> ids);
+
+    /**
+     * @return - the polls with votes stored, in every shard
+     */
+    List<Long> findPolls();
+}
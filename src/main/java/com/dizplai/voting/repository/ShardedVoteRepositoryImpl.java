@@ -0,0 +1,262 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.Vote;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Serves the ballots from the vote table of the main data store through JPA, or from the shard of the poll
+ * through JDBC when voting.shards.enabled is set, see VoteShards.
+ * 1. A ballot saved to a shard takes its identity from the generator of Vote, in the transaction of the caller,
+ *    and is inserted in a transaction of the shard. The shard commits before the caller, so a caller that fails
+ *    after saving leaves the ballot stored and its count behind until the tally is reconciled, see
+ *    TallyReconciler. Ballots saved again keep their identities, or the position of their feed, and are left
+ *    out by the shard that stored them, see VoteShards.
+ * 2. Ballots read from a shard are not managed by the persistence context.
+ * 3. Polls and counts are summed over every shard.
+ */
+public class ShardedVoteRepositoryImpl implements ShardedVoteRepository {
+    // the JDBC batch size of the persistence context, see hibernate.jdbc.batch_size
+    private static final int BATCH_SIZE = 500;
+    private static final String SELECT_VOTE = "select id, poll, option_id, cast_on, ballot_key, voter_hash from vote ";
+    private static final RowMapper<Vote> VOTE = (rs, row) -> {
+        Timestamp castOn = rs.getTimestamp("cast_on");
+        return Vote.builder()
+                .id(rs.getLong("id"))
+                .poll(rs.getLong("poll"))
+                .optionId(rs.getLong("option_id"))
+                .castOn(castOn == null ? null : castOn.toLocalDateTime())
+                .ballotKey(rs.getString("ballot_key"))
+                .voterHash(rs.getObject("voter_hash", Long.class))
+                .build();
+    };
+
+    private final EntityManager entityManager;
+    private final VoteShards voteShards;
+    private final SimpleJpaRepository<Vote, Long> jpa;
+
+    public ShardedVoteRepositoryImpl(EntityManager entityManager, VoteShards voteShards) {
+        this.entityManager = entityManager;
+        this.voteShards = voteShards;
+        this.jpa = new SimpleJpaRepository<>(Vote.class, entityManager);
+    }
+
+    @Override
+    @Transactional
+    public Vote insert(Vote vote) {
+        if (!voteShards.isEnabled()) {
+            return jpa.saveAndFlush(vote);
+        }
+        insertShards(List.of(vote));
+        return vote;
+    }
+
+    @Override
+    @Transactional
+    public List<Vote> insertAll(List<Vote> votes) {
+        if (!voteShards.isEnabled()) {
+            // identities of a failed save were rolled back with its ballots
+            votes.forEach(vote -> vote.setId(null));
+            return jpa.saveAll(votes);
+        }
+        Set<Long> retried = votes.stream().map(Vote::getId).filter(Objects::nonNull).collect(Collectors.toSet());
+        assignIds(votes);
+        voteShards.insert(new ArrayList<>(votes), retried, BATCH_SIZE);
+        return votes;
+    }
+
+    @Override
+    @Transactional
+    public List<Vote> insertAll(List<Vote> votes, String feed, long position) {
+        if (!voteShards.isEnabled()) {
+            insertAll(votes);
+            return List.of();
+        }
+        assignIds(votes);
+        return voteShards.insert(new ArrayList<>(votes), feed, position, BATCH_SIZE);
+    }
+
+    @Override
+    public List<Long> findFeedPositions(String feed) {
+        return voteShards.isEnabled() ? voteShards.getFeedPositions(feed) : List.of();
+    }
+
+    private void insertShards(List<Vote> votes) {
+        assignIds(votes);
+        voteShards.insert(new ArrayList<>(votes), BATCH_SIZE);
+    }
+
+    private void assignIds(List<Vote> votes) {
+        // identities come from the generator of the entity, blocks of voting.id.allocation-size at a time
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        IdentifierGenerator ids = (IdentifierGenerator) session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(Vote.class).getGenerator();
+        votes.stream()
+                .filter(vote -> vote.getId() == null)
+                .forEach(vote -> vote.setId((Long) ids.generate(session, vote)));
+    }
+
+    @Override
+    public long count() {
+        if (!voteShards.isEnabled()) {
+            return jpa.count();
+        }
+        return voteShards.getJdbcTemplates().stream()
+                .mapToLong(shard -> shard.queryForObject("select count(*) from vote", Long.class))
+                .sum();
+    }
+
+    @Override
+    public List<Vote> findVotesByPoll(long poll) {
+        if (!voteShards.isEnabled()) {
+            return entityManager.createQuery("select v from vote v where v.poll = ?1", Vote.class)
+                    .setParameter(1, poll)
+                    .getResultList();
+        }
+        return voteShards.jdbcTemplate(poll).query(SELECT_VOTE + "where poll = ?", VOTE, poll);
+    }
+
+    @Override
+    public Slice<Vote> findByPollAndIdGreaterThanOrderById(long poll, long id, Pageable pageable) {
+        // one vote more than the page tells whether there is a next page
+        List<Vote> votes;
+        if (!voteShards.isEnabled()) {
+            votes = entityManager.createQuery("select v from vote v where v.poll = ?1 and v.id > ?2 order by v.poll, v.id",
+                            Vote.class)
+                    .setParameter(1, poll)
+                    .setParameter(2, id)
+                    .setFirstResult((int) pageable.getOffset())
+                    .setMaxResults(pageable.getPageSize() + 1)
+                    .getResultList();
+        } else {
+            votes = voteShards.jdbcTemplate(poll).query(SELECT_VOTE +
+                    "where poll = ? and id > ? order by poll, id offset ? rows fetch first ? rows only",
+                    VOTE, poll, id, pageable.getOffset(), pageable.getPageSize() + 1);
+        }
+        boolean hasNext = votes.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? votes.subList(0, pageable.getPageSize()) : votes, pageable, hasNext);
+    }
+
+    @Override
+    public Stream<Vote> streamByPollOrderById(long poll) {
+        if (!voteShards.isEnabled()) {
+            return entityManager.createQuery("select v from vote v where v.poll = ?1 order by v.poll, v.id", Vote.class)
+                    .setParameter(1, poll)
+                    .setHint(AvailableHints.HINT_FETCH_SIZE, 1000)
+                    .getResultStream();
+        }
+        return voteShards.jdbcTemplate(poll).queryForStream(SELECT_VOTE + "where poll = ? order by poll, id", VOTE, poll);
+    }
+
+    @Override
+    public Stream<Long> streamVoterHashesByPoll(long poll) {
+        if (!voteShards.isEnabled()) {
+            return entityManager.createQuery("select v.voterHash from vote v where v.poll = ?1 and v.voterHash is not null",
+                            Long.class)
+                    .setParameter(1, poll)
+                    .setHint(AvailableHints.HINT_FETCH_SIZE, 1000)
+                    .getResultStream();
+        }
+        return voteShards.jdbcTemplate(poll).queryForStream(
+                "select voter_hash from vote where poll = ? and voter_hash is not null", (rs, row) -> rs.getLong(1), poll);
+    }
+
+    @Override
+    public List<OptionCount> countVotesByOption(long poll) {
+        if (!voteShards.isEnabled()) {
+            return entityManager.createQuery("select new com.dizplai.voting.model.OptionCount(v.optionId, count(v)) " +
+                            "from vote v where v.poll = ?1 group by v.optionId", OptionCount.class)
+                    .setParameter(1, poll)
+                    .getResultList();
+        }
+        return voteShards.jdbcTemplate(poll).query("select option_id, count(*) from vote where poll = ? group by option_id",
+                (rs, row) -> new OptionCount(rs.getLong(1), rs.getLong(2)), poll);
+    }
+
+    @Override
+    public boolean existsByPollAndBallotKey(long poll, String ballotKey) {
+        if (!voteShards.isEnabled()) {
+            return !entityManager.createQuery("select v.id from vote v where v.poll = ?1 and v.ballotKey = ?2", Long.class)
+                    .setParameter(1, poll)
+                    .setParameter(2, ballotKey)
+                    .setMaxResults(1)
+                    .getResultList()
+                    .isEmpty();
+        }
+        return !voteShards.jdbcTemplate(poll).queryForList(
+                "select 1 from vote where poll = ? and ballot_key = ? fetch first row only", Integer.class, poll, ballotKey)
+                .isEmpty();
+    }
+
+    @Override
+    public boolean existsByPollAndBallotKeyAndIdNot(long poll, String ballotKey, Long id) {
+        if (id == null) {
+            return existsByPollAndBallotKey(poll, ballotKey);
+        }
+        if (!voteShards.isEnabled()) {
+            return !entityManager.createQuery("select v.id from vote v where v.poll = ?1 and v.ballotKey = ?2 and v.id <> ?3",
+                            Long.class)
+                    .setParameter(1, poll)
+                    .setParameter(2, ballotKey)
+                    .setParameter(3, id)
+                    .setMaxResults(1)
+                    .getResultList()
+                    .isEmpty();
+        }
+        return !voteShards.jdbcTemplate(poll).queryForList(
+                "select 1 from vote where poll = ? and ballot_key = ? and id <> ? fetch first row only", Integer.class,
+                poll, ballotKey, id)
+                .isEmpty();
+    }
+
+    @Override
+    @Transactional
+    public int deleteByPollAndIdIn(long poll, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        if (!voteShards.isEnabled()) {
+            return entityManager.createQuery("delete from vote v where v.poll = ?1 and v.id in ?2")
+                    .setParameter(1, poll)
+                    .setParameter(2, ids)
+                    .executeUpdate();
+        }
+        List<Object> parameters = new ArrayList<>(ids.size() + 1);
+        parameters.add(poll);
+        parameters.addAll(ids);
+        return voteShards.jdbcTemplate(poll).update("delete from vote where poll = ? and id in (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")", parameters.toArray());
+    }
+
+    @Override
+    public List<Long> findPolls() {
+        if (!voteShards.isEnabled()) {
+            return entityManager.createQuery("select distinct v.poll from vote v", Long.class).getResultList();
+        }
+        // a poll is stored in one shard, so the polls of the shards do not repeat
+        List<Long> polls = new ArrayList<>();
+        for (JdbcTemplate shard : voteShards.getJdbcTemplates()) {
+            polls.addAll(shard.queryForList("select distinct poll from vote", Long.class));
+        }
+        return polls;
+    }
+}
@@ -0,0 +1,240 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.config.ShardProperties;
+import com.dizplai.voting.model.Vote;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The data stores the ballots are partitioned into when voting.shards.enabled is set, see ShardProperties.
+ * 1. A poll is stored in one shard, chosen by the hash of its identity, so reading the ballots of a poll reads
+ *    one shard and the polls voted on at once write to different tables, indexes and connection pools.
+ * 2. Every shard has its own connection pool and a vote table with the columns and indexes of Vote. The table
+ *    is created when the application starts, with a vote_shard row that stops a shard from being opened with
+ *    another number or count, as the polls would be looked for in the wrong shards.
+ * 3. Vote identities still come from the vote_seq of the main data store, so they are unique across shards.
+ * 4. A shard commits before the caller, so ballots inserted again after the caller failed are stored once: by
+ *    their identity, or for a feed such as the ballot log by the position of the feed the shard stores with them,
+ *    see vote_feed.
+ * Ballots are read and written through VoteRepository, see ShardedVoteRepositoryImpl. When shards are not
+ * enabled no pool is opened and the ballots stay in the vote table of the main data store.
+ */
+@Component
+@Slf4j
+public class VoteShards {
+    private static final String INSERT_VOTE = "insert into vote (id, poll, option_id, cast_on, ballot_key, voter_hash) " +
+            "values (?, ?, ?, ?, ?, ?)";
+    private static final List<String> SCHEMA = List.of(
+            "create table if not exists vote (id bigint not null primary key, poll bigint not null, " +
+                    "option_id bigint not null, cast_on timestamp, ballot_key varchar(64), voter_hash bigint, " +
+                    "constraint uk_vote_poll_ballot_key unique (poll, ballot_key))",
+            "create index if not exists idx_vote_poll on vote (poll, id)",
+            "create index if not exists idx_vote_poll_option on vote (poll, option_id)",
+            "create index if not exists idx_vote_poll_cast_on on vote (poll, cast_on)",
+            "create table if not exists vote_shard (shard int not null, shards int not null)",
+            "create table if not exists vote_feed (name varchar(255) not null primary key, position bigint not null)");
+
+    private final ShardProperties properties;
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    private final List<JdbcTemplate> jdbcTemplates = new ArrayList<>();
+    private final List<TransactionTemplate> transactionTemplates = new ArrayList<>();
+
+    public VoteShards(ShardProperties properties) {
+        this.properties = properties;
+        if (!properties.enabled()) {
+            return;
+        }
+        if (properties.count() < 1) {
+            throw new IllegalStateException("voting.shards.count must be at least 1, was " + properties.count());
+        }
+        try {
+            for (int shard = 0; shard < properties.count(); shard++) {
+                open(shard);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        log.info("Storing ballots in {} shards at {}", properties.count(), properties.url());
+    }
+
+    private void open(int shard) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("vote-shard-" + shard);
+        config.setJdbcUrl(properties.url().replace("{shard}", Integer.toString(shard)));
+        config.setUsername(properties.username());
+        config.setPassword(properties.password());
+        config.setMaximumPoolSize(properties.poolSize());
+        HikariDataSource dataSource = new HikariDataSource(config);
+        dataSources.add(dataSource);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(1000);
+        SCHEMA.forEach(jdbcTemplate::execute);
+        List<Map<String, Object>> stamps = jdbcTemplate.queryForList("select shard, shards from vote_shard");
+        if (stamps.isEmpty()) {
+            jdbcTemplate.update("insert into vote_shard (shard, shards) values (?, ?)", shard, properties.count());
+        } else if (((Number) stamps.getFirst().get("shard")).intValue() != shard
+                || ((Number) stamps.getFirst().get("shards")).intValue() != properties.count()) {
+            throw new IllegalStateException("Shard " + config.getJdbcUrl() + " was created as shard " +
+                    stamps.getFirst().get("shard") + " of " + stamps.getFirst().get("shards") +
+                    ", not " + shard + " of " + properties.count());
+        }
+
+        jdbcTemplates.add(jdbcTemplate);
+        transactionTemplates.add(new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    public int getCount() {
+        return jdbcTemplates.size();
+    }
+
+    /**
+     * @param poll - poll identifier e.g. 1
+     * @return - the number of the shard the ballots of the poll are stored in
+     */
+    public int shardOf(long poll) {
+        // spread consecutive identities, a poll and the next one created are likely to be voted on together
+        return Math.floorMod(Long.hashCode(poll * 0x9E3779B97F4A7C15L), jdbcTemplates.size());
+    }
+
+    /**
+     * @param poll - poll identifier e.g. 1
+     * @return - the template of the shard the ballots of the poll are stored in
+     */
+    public JdbcTemplate jdbcTemplate(long poll) {
+        return jdbcTemplates.get(shardOf(poll));
+    }
+
+    /**
+     * @return - the templates of every shard, in shard order
+     */
+    public List<JdbcTemplate> getJdbcTemplates() {
+        return List.copyOf(jdbcTemplates);
+    }
+
+    /**
+     * Insert ballots in JDBC batches, in a transaction per shard. The identities must be set. The shards commit
+     * one after the other, so the ballots of one shard may be stored when another fails.
+     *
+     * @param votes - the ballots to insert, of any poll
+     * @param batchSize - the most rows sent in one batch e.g. 1000
+     */
+    public void insert(Collection<Vote> votes, int batchSize) {
+        byShard(votes).forEach((shard, shardVotes) -> transactionTemplates.get(shard).executeWithoutResult(status ->
+                insert(shard, shardVotes, batchSize)));
+    }
+
+    /**
+     * Insert ballots as insert(Collection, int) does, leaving out the retried ballots a shard has already - stored
+     * by an earlier insert that failed after the shard committed.
+     *
+     * @param votes - the ballots to insert, of any poll
+     * @param retried - the identities of the ballots inserted before e.g. [1234]
+     * @param batchSize - the most rows sent in one batch e.g. 1000
+     */
+    public void insert(Collection<Vote> votes, Set<Long> retried, int batchSize) {
+        byShard(votes).forEach((shard, shardVotes) -> transactionTemplates.get(shard).executeWithoutResult(status -> {
+            List<Long> ids = shardVotes.stream().map(Vote::getId).filter(retried::contains).toList();
+            Set<Long> stored = new HashSet<>();
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + batchSize));
+                stored.addAll(jdbcTemplates.get(shard).queryForList("select id from vote where id in (" +
+                        String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")", Long.class, chunk.toArray()));
+            }
+            insert(shard, shardVotes.stream().filter(vote -> !stored.contains(vote.getId())).toList(), batchSize);
+        }));
+    }
+
+    /**
+     * Insert the ballots of a feed up to a position, e.g. of the ballot log. Each shard stores the position of the
+     * feed in the transaction of its ballots, and leaves out the ballots of a batch it has stored the position of.
+     * A ballot with an Idempotency-Key the shard has already is left out rather than failing the batch.
+     *
+     * @param votes - the ballots to insert, of any poll, up to the position
+     * @param feed - the name of the feed e.g. data/ballots
+     * @param position - the position of the feed after the ballots e.g. 1234
+     * @param batchSize - the most rows sent in one batch e.g. 1000
+     * @return - the ballots left out for their Idempotency-Key
+     */
+    public List<Vote> insert(Collection<Vote> votes, String feed, long position, int batchSize) {
+        List<Vote> duplicates = new ArrayList<>();
+        byShard(votes).forEach((shard, shardVotes) -> transactionTemplates.get(shard).executeWithoutResult(status -> {
+            JdbcTemplate jdbcTemplate = jdbcTemplates.get(shard);
+            List<Long> fed = jdbcTemplate.queryForList("select position from vote_feed where name = ?", Long.class, feed);
+            if (!fed.isEmpty() && fed.getFirst() >= position) {
+                log.info("Shard {} stored the ballots of {} up to {} before", shard, feed, position);
+                return;
+            }
+            List<Vote> inserted = new ArrayList<>();
+            Set<String> keys = new HashSet<>();
+            for (Vote vote : shardVotes) {
+                if (vote.getBallotKey() != null && (!keys.add(vote.getPoll() + ":" + vote.getBallotKey())
+                        || !jdbcTemplate.queryForList("select 1 from vote where poll = ? and ballot_key = ? fetch first row only",
+                        Integer.class, vote.getPoll(), vote.getBallotKey()).isEmpty())) {
+                    duplicates.add(vote);
+                } else {
+                    inserted.add(vote);
+                }
+            }
+            insert(shard, inserted, batchSize);
+            if (jdbcTemplate.update("update vote_feed set position = ? where name = ?", position, feed) == 0) {
+                jdbcTemplate.update("insert into vote_feed (name, position) values (?, ?)", feed, position);
+            }
+        }));
+        return duplicates;
+    }
+
+    /**
+     * @param feed - the name of the feed e.g. data/ballots
+     * @return - the positions of the feed stored in the shards, see insert(Collection, String, long, int)
+     */
+    public List<Long> getFeedPositions(String feed) {
+        List<Long> positions = new ArrayList<>();
+        for (JdbcTemplate shard : jdbcTemplates) {
+            positions.addAll(shard.queryForList("select position from vote_feed where name = ?", Long.class, feed));
+        }
+        return positions;
+    }
+
+    private Map<Integer, List<Vote>> byShard(Collection<Vote> votes) {
+        return votes.stream().collect(Collectors.groupingBy(vote -> shardOf(vote.getPoll())));
+    }
+
+    private void insert(int shard, List<Vote> votes, int batchSize) {
+        jdbcTemplates.get(shard).batchUpdate(INSERT_VOTE, votes, batchSize, (statement, vote) -> {
+            statement.setLong(1, vote.getId());
+            statement.setLong(2, vote.getPoll());
+            statement.setLong(3, vote.getOptionId());
+            statement.setTimestamp(4, vote.getCastOn() == null ? null : Timestamp.valueOf(vote.getCastOn()));
+            statement.setString(5, vote.getBallotKey());
+            statement.setObject(6, vote.getVoterHash(), Types.BIGINT);
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        dataSources.forEach(HikariDataSource::close);
+    }
+}
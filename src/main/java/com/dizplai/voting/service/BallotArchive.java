@@ -0,0 +1,282 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.config.PollLifecycleProperties;
+import com.dizplai.voting.model.Vote;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The ballots of closed polls, a file per poll in voting.polls.archive-directory e.g. poll-1.ballots.gz, so
+ * they can be removed from the vote table and still be listed and exported, see PollLifecycleService.
+ * 1. A file is written under a temporary name, forced to the disk and renamed, so a file that exists is whole.
+ * 2. The file starts with a magic number, the format version and the poll, followed by the ballots in the order
+ *    they were stored, in chunks of CHUNK_SIZE ballots gzipped on their own, each ending with an end marker.
+ * 3. The file ends with an index of the chunks - the identity of the first ballot of each chunk and where it
+ *    starts - followed by where the index starts and the magic number, so a file cut short is told from a whole
+ *    one and a page of ballots is read from the chunk it starts in rather than from the start of the file.
+ * A ballot is a flag byte for the values present, the identity, the option identity, the time cast in
+ * microseconds, the voter hash and the ballot key.
+ */
+@Component
+@Slf4j
+public class BallotArchive {
+    private static final int MAGIC = 0x42414C41;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int TRAILER_SIZE = 12;
+    private static final int CHUNK_SIZE = 4096;
+    private static final byte END = 0;
+    private static final byte BALLOT = 1;
+    private static final byte HAS_CAST_ON = 2;
+    private static final byte HAS_BALLOT_KEY = 4;
+    private static final byte HAS_VOTER_HASH = 8;
+
+    private final Path directory;
+    private final String node;
+
+    public BallotArchive(PollLifecycleProperties properties, ClusterProperties clusterProperties) {
+        this.directory = properties.archiveDirectory();
+        this.node = clusterProperties.nodeId();
+    }
+
+    /**
+     * @param poll - poll identifier e.g. 1
+     * @return - true if the ballots of the poll are archived
+     */
+    public boolean exists(long poll) {
+        return Files.exists(pathOf(poll));
+    }
+
+    /**
+     * Write the ballots of a poll to its archive, replacing an archive written before.
+     *
+     * @param poll - poll identifier e.g. 1
+     * @param votes - the ballots of the poll, in the order they were stored
+     * @return - the number of ballots written for each option identity
+     */
+    public Map<Long, Long> write(long poll, Stream<Vote> votes) {
+        Map<Long, Long> counts = new HashMap<>();
+        Path path = pathOf(poll);
+        // named after the instance, as instances sharing the directory may archive a poll at once
+        Path temporary = directory.resolve(path.getFileName() + "." + node + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(poll);
+                List<Long> firstIds = new ArrayList<>();
+                List<Long> offsets = new ArrayList<>();
+                long offset = HEADER_SIZE;
+                Iterator<Vote> ballots = votes.iterator();
+                while (ballots.hasNext()) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+                    try (DataOutputStream chunk = new DataOutputStream(new GZIPOutputStream(bytes, 1 << 16))) {
+                        for (int i = 0; i < CHUNK_SIZE && ballots.hasNext(); i++) {
+                            Vote vote = ballots.next();
+                            if (i == 0) {
+                                firstIds.add(vote.getId());
+                                offsets.add(offset);
+                            }
+                            write(chunk, vote);
+                            counts.merge(vote.getOptionId(), 1L, Long::sum);
+                        }
+                        chunk.writeByte(END);
+                    }
+                    bytes.writeTo(out);
+                    offset += bytes.size();
+                }
+                out.writeInt(firstIds.size());
+                for (int i = 0; i < firstIds.size(); i++) {
+                    out.writeLong(firstIds.get(i));
+                    out.writeLong(offsets.get(i));
+                }
+                out.writeLong(offset);
+                out.writeInt(MAGIC);
+            }
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to archive the ballots of poll " + poll + " in " + path, e);
+        } finally {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException e) {
+                log.warn("Failed to remove {}", temporary, e);
+            }
+        }
+
+        log.info("Archived {} ballots of poll: {} in {}", counts.values().stream().mapToLong(Long::longValue).sum(),
+                poll, path);
+        return counts;
+    }
+
+    /**
+     * Pass the archived ballots of a poll to the consumer in the order they were stored, reading the file as they
+     * are consumed.
+     *
+     * @param poll - poll identifier e.g. 1
+     * @param consumer - receives the ballots one by one
+     */
+    public void read(long poll, Consumer<Vote> consumer) {
+        scan(poll, 0, vote -> {
+            consumer.accept(vote);
+            return true;
+        });
+    }
+
+    /**
+     * Return a page of the archived ballots of a poll that were stored after the given ballot, in the order they
+     * were stored. The file is read from the chunk of the first ballot of the page up to the end of the page.
+     *
+     * @param poll - poll identifier e.g. 1
+     * @param after - the identity of the ballot before the page e.g. 1234, 0 for the first page
+     * @param limit - the most ballots to return e.g. 100
+     * @return - the page, with one ballot more than the limit if there is a next page
+     */
+    public List<Vote> read(long poll, long after, int limit) {
+        List<Vote> page = new ArrayList<>();
+        scan(poll, after, vote -> {
+            if (vote.getId() > after) {
+                page.add(vote);
+            }
+            return page.size() <= limit;
+        });
+        return page;
+    }
+
+    /**
+     * Pass the ballots to the consumer from the chunk holding the ballots after the given one, until the consumer
+     * returns false.
+     */
+    private void scan(long poll, long after, Predicate<Vote> consumer) {
+        Path path = pathOf(poll);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            ByteBuffer trailer = read(channel, channel.size() - TRAILER_SIZE, TRAILER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != poll) {
+                throw new IllegalStateException(path + " is not an archive of the ballots of poll " + poll);
+            }
+            long indexOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC || indexOffset < HEADER_SIZE || indexOffset > channel.size() - TRAILER_SIZE) {
+                throw new IllegalStateException(path + " ends before its index");
+            }
+            ByteBuffer index = read(channel, indexOffset, (int) (channel.size() - TRAILER_SIZE - indexOffset));
+            int chunks = index.getInt();
+            long[] firstIds = new long[chunks];
+            long[] offsets = new long[chunks + 1];
+            for (int i = 0; i < chunks; i++) {
+                firstIds[i] = index.getLong();
+                offsets[i] = index.getLong();
+            }
+            offsets[chunks] = indexOffset;
+
+            // the last chunk starting at or before the ballot after the given one
+            int first = Arrays.binarySearch(firstIds, after + 1);
+            first = first >= 0 ? first : Math.max(0, -first - 2);
+            for (int i = first; i < chunks; i++) {
+                ByteBuffer chunk = read(channel, offsets[i], (int) (offsets[i + 1] - offsets[i]));
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                        new ByteArrayInputStream(chunk.array()), 1 << 16)))) {
+                    for (byte flags = in.readByte(); flags != END; flags = in.readByte()) {
+                        if (!consumer.test(read(in, poll, flags))) {
+                            return;
+                        }
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            throw new IllegalStateException(path + " ends before its last ballot", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the archived ballots of poll " + poll + " from " + path, e);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0 || length < 0) {
+            throw new EOFException();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void write(DataOutputStream out, Vote vote) throws IOException {
+        byte flags = BALLOT;
+        flags |= vote.getCastOn() == null ? 0 : HAS_CAST_ON;
+        flags |= vote.getBallotKey() == null ? 0 : HAS_BALLOT_KEY;
+        flags |= vote.getVoterHash() == null ? 0 : HAS_VOTER_HASH;
+        out.writeByte(flags);
+        out.writeLong(vote.getId());
+        out.writeLong(vote.getOptionId());
+        if (vote.getCastOn() != null) {
+            out.writeLong(vote.getCastOn().toEpochSecond(ZoneOffset.UTC) * 1_000_000 + vote.getCastOn().getNano() / 1_000);
+        }
+        if (vote.getVoterHash() != null) {
+            out.writeLong(vote.getVoterHash());
+        }
+        if (vote.getBallotKey() != null) {
+            out.writeUTF(vote.getBallotKey());
+        }
+    }
+
+    private static Vote read(DataInputStream in, long poll, byte flags) throws IOException {
+        Vote.VoteBuilder vote = Vote.builder()
+                .poll(poll)
+                .id(in.readLong())
+                .optionId(in.readLong());
+        if ((flags & HAS_CAST_ON) != 0) {
+            long micros = in.readLong();
+            vote.castOn(LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                    (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC));
+        }
+        if ((flags & HAS_VOTER_HASH) != 0) {
+            vote.voterHash(in.readLong());
+        }
+        if ((flags & HAS_BALLOT_KEY) != 0) {
+            vote.ballotKey(in.readUTF());
+        }
+        return vote.build();
+    }
+
+    private Path pathOf(long poll) {
+        return directory.resolve("poll-" + poll + ".ballots.gz");
+    }
+}
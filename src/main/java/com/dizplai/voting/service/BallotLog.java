@@ -0,0 +1,345 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.model.Vote;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An append-only log of ballots in memory-mapped segment files. Every ballot is a record of 128 bytes, so the
+ * ballot with sequence number n is at a known place and appending is a copy into the mapped file:
+ * 1. the segments are named after the sequence of their first ballot e.g. ballots-00000000000000524288.log, and
+ *    a segment is written to the disk before the next one is started
+ * 2. with group commit, append returns once the ballot is on the disk. The first vote to wait writes the file
+ *    to the disk for every ballot appended so far, the votes appended while it writes wait for the next one -
+ *    so one fsync serves as many votes as arrive during an fsync
+ * 3. a record ends with its CRC32C, so the ballots torn by a crash of the machine are found when the log is
+ *    opened again and the log continues from the last whole ballot
+ * The record is the checksum, a flag for the voter hash, the length of the ballot key, the poll, the option
+ * identity, the time cast in microseconds, the voter hash and up to 88 bytes of UTF-8 ballot key.
+ */
+@Slf4j
+public class BallotLog implements Closeable {
+    public static final int RECORD_SIZE = 128;
+    public static final int MAX_KEY_BYTES = 88;
+    private static final int FLAGS_OFFSET = 4;
+    private static final int KEY_LENGTH_OFFSET = 5;
+    private static final int POLL_OFFSET = 8;
+    private static final int OPTION_OFFSET = 16;
+    private static final int CAST_ON_OFFSET = 24;
+    private static final int VOTER_HASH_OFFSET = 32;
+    private static final int KEY_OFFSET = 40;
+    private static final byte HAS_VOTER_HASH = 1;
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final boolean groupCommit;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32C crc = new CRC32C();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private volatile Segment current;
+    private volatile long end;
+    private long durable;
+    private boolean syncing;
+    private boolean closed;
+
+    private BallotLog(Path directory, int segmentRecords, boolean groupCommit) {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.groupCommit = groupCommit;
+    }
+
+    /**
+     * Open the log in a directory, creating the directory if there is none. The log continues after the last
+     * whole ballot of the last segment.
+     *
+     * @param directory - where the segments are kept e.g. data/ballots
+     * @param segmentSize - the bytes of a new segment, rounded down to a whole record e.g. 67108864
+     * @param groupCommit - true if append waits for the ballot to be on the disk
+     * @return - the log
+     */
+    public static BallotLog open(Path directory, long segmentSize, boolean groupCommit) {
+        int segmentRecords = (int) Math.min(Integer.MAX_VALUE / RECORD_SIZE, Math.max(1, segmentSize / RECORD_SIZE));
+        BallotLog ballotLog = new BallotLog(directory, segmentRecords, groupCommit);
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listed = Files.list(directory)) {
+                files = listed.filter(path -> path.getFileName().toString().matches("ballots-\\d{20}\\.log")).sorted().toList();
+            }
+            for (Path path : files) {
+                long base = Long.parseLong(path.getFileName().toString().substring(8, 28));
+                int capacity = (int) (Files.size(path) / RECORD_SIZE);
+                Segment segment = new Segment(base, capacity, path, map(path, (long) capacity * RECORD_SIZE));
+                ballotLog.segments.put(base, segment);
+                ballotLog.current = segment;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (ballotLog.current != null) {
+            Segment last = ballotLog.current;
+            int records = 0;
+            while (records < last.capacity() && ballotLog.read(last, records) != null) {
+                records++;
+            }
+            ballotLog.end = last.base() + records;
+        }
+        ballotLog.durable = ballotLog.end;
+        log.info("Opened ballot log of {} segments in {} ending at ballot {}", ballotLog.segments.size(), directory,
+                ballotLog.end);
+        return ballotLog;
+    }
+
+    /**
+     * Append a ballot to the log. With group commit the ballot is on the disk when the method returns.
+     *
+     * @param vote - the ballot, its poll, option and time cast are required
+     * @return - the sequence number of the ballot
+     * @throws IllegalArgumentException - the ballot key is longer than MAX_KEY_BYTES in UTF-8
+     */
+    public long append(Vote vote) {
+        byte[] key = vote.getBallotKey() == null ? new byte[0] : vote.getBallotKey().getBytes(StandardCharsets.UTF_8);
+        if (key.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("A ballot key can have up to " + MAX_KEY_BYTES + " bytes in UTF-8");
+        }
+
+        long sequence;
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The ballot log is closed: " + directory);
+            }
+            sequence = end;
+            if (current == null || sequence >= current.base() + current.capacity()) {
+                roll(sequence);
+            }
+            record.clear();
+            record.putInt(0)
+                    .put(vote.getVoterHash() == null ? 0 : HAS_VOTER_HASH)
+                    .put((byte) key.length)
+                    .putShort((short) 0)
+                    .putLong(vote.getPoll())
+                    .putLong(vote.getOptionId())
+                    .putLong(toMicros(vote.getCastOn()))
+                    .putLong(vote.getVoterHash() == null ? 0 : vote.getVoterHash())
+                    .put(key)
+                    .put(new byte[MAX_KEY_BYTES - key.length]);
+            crc.reset();
+            crc.update(record.array(), FLAGS_OFFSET, RECORD_SIZE - FLAGS_OFFSET);
+            record.putInt(0, (int) crc.getValue());
+            current.buffer().put((int) (sequence - current.base()) * RECORD_SIZE, record.array());
+            end = sequence + 1;
+        } finally {
+            appendLock.unlock();
+        }
+
+        if (groupCommit) {
+            awaitDurable(sequence + 1);
+        }
+        return sequence;
+    }
+
+    /**
+     * @param sequence - the sequence number of a ballot e.g. 1234
+     * @return - the ballot, without its identity, or null if the log has no whole ballot with the number
+     */
+    public Vote read(long sequence) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+        if (entry == null || sequence >= end || sequence - entry.getKey() >= entry.getValue().capacity()) {
+            return null;
+        }
+        return read(entry.getValue(), (int) (sequence - entry.getKey()));
+    }
+
+    /**
+     * @return - the sequence number of the first ballot kept in the log, the end if it keeps none
+     */
+    public long start() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first == null ? end : Math.min(first.getKey(), end);
+    }
+
+    /**
+     * @return - the sequence number of the next ballot appended
+     */
+    public long end() {
+        return end;
+    }
+
+    /**
+     * Continue the log at a sequence number past its end, in a new segment. The ballots up to the sequence were
+     * lost from the log, but not from the data store, and their numbers are not used again.
+     *
+     * @param sequence - the sequence number of the next ballot e.g. 1234
+     */
+    public void skipTo(long sequence) {
+        appendLock.lock();
+        try {
+            if (sequence > end) {
+                log.warn("Ballot log ends at ballot {}, continuing at ballot {}", end, sequence);
+                roll(sequence);
+                end = sequence;
+                syncLock.lock();
+                try {
+                    durable = Math.max(durable, sequence);
+                } finally {
+                    syncLock.unlock();
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Delete the segments whose ballots all come before a sequence number, e.g. ballots already in the data
+     * store. The segment being appended to is kept.
+     *
+     * @param sequence - the sequence number of the first ballot to keep e.g. 1234
+     */
+    public void deleteBefore(long sequence) {
+        for (Segment segment : segments.values()) {
+            if (segment == current || segment.base() + segment.capacity() > sequence) {
+                return;
+            }
+            segments.remove(segment.base());
+            try {
+                Files.deleteIfExists(segment.path());
+                log.debug("Deleted ballot log segment {}", segment.path());
+            } catch (IOException e) {
+                // a segment still mapped cannot be deleted on some systems, it is skipped when the log is opened
+                log.warn("Failed to delete ballot log segment {}", segment.path(), e);
+            }
+        }
+    }
+
+    /**
+     * Write the ballots appended so far to the disk.
+     */
+    public void force() {
+        awaitDurable(end);
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            closed = true;
+        } finally {
+            appendLock.unlock();
+        }
+        force();
+    }
+
+    /**
+     * Wait for the ballots before a sequence number to be on the disk, writing the log to the disk if no other
+     * thread is. The thread that writes covers every ballot appended before it started.
+     */
+    private void awaitDurable(long sequence) {
+        syncLock.lock();
+        try {
+            while (durable < sequence) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                // read the end before the segment, a segment is on the disk before the next one is started
+                long target = end;
+                Segment segment = current;
+                syncLock.unlock();
+                try {
+                    if (segment != null) {
+                        segment.buffer().force();
+                    }
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    synced.signalAll();
+                }
+                durable = Math.max(durable, target);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void roll(long base) {
+        if (current != null) {
+            current.buffer().force();
+        }
+        Path path = directory.resolve(String.format("ballots-%020d.log", base));
+        try {
+            Files.deleteIfExists(path);
+            current = new Segment(base, segmentRecords, path, map(path, (long) segmentRecords * RECORD_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.put(base, current);
+        log.debug("Started ballot log segment {}", path);
+    }
+
+    private Vote read(Segment segment, int index) {
+        byte[] bytes = new byte[RECORD_SIZE];
+        segment.buffer().get(index * RECORD_SIZE, bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes, FLAGS_OFFSET, RECORD_SIZE - FLAGS_OFFSET);
+        int keyLength = buffer.get(KEY_LENGTH_OFFSET);
+        if (buffer.getInt(0) != (int) checksum.getValue() || keyLength < 0 || keyLength > MAX_KEY_BYTES) {
+            return null;
+        }
+        return Vote.builder()
+                .poll(buffer.getLong(POLL_OFFSET))
+                .optionId(buffer.getLong(OPTION_OFFSET))
+                .castOn(fromMicros(buffer.getLong(CAST_ON_OFFSET)))
+                .voterHash(buffer.get(FLAGS_OFFSET) == HAS_VOTER_HASH ? buffer.getLong(VOTER_HASH_OFFSET) : null)
+                .ballotKey(keyLength == 0 ? null : new String(bytes, KEY_OFFSET, keyLength, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static MappedByteBuffer map(Path path, long length) throws IOException {
+        // the mapping outlives the channel
+        try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    private record Segment(long base, int capacity, Path path, MappedByteBuffer buffer) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.model.Vote;
+
+/**
+ * Persists the ballots cast through VoteService. The implementation is selected by the
+ * voting.ballot-log.enabled and voting.write-behind.enabled properties:
+ *      1. SyncBallotStore - every ballot is saved and flushed by the request that cast it (default)
+ *      2. WriteBehindBallotStore - ballots are queued and saved in batches by a background writer
+ *      3. LogBallotStore - ballots are appended to a log on the disk and fed to the data store in the
+ *         background, takes the place of the other two when enabled
+ */
+public interface BallotStore {
+    /**
+     * Persist a ballot. The ballot is durable when the method returns unless the store writes behind, or
+     * appends to a log that is written to the disk at an interval.
+     *
+     * @param vote - the ballot to persist
+     */
+    void store(Vote vote);
+}
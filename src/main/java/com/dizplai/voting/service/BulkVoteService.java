@@ -0,0 +1,197 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.BulkVoteProperties;
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.error.AlreadyVotedException;
+import com.dizplai.voting.error.PollClosedException;
+import com.dizplai.voting.error.PollNotFoundException;
+import com.dizplai.voting.error.UnknownOptionException;
+import com.dizplai.voting.error.VoterTokenRequiredException;
+import com.dizplai.voting.model.BulkVoteRequest;
+import com.dizplai.voting.model.BulkVoteResponse;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.model.VoteRequest;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.VoteShards;
+import com.dizplai.voting.tally.PollTally;
+import com.dizplai.voting.tally.TallyEngine;
+import com.dizplai.voting.tally.VoteTimeline;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Casts the votes of a BulkVoteRequest, e.g. the votes a partner collected by SMS, in one transaction rather
+ * than a request and a transaction per vote.
+ * 1. Every count and ballot is checked first - the option must be an option of the poll and, for a poll that
+ *    allows one vote per voter, a ballot needs the token of a voter who has not voted. Counts have no voter, so
+ *    they are rejected by those polls.
+ * 2. The votes are saved as vote rows, a count of n as n rows, inserted in JDBC batches of voting.bulk.batch-size
+ *    without going through the persistence context. The poll_option_tally table is updated once per option in
+ *    the same transaction. With voting.shards.enabled the rows are inserted in the shard of the poll, see
+ *    VoteShards, once the counts are updated.
+ * 3. The tally is updated once per option after the transaction commits.
+ * An atomic request with an invalid count or ballot saves no vote. Ballots are saved directly, whether or not
+ * single votes are written behind.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BulkVoteService {
+    private static final String INSERT_VOTE = "insert into vote (id, poll, option_id, cast_on, voter_hash) values (?, ?, ?, ?, ?)";
+
+    private final TallyEngine tallyEngine;
+    private final VoteTimeline voteTimeline;
+    private final VoterRegistry voterRegistry;
+    private final PollOptionTallyRepository pollOptionTallyRepository;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BulkVoteProperties properties;
+    private final ClusterProperties clusterProperties;
+    private final VoteShards voteShards;
+
+    /**
+     * Given a poll identifier and the votes of a bulk request, save the valid votes and return the outcome.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param request - the counts and ballots to cast, see BulkVoteRequest
+     * @return - the votes accepted, the errors and the vote distribution after the votes are cast
+     * @throws PollNotFoundException - there is no such poll
+     * @throws PollClosedException - the closing time of the poll has passed
+     */
+    @Timed("voting.vote.bulk")
+    public BulkVoteResponse castVotes(long pollId, BulkVoteRequest request) {
+        // before the voters of the poll are looked up, see VoterRegistry
+        PollTally tally = tallyEngine.find(pollId);
+        if (tally == null) {
+            throw new PollNotFoundException(Long.toString(pollId));
+        }
+        if (tally.isClosed()) {
+            throw new PollClosedException(pollId);
+        }
+        boolean atomic = request.atomic() == null || request.atomic();
+        LocalDateTime castOn = LocalDateTime.now();
+        List<BulkVoteResponse.Error> errors = new ArrayList<>();
+        List<Vote> votes = new ArrayList<>((int) Math.min(request.votes(), properties.maxVotes()));
+        Map<Long, Long> byOption = new LinkedHashMap<>();
+        List<Long> voters = new ArrayList<>();
+
+        if (request.counts() != null) {
+            boolean limited = !request.counts().isEmpty() && voterRegistry.isLimited(pollId);
+            request.counts().forEach((text, count) -> {
+                String item = "counts." + text;
+                if (limited) {
+                    errors.add(new BulkVoteResponse.Error(item, new VoterTokenRequiredException(pollId).getMessage()));
+                } else if (count == null || count < 1) {
+                    errors.add(new BulkVoteResponse.Error(item, "A count must be at least 1"));
+                } else {
+                    try {
+                        PollOption option = tallyEngine.resolve(pollId, text);
+                        for (long i = 0; i < count; i++) {
+                            votes.add(vote(pollId, option, castOn, null));
+                        }
+                        byOption.merge(option.getId(), count, Long::sum);
+                    } catch (UnknownOptionException | PollClosedException e) {
+                        errors.add(new BulkVoteResponse.Error(item, e.getMessage()));
+                    }
+                }
+            });
+        }
+
+        if (request.ballots() != null) {
+            for (int i = 0; i < request.ballots().size(); i++) {
+                VoteRequest ballot = request.ballots().get(i);
+                try {
+                    PollOption option = tallyEngine.resolve(pollId, ballot == null ? null : ballot.voteCast());
+                    Long voterHash = voterRegistry.register(pollId, ballot.voterToken());
+                    if (voterHash != null) {
+                        voters.add(voterHash);
+                    }
+                    votes.add(vote(pollId, option, castOn, voterHash));
+                    byOption.merge(option.getId(), 1L, Long::sum);
+                } catch (UnknownOptionException | PollClosedException | VoterTokenRequiredException
+                         | AlreadyVotedException e) {
+                    errors.add(new BulkVoteResponse.Error("ballots[" + i + "]", e.getMessage()));
+                }
+            }
+        }
+
+        if (atomic && !errors.isEmpty()) {
+            voters.forEach(voterHash -> voterRegistry.release(pollId, voterHash));
+            log.info("Rejected bulk votes for poll: {} with {} errors", pollId, errors.size());
+            return BulkVoteResponse.builder().accepted(0).rejected(errors.size()).errors(errors).build();
+        }
+
+        try {
+            save(pollId, votes, byOption);
+        } catch (RuntimeException e) {
+            // no vote was saved, the voters may vote again
+            voters.forEach(voterHash -> voterRegistry.release(pollId, voterHash));
+            throw e;
+        }
+        byOption.forEach((optionId, count) -> {
+            tallyEngine.record(pollId, optionId, count);
+            voteTimeline.record(pollId, optionId, count);
+        });
+
+        log.info("Saved {} bulk votes for poll: {}, rejected {}", votes.size(), pollId, errors.size());
+        return BulkVoteResponse.builder()
+                .accepted(votes.size())
+                .rejected(errors.size())
+                .errors(errors.isEmpty() ? null : errors)
+                .results(tallyEngine.toPollResponses(pollId, true))
+                .build();
+    }
+
+    private void save(long pollId, List<Vote> votes, Map<Long, Long> byOption) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // identities come from the generator of the entity, blocks of voting.id.allocation-size at a time
+            SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+            IdentifierGenerator ids = (IdentifierGenerator) session.getFactory().getMappingMetamodel()
+                    .getEntityDescriptor(Vote.class).getGenerator();
+            votes.forEach(vote -> vote.setId((Long) ids.generate(session, vote)));
+
+            // the rows are inserted without the persistence context, which costs more than the inserts at this size
+            if (!voteShards.isEnabled()) {
+                jdbcTemplate.batchUpdate(INSERT_VOTE, votes, properties.batchSize(), (statement, vote) -> {
+                    statement.setLong(1, vote.getId());
+                    statement.setLong(2, vote.getPoll());
+                    statement.setLong(3, vote.getOptionId());
+                    statement.setTimestamp(4, Timestamp.valueOf(vote.getCastOn()));
+                    statement.setObject(5, vote.getVoterHash(), Types.BIGINT);
+                });
+            }
+            byOption.forEach((optionId, count) -> pollOptionTallyRepository.increment(pollId, optionId, clusterProperties.nodeId(), count));
+            if (voteShards.isEnabled()) {
+                // inserted after the counts, so the counts roll back when the shard fails
+                voteShards.insert(votes, properties.batchSize());
+            }
+        });
+    }
+
+    private static Vote vote(long pollId, PollOption option, LocalDateTime castOn, Long voterHash) {
+        return Vote.builder()
+                .poll(pollId)
+                .optionId(option.getId())
+                .option(option.getOption())
+                .castOn(castOn)
+                .voterHash(voterHash)
+                .build();
+    }
+}
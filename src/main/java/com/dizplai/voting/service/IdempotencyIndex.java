@@ -0,0 +1,95 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.IdempotencyProperties;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.util.RotatingBloomFilter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates the votes cast with an Idempotency-Key, so a client may retry a vote it has no answer for. A key
+ * is looked up in three places, each bounded in memory:
+ * 1. a cache of the results of the most recent keys - a retry is answered with the result of the first vote,
+ *    a retry of a vote still being cast waits for its result
+ * 2. a Bloom filter of the keys of the last voting.idempotency.window - a key it has not seen is new, so a
+ *    new vote costs no lookup in the data store
+ * 3. the data store, for keys the filter may have seen - the ballot_key column is unique within a poll
+ * A retry found in the data store is answered with the current distribution.
+ * Retries are counted as voting.votes.replayed.
+ */
+@Component
+@Slf4j
+public class IdempotencyIndex {
+    private final VoteRepository voteRepository;
+    private final Cache<String, CompletableFuture<List<OptionResponse>>> results;
+    private final RotatingBloomFilter keys;
+    private final Counter replayed;
+
+    public IdempotencyIndex(VoteRepository voteRepository, IdempotencyProperties properties, MeterRegistry meterRegistry) {
+        this.voteRepository = voteRepository;
+        this.results = Caffeine.newBuilder()
+                .maximumSize(properties.cacheSize())
+                .expireAfterWrite(properties.window())
+                .build();
+        this.keys = new RotatingBloomFilter(properties.expectedKeys(), properties.falsePositiveRate(),
+                properties.window().toNanos());
+        this.replayed = Counter.builder("voting.votes.replayed").register(meterRegistry);
+    }
+
+    /**
+     * Cast a vote once per key and poll. The first vote with a key is cast, its retries are answered with its
+     * result. If the vote fails it may be retried with the same key.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param key - the Idempotency-Key of the vote e.g. 2f1c7a4e-0d7b-4b8e-9a51-3c0e8e1f6d2b
+     * @param cast - casts the vote and returns the distribution
+     * @param current - returns the current distribution, for a retry of a vote that is no longer cached
+     * @return - the distribution after the vote
+     */
+    public List<OptionResponse> submit(long pollId, String key, Supplier<List<OptionResponse>> cast,
+                                       Supplier<List<OptionResponse>> current) {
+        String id = pollId + ":" + key;
+        CompletableFuture<List<OptionResponse>> result = new CompletableFuture<>();
+        CompletableFuture<List<OptionResponse>> prior = results.asMap().putIfAbsent(id, result);
+        if (prior != null) {
+            log.debug("Replaying vote for poll: {} with key {}", pollId, key);
+            replayed.increment();
+            return join(prior);
+        }
+
+        try {
+            if (keys.mightContain(id) && voteRepository.existsByPollAndBallotKey(pollId, key)) {
+                log.debug("Vote for poll: {} with key {} was cast before", pollId, key);
+                replayed.increment();
+                result.complete(current.get());
+            } else {
+                keys.put(id);
+                result.complete(cast.get());
+            }
+        } catch (RuntimeException e) {
+            // the vote was not cast, let the client retry it
+            results.asMap().remove(id, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+        return result.join();
+    }
+
+    private static List<OptionResponse> join(CompletableFuture<List<OptionResponse>> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.BallotLogProperties;
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.error.BallotQueueFullException;
+import com.dizplai.voting.model.BallotLogPosition;
+import com.dizplai.voting.model.PollOptionTally;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.repository.BallotLogPositionRepository;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.tally.TallyEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Appends the ballots to a BallotLog and feeds them to the vote table from a single background feeder, so a
+ * vote costs a 128 byte append, and an fsync shared with the votes cast meanwhile, rather than a transaction.
+ * 1. The feeder saves the ballots of the log in batches of voting.ballot-log.batch-size, one transaction each.
+ *    The poll_option_tally table and the position of the log, see BallotLogPosition, are updated in the same
+ *    transaction, so a ballot is saved once however the application stops.
+ * 2. On startup the ballots after the position are saved before any vote is accepted, so the tallies seeded
+ *    from the data store count every ballot of the log. Segments fed to the vote table are deleted.
+ * 3. A batch that cannot be saved is retried until it is. A ballot whose Idempotency-Key is in the vote table
+ *    already - cast again after the first vote left IdempotencyIndex - is dropped and not counted.
+ * 4. A shard stores the position of the log with its ballots and commits before the vote table, see VoteShards.
+ *    A batch is retried up to the same position, so the shards that stored it leave it out, and the positions
+ *    found in the shards on startup end the batches replayed.
+ * The vote table, and so the ballot listings and exports, run behind the tally by the ballots not fed yet.
+ * Metrics: voting.ballots.log.lag (ballots not fed), voting.ballots.flush (time to save a batch),
+ * voting.ballots.flush.size (ballots in a batch) and voting.ballots.flush.failures (batches not saved).
+ */
+@Component
+@ConditionalOnProperty(prefix = "voting.ballot-log", name = "enabled", havingValue = "true")
+@Slf4j
+public class LogBallotStore implements BallotStore {
+    private final VoteRepository voteRepository;
+    private final PollOptionTallyRepository pollOptionTallyRepository;
+    private final BallotLogPositionRepository ballotLogPositionRepository;
+    private final TallyEngine tallyEngine;
+    private final TransactionTemplate transactionTemplate;
+    private final BallotLogProperties properties;
+    private final ClusterProperties clusterProperties;
+    private final BallotLog ballotLog;
+    private final String name;
+    private final Thread feeder;
+    private final ScheduledFuture<?> syncTask;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+    private final Counter flushFailures;
+    // the positions a batch was stored up to in a shard but not in the vote table, see VoteShards
+    private final TreeSet<Long> boundaries = new TreeSet<>();
+    private volatile long position;
+    private volatile boolean running = true;
+
+    public LogBallotStore(VoteRepository voteRepository, PollOptionTallyRepository pollOptionTallyRepository,
+                          BallotLogPositionRepository ballotLogPositionRepository, TallyEngine tallyEngine,
+                          PlatformTransactionManager transactionManager, TaskScheduler taskScheduler,
+                          BallotLogProperties properties, ClusterProperties clusterProperties,
+                          MeterRegistry meterRegistry) {
+        this.voteRepository = voteRepository;
+        this.pollOptionTallyRepository = pollOptionTallyRepository;
+        this.ballotLogPositionRepository = ballotLogPositionRepository;
+        this.tallyEngine = tallyEngine;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.clusterProperties = clusterProperties;
+        this.name = properties.directory().toString();
+        this.ballotLog = BallotLog.open(properties.directory(), properties.segmentSize().toBytes(),
+                properties.fsync() == BallotLogProperties.Fsync.GROUP);
+        this.flushTimer = Timer.builder("voting.ballots.flush").register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("voting.ballots.flush.size").register(meterRegistry);
+        this.flushFailures = Counter.builder("voting.ballots.flush.failures").register(meterRegistry);
+
+        replay();
+        Gauge.builder("voting.ballots.log.lag", this, store -> store.ballotLog.end() - store.position)
+                .description("Ballots in the log not saved to the vote table yet")
+                .register(meterRegistry);
+        this.syncTask = properties.fsync() == BallotLogProperties.Fsync.INTERVAL
+                ? taskScheduler.scheduleWithFixedDelay(ballotLog::force, properties.syncInterval())
+                : null;
+        this.feeder = new Thread(this::feed, "ballot-log-feeder");
+        this.feeder.start();
+
+        log.info("Appending ballots to the log in {} with fsync {}, fed in batches of {}", properties.directory(),
+                properties.fsync(), properties.batchSize());
+    }
+
+    @Override
+    public void store(Vote vote) {
+        if (!running) {
+            throw new BallotQueueFullException(vote.getPoll());
+        }
+        ballotLog.append(vote);
+    }
+
+    /**
+     * @return - the number of ballots in the log not saved to the vote table yet
+     */
+    public long getLag() {
+        return ballotLog.end() - position;
+    }
+
+    /**
+     * Stop accepting ballots, wait for the feeder to save the ones in the log and write the log to the disk.
+     * Ballots that cannot be saved stay in the log and are saved when the application starts again.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        log.info("Feeding {} ballots of the log before shutdown", getLag());
+        running = false;
+        if (syncTask != null) {
+            syncTask.cancel(false);
+        }
+        feeder.join();
+        ballotLog.close();
+    }
+
+    /**
+     * Save the ballots after the position of the log, then seed the tallies of their polls again.
+     */
+    private void replay() {
+        position = ballotLogPositionRepository.findById(name)
+                .map(BallotLogPosition::getPosition)
+                .orElseGet(ballotLog::start);
+        if (position > ballotLog.end()) {
+            ballotLog.skipTo(position);
+            return;
+        }
+
+        voteRepository.findFeedPositions(name).stream()
+                .filter(fed -> fed > position)
+                .forEach(boundaries::add);
+        long start = position;
+        Set<Long> polls = new HashSet<>();
+        while (position < ballotLog.end()) {
+            feed(end(ballotLog.end()), false)
+                    .forEach(vote -> polls.add(vote.getPoll()));
+        }
+        polls.forEach(tallyEngine::evict);
+        if (position > start) {
+            log.info("Replayed {} ballots of {} polls from the ballot log", position - start, polls.size());
+        }
+    }
+
+    private void feed() {
+        while (running || position < ballotLog.end()) {
+            long end = ballotLog.end();
+            try {
+                if (position >= end) {
+                    Thread.sleep(properties.feedInterval());
+                    continue;
+                }
+                end = end(end);
+                feed(end, true);
+            } catch (InterruptedException e) {
+                log.warn("Ballot log feeder interrupted with {} ballots not fed", getLag());
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to save ballots {} to {} of the log", position, end, e);
+                flushFailures.increment();
+                boundaries.add(end);
+                if (!running) {
+                    log.warn("Stopping with {} ballots not fed, they are fed when the application starts", getLag());
+                    return;
+                }
+                try {
+                    Thread.sleep(properties.feedInterval());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return - the end of the next batch, no further than the log, the batch size or a batch that failed
+     */
+    private long end(long end) {
+        Long boundary = boundaries.higher(position);
+        return Math.min(boundary == null ? end : boundary, Math.min(end, position + properties.batchSize()));
+    }
+
+    /**
+     * Save the ballots from the position up to a sequence number and move the position there.
+     *
+     * @param to - the sequence number after the last ballot to save
+     * @param counted - true if the ballots were counted in the tallies when they were cast
+     * @return - the ballots saved
+     */
+    private List<Vote> feed(long to, boolean counted) {
+        List<Vote> batch = read(position, to);
+        flushSize.record(batch.size());
+        List<Vote> duplicates = new ArrayList<>();
+        try {
+            flushTimer.record(() -> duplicates.addAll(save(batch, to)));
+        } catch (DataIntegrityViolationException e) {
+            // read the batch again, the failed save assigned identities to its votes
+            List<Vote> kept = new ArrayList<>();
+            List<Vote> dropped = new ArrayList<>();
+            Set<String> keys = new HashSet<>();
+            for (Vote vote : read(position, to)) {
+                if (vote.getBallotKey() == null || keys.add(vote.getPoll() + ":" + vote.getBallotKey())
+                        && !voteRepository.existsByPollAndBallotKey(vote.getPoll(), vote.getBallotKey())) {
+                    kept.add(vote);
+                } else {
+                    dropped.add(vote);
+                }
+            }
+            flushTimer.record(() -> save(kept, to));
+            duplicates.addAll(dropped);
+            batch.clear();
+            batch.addAll(kept);
+        }
+        if (!duplicates.isEmpty()) {
+            if (counted) {
+                duplicates.forEach(vote -> tallyEngine.record(vote.getPoll(), vote.getOptionId(), -1));
+            }
+            log.warn("Dropped {} ballots of the log with an Idempotency-Key stored before", duplicates.size());
+        }
+        position = to;
+        boundaries.headSet(to, true).clear();
+        ballotLog.deleteBefore(to);
+        log.debug("Fed {} ballots of the log up to {}", batch.size(), to);
+        return batch;
+    }
+
+    /**
+     * @return - the ballots a shard left out for their Idempotency-Key, they are removed from the batch
+     */
+    private List<Vote> save(List<Vote> batch, long to) {
+        return transactionTemplate.execute(status -> {
+            Set<Vote> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+            duplicates.addAll(voteRepository.insertAll(batch, name, to));
+            voteRepository.flush();
+            batch.removeIf(duplicates::contains);
+            batch.stream()
+                    .collect(Collectors.groupingBy(vote -> new PollOptionTally.Key(vote.getPoll(), vote.getOptionId(),
+                            clusterProperties.nodeId()), Collectors.counting()))
+                    .forEach((key, count) -> pollOptionTallyRepository.increment(key.getPoll(), key.getOptionId(),
+                            key.getNode(), count));
+            ballotLogPositionRepository.save(new BallotLogPosition(name, to));
+            return List.copyOf(duplicates);
+        });
+    }
+
+    private List<Vote> read(long from, long to) {
+        List<Vote> votes = new ArrayList<>((int) (to - from));
+        for (long sequence = from; sequence < to; sequence++) {
+            Vote vote = ballotLog.read(sequence);
+            if (vote == null) {
+                log.warn("Skipped ballot {} of the log, it is not whole", sequence);
+                continue;
+            }
+            votes.add(vote);
+        }
+        return votes;
+    }
+}
@@ -0,0 +1,67 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.CacheConfig;
+import com.dizplai.voting.config.PollCacheProperties;
+import com.dizplai.voting.model.Poll;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.PollResponse;
+import com.dizplai.voting.repository.PollOptionRepository;
+import com.dizplai.voting.repository.PollRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Loads the detail of the most recent open polls into the polls cache when the application starts, so the first
+ * client of a poll does not wait on the data store. Closed polls are left out, they are rarely read again. Enabled with voting.poll-cache.warm-up, see
+ * PollCacheProperties. The polls are read a chunk at a time, two queries per chunk.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PollCacheWarmer {
+    private static final int CHUNK_SIZE = 1000;
+
+    private final PollRepository pollRepository;
+    private final PollOptionRepository pollOptionRepository;
+    private final CacheManager cacheManager;
+    private final PollCacheProperties properties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!properties.warmUp()) {
+            return;
+        }
+        Cache cache = cacheManager.getCache(CacheConfig.POLLS);
+        LocalDateTime now = LocalDateTime.now();
+        int warmed = 0;
+        for (int page = 0; warmed < properties.warmUpLimit(); page++) {
+            List<Poll> polls = pollRepository.findOpen(now, PageRequest.of(page, CHUNK_SIZE)).getContent();
+            if (polls.isEmpty()) {
+                break;
+            }
+            polls = polls.subList(0, Math.min(polls.size(), properties.warmUpLimit() - warmed));
+            Map<Long, List<String>> options = pollOptionRepository.findByPollInOrderByPollAscOrdinalAsc(
+                            polls.stream().map(Poll::getId).toList()).stream()
+                    .collect(Collectors.groupingBy(PollOption::getPoll,
+                            Collectors.mapping(PollOption::getOption, Collectors.toUnmodifiableList())));
+            for (Poll poll : polls) {
+                cache.putIfAbsent(poll.getId(), new PollResponse(poll.getId(), poll.getQuestion(),
+                        options.getOrDefault(poll.getId(), List.of()), poll.getClosesAt()));
+            }
+            warmed += polls.size();
+        }
+
+        log.info("Warmed poll cache with {} polls", warmed);
+    }
+}
@@ -0,0 +1,228 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.CacheConfig;
+import com.dizplai.voting.config.PollLifecycleProperties;
+import com.dizplai.voting.error.PollNotFoundException;
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.Poll;
+import com.dizplai.voting.model.PollResult;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.repository.PollOptionRepository;
+import com.dizplai.voting.repository.PollRepository;
+import com.dizplai.voting.repository.PollResultRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.tally.PollTally;
+import com.dizplai.voting.tally.TallyEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Closes polls and compacts the polls that have closed, so a finished poll no longer keeps its ballots in the
+ * vote table. A poll closes at the closesAt it is created with, or when it is closed through close(long).
+ * 1. Once closed, a vote is rejected by the in-memory tally of the poll without a lookup, see TallyEngine.resolve.
+ * 2. voting.polls.compaction-delay after it closed, the ballots of the poll are written to the archive and counted
+ *    there, and the counts stored in poll_result as the final count of the poll - the poll is CLOSED.
+ * 3. The ballots archived are then removed from the vote table - the poll is ARCHIVED, its ballots are listed
+ *    and exported from the archive, see BallotArchive. A ballot stored after the archive was written, e.g. from
+ *    the write-behind queue or the ballot log of another instance, stays in the vote table and is logged.
+ * 4. The tally of the poll is seeded again from poll_result and frozen, so its results are served from memory
+ *    and never read from the ballots.
+ * The polls are checked every voting.polls.check-interval. The tallies of the polls closed or compacted by
+ * another instance are brought up to date on the same check.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PollLifecycleService {
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final PollRepository pollRepository;
+    private final PollOptionRepository pollOptionRepository;
+    private final PollResultRepository pollResultRepository;
+    private final VoteRepository voteRepository;
+    private final TallyEngine tallyEngine;
+    private final BallotArchive ballotArchive;
+    private final EntityManager entityManager;
+    private final CacheManager cacheManager;
+    private final TaskScheduler taskScheduler;
+    private final PlatformTransactionManager transactionManager;
+    private final PollLifecycleProperties properties;
+    private ScheduledFuture<?> task;
+
+    @PostConstruct
+    public void start() {
+        task = taskScheduler.scheduleWithFixedDelay(this::check, properties.checkInterval());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Close a poll now, a poll closed before keeps its closing time. The poll is compacted after
+     * voting.polls.compaction-delay.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @throws PollNotFoundException - there is no such poll
+     */
+    @Transactional
+    public void close(long pollId) {
+        if (pollRepository.findById(pollId).isEmpty()) {
+            throw new PollNotFoundException(Long.toString(pollId));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (pollRepository.closeAt(pollId, now) == 0) {
+            log.debug("Poll: {} was closed before", pollId);
+            return;
+        }
+        PollTally tally = tallyEngine.peek(pollId);
+        if (tally != null) {
+            tally.closeAt(TallyEngine.toEpochMilli(now));
+        }
+        // the detail of the poll shows its closing time, once the poll is committed
+        new TransactionAwareCacheDecorator(cacheManager.getCache(CacheConfig.POLLS)).evict(pollId);
+
+        log.info("Closed poll: {}", pollId);
+    }
+
+    /**
+     * Bring the tallies in memory up to date with the polls closed since they were seeded, and compact the polls
+     * closed for longer than voting.polls.compaction-delay.
+     */
+    public void check() {
+        refresh();
+        for (Poll poll : pollRepository.findClosedBefore(LocalDateTime.now().minus(properties.compactionDelay()))) {
+            try {
+                compact(poll);
+            } catch (RuntimeException e) {
+                log.error("Failed to compact poll: {}, it is retried on the next check", poll.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Store the final count of a closed poll and move its ballots to the archive. A step that fails is taken
+     * again on the next check, see PollStatus.
+     *
+     * @param poll - a poll past its closing time
+     */
+    public void compact(Poll poll) {
+        long pollId = poll.getId();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        if (!poll.isCompacted()) {
+            // the final count is the count of the ballots archived, not of the tally
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            Map<Long, Long> counts = readOnly.execute(status -> {
+                try (Stream<Vote> votes = voteRepository.streamByPollOrderById(pollId)) {
+                    return ballotArchive.write(pollId, votes.peek(entityManager::detach));
+                }
+            });
+            boolean closed = Boolean.TRUE.equals(transaction.execute(status -> {
+                if (pollRepository.markClosed(pollId) == 0) {
+                    return false;
+                }
+                pollResultRepository.saveAll(pollOptionRepository.findByPollOrderByOrdinal(pollId).stream()
+                        .map(option -> PollResult.builder()
+                                .poll(pollId)
+                                .optionId(option.getId())
+                                .count(counts.getOrDefault(option.getId(), 0L))
+                                .build())
+                        .toList());
+                return true;
+            }));
+            if (!closed) {
+                log.info("Poll: {} was closed by another instance", pollId);
+                return;
+            }
+            log.info("Stored the final count of poll: {}", pollId);
+        }
+
+        if (!ballotArchive.exists(pollId)) {
+            // archived by an instance that does not share voting.polls.archive-directory, keep the ballots
+            log.error("Poll: {} is closed but its ballots are not in {}", pollId, properties.archiveDirectory());
+            return;
+        }
+        int removed = deleteArchived(pollId);
+        long kept = voteRepository.countVotesByOption(pollId).stream().mapToLong(OptionCount::count).sum();
+        if (kept > 0) {
+            log.warn("Poll: {} has {} ballots stored after it was archived, they are kept in the vote table", pollId, kept);
+        }
+        pollRepository.markArchived(pollId);
+        tallyEngine.evict(pollId);
+        cacheManager.getCache(CacheConfig.POLLS).evict(pollId);
+
+        log.info("Archived poll: {}, removed {} ballots from the vote table", pollId, removed);
+    }
+
+    /**
+     * Remove the ballots of the archive of a poll from the vote table, in batches of DELETE_BATCH_SIZE. The
+     * identities are those of the archive, as the identities of the instances are not stored in order.
+     *
+     * @return - the number of ballots removed
+     */
+    private int deleteArchived(long pollId) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        AtomicInteger removed = new AtomicInteger();
+        List<Long> ids = new ArrayList<>(DELETE_BATCH_SIZE);
+        Runnable delete = () -> {
+            removed.addAndGet(transaction.execute(status -> voteRepository.deleteByPollAndIdIn(pollId, ids)));
+            ids.clear();
+        };
+        ballotArchive.read(pollId, vote -> {
+            ids.add(vote.getId());
+            if (ids.size() == DELETE_BATCH_SIZE) {
+                delete.run();
+            }
+        });
+        delete.run();
+        return removed.get();
+    }
+
+    /**
+     * Apply the closing times and final counts stored by any instance to the tallies seeded before them.
+     */
+    private void refresh() {
+        List<Long> live = tallyEngine.getTallies().stream()
+                .filter(tally -> !tally.isFrozen())
+                .map(PollTally::getPollId)
+                .toList();
+        if (live.isEmpty()) {
+            return;
+        }
+        for (Poll poll : pollRepository.findAllById(live)) {
+            PollTally tally = tallyEngine.peek(poll.getId());
+            if (tally == null) {
+                continue;
+            }
+            if (poll.isCompacted()) {
+                // seeded again from the final count
+                tallyEngine.evict(poll.getId());
+                cacheManager.getCache(CacheConfig.POLLS).evict(poll.getId());
+            } else if (poll.getClosesAt() != null && tally.closeAt(TallyEngine.toEpochMilli(poll.getClosesAt()))) {
+                cacheManager.getCache(CacheConfig.POLLS).evict(poll.getId());
+            }
+        }
+    }
+}
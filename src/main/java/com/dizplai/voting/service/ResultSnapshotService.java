@@ -0,0 +1,113 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.model.ResultSnapshot;
+import com.dizplai.voting.tally.PollTally;
+import com.dizplai.voting.tally.TallyEngine;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the serialized results of every poll, tagged with the version of the tally they were taken at, so a
+ * result is composed and serialized once per version rather than once per request. A request for a result
+ * that has not changed costs a lookup, see PollTally for the versions.
+ * 1. VOTES - the vote distribution, changes with every vote
+ * 2. OPTIONS - the options without the share of the votes, changes when an option is added
+ * 3. POLL - the poll detail, changes when an option is added or the closing time of the poll changes
+ * The time to serialize a result is published as voting.results.serialize, tagged with the view.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResultSnapshotService {
+    private final TallyEngine tallyEngine;
+    private final VoteService voteService;
+    private final ObjectMapper mapper;
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, Entry> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Given a poll identifier, return the serialized vote distribution. See MessageUtil.toPollResponses.
+     *
+     * @param poll - poll identifier - e.g 1
+     * @param includeVoteShare - flag to indicate whether the share of the votes is included for each option
+     * @return - the distribution and its tag
+     */
+    public ResultSnapshot getResults(String poll, boolean includeVoteShare) {
+        long pollId = Long.parseLong(poll);
+        PollTally tally = tallyEngine.find(pollId);
+        if (tally == null) {
+            return ResultSnapshot.builder().body(serialize(View.VOTES, List.of())).build();
+        }
+        // the share of the votes changes with every vote, the options only when one is added
+        return includeVoteShare
+                ? snapshot(new Key(pollId, View.VOTES), tally, tally.getVersion(), () -> tally.toPollResponses(true))
+                : snapshot(new Key(pollId, View.OPTIONS), tally, tally.getOptionCount(), () -> tally.toPollResponses(false));
+    }
+
+    /**
+     * Given a poll identifier, return the serialized poll detail. See VoteService.getPoll.
+     *
+     * @param poll - poll identifier - e.g 1
+     * @return - the poll detail and its tag
+     */
+    public ResultSnapshot getPoll(String poll) {
+        long pollId = Long.parseLong(poll);
+        PollTally tally = tallyEngine.find(pollId);
+        if (tally == null) {
+            return ResultSnapshot.builder().body(serialize(View.POLL, voteService.getPoll(poll))).build();
+        }
+        return snapshot(new Key(pollId, View.POLL), tally, tally.getDetailVersion(), () -> voteService.getPoll(poll));
+    }
+
+    private ResultSnapshot snapshot(Key key, PollTally tally, long version, Supplier<Object> result) {
+        Entry entry = snapshots.get(key);
+        if (entry != null && entry.generation == tally.getGeneration() && entry.version == version) {
+            return entry.snapshot;
+        }
+
+        // the version is read before the result is composed, so the result is at least as new as its tag
+        ResultSnapshot snapshot = ResultSnapshot.builder()
+                .etag("\"" + key.pollId + "." + tally.getGeneration() + "." + version + "\"")
+                .body(serialize(key.view, result.get()))
+                .build();
+        snapshots.merge(key, new Entry(tally.getGeneration(), version, snapshot),
+                (current, taken) -> current.generation == taken.generation && current.version > taken.version ? current : taken);
+
+        log.debug("Serialized {} of poll: {} at version {}", key.view, key.pollId, version);
+        return snapshot;
+    }
+
+    private byte[] serialize(View view, Object result) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return mapper.writeValueAsBytes(result);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            sample.stop(Timer.builder("voting.results.serialize").tag("view", view.name().toLowerCase()).register(meterRegistry));
+        }
+    }
+
+    private enum View {
+        VOTES,
+        OPTIONS,
+        POLL
+    }
+
+    private record Key(long pollId, View view) {
+    }
+
+    private record Entry(long generation, long version, ResultSnapshot snapshot) {
+    }
+}
@@ -0,0 +1,34 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Saves and flushes each ballot within the request that cast it, counting it in the poll_option_tally table
+ * in the same transaction.
+ */
+@Component
+@ConditionalOnExpression("!${voting.write-behind.enabled:false} and !${voting.ballot-log.enabled:false}")
+@RequiredArgsConstructor
+@Slf4j
+public class SyncBallotStore implements BallotStore {
+    private final VoteRepository voteRepository;
+    private final PollOptionTallyRepository pollOptionTallyRepository;
+    private final ClusterProperties clusterProperties;
+
+    @Override
+    @Transactional
+    public void store(Vote vote) {
+        Vote savedVote = voteRepository.insert(vote);
+        pollOptionTallyRepository.increment(vote.getPoll(), vote.getOptionId(), clusterProperties.nodeId(), 1);
+
+        log.debug("Saved vote with id: {} and option {}" , savedVote.getId(), savedVote.getOptionId());
+    }
+}
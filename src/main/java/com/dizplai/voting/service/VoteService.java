@@ -1,18 +1,48 @@
 package com.dizplai.voting.service;
 
+import com.dizplai.voting.config.CacheConfig;
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.config.LoggingProperties;
+import com.dizplai.voting.error.AlreadyVotedException;
 import com.dizplai.voting.error.PollNotFoundException;
 import com.dizplai.voting.model.*;
+import com.dizplai.voting.repository.PollOptionRepository;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
 import com.dizplai.voting.repository.PollRepository;
 import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.tally.TallyEngine;
+import com.dizplai.voting.tally.VoteTimeline;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A service to interact with:
@@ -24,19 +54,129 @@ import java.util.Optional;
 @RequiredArgsConstructor
 @Slf4j
 public class VoteService {
+    // a structured line for a sample of the votes cast, see voting.logging.vote-sample-rate
+    private static final Logger VOTE_LOG = LoggerFactory.getLogger("com.dizplai.voting.vote");
+
     private final VoteRepository voteRepository;
     private final PollRepository pollRepository;
+    private final PollOptionRepository pollOptionRepository;
+    private final PollOptionTallyRepository pollOptionTallyRepository;
+    private final TallyEngine tallyEngine;
+    private final BallotStore ballotStore;
+    private final EntityManager entityManager;
+    private final CacheManager cacheManager;
+    private final MeterRegistry meterRegistry;
+    private final LoggingProperties loggingProperties;
+    private final IdempotencyIndex idempotencyIndex;
+    private final VoterRegistry voterRegistry;
+    private final ClusterProperties clusterProperties;
+    private final BallotArchive ballotArchive;
+    private final VoteTimeline voteTimeline;
+    private Timer storeTimer;
+
+    @PostConstruct
+    public void registerMeters() {
+        // the time to save a ballot, or to queue it when the store writes behind
+        storeTimer = Timer.builder("voting.ballots.store").register(meterRegistry);
+    }
 
     /**
      * Given a poll identifier, return all the votes associated with the poll
      * For detail about Vote, see the description on the Vote class
+     * The votes of a closed poll are read from its archive, see BallotArchive.
      *
      * @param poll - poll identifier - e.g 1
      * @return - a list of votes
      */
+    @Timed("voting.ballots.read")
     public List<Vote> getVotes(String poll) {
-        log.info("Retrieving votes for poll: {}",poll);
-        return voteRepository.findVotesByPoll(Long.parseLong(poll));
+        log.debug("Retrieving votes for poll: {}",poll);
+
+        Map<Long, String> options = getOptionTexts(Long.parseLong(poll));
+        List<Vote> votes;
+        if (isArchived(Long.parseLong(poll))) {
+            votes = new ArrayList<>();
+            ballotArchive.read(Long.parseLong(poll), votes::add);
+        } else {
+            votes = voteRepository.findVotesByPoll(Long.parseLong(poll));
+        }
+        votes.forEach(vote -> vote.setOption(options.get(vote.getOptionId())));
+
+        return votes;
+    }
+
+    /**
+     * Given a poll identifier, return a page of the votes associated with the poll in the order they were cast.
+     * The page starts after the vote the cursor points to, use 0 for the first page.
+     * The votes of a closed poll are read from its archive, up to the end of the page.
+     *
+     * @param poll - poll identifier - e.g 1
+     * @param after - the cursor returned with the previous page e.g. 1234
+     * @param limit - the most votes to return e.g. 100
+     * @return - a page of votes, with the cursor of the next page if there is one
+     */
+    @Timed("voting.ballots.read")
+    public VoteResponse getVotes(String poll, long after, int limit) {
+        log.debug("Retrieving {} votes after {} for poll: {}", limit, after, poll);
+
+        Map<Long, String> options = getOptionTexts(Long.parseLong(poll));
+        Slice<Vote> votes;
+        if (isArchived(Long.parseLong(poll))) {
+            List<Vote> page = ballotArchive.read(Long.parseLong(poll), after, limit);
+            boolean hasNext = page.size() > limit;
+            votes = new SliceImpl<>(hasNext ? page.subList(0, limit) : page, PageRequest.ofSize(limit), hasNext);
+        } else {
+            votes = voteRepository.findByPollAndIdGreaterThanOrderById(Long.parseLong(poll), after,
+                    PageRequest.ofSize(limit));
+        }
+        votes.forEach(vote -> vote.setOption(options.get(vote.getOptionId())));
+
+        return VoteResponse.builder()
+                .votes(votes.getContent())
+                .next(votes.hasNext() ? votes.getContent().getLast().getId() : null)
+                .build();
+    }
+
+    /**
+     * Given a poll identifier, pass every vote associated with the poll to the consumer in the order they were
+     * cast. The votes are streamed from the data store and released once consumed, so the memory used does
+     * not grow with the number of votes. The votes of a closed poll are streamed from its archive.
+     *
+     * @param poll - poll identifier - e.g 1
+     * @param consumer - receives the votes one by one
+     */
+    @Transactional(readOnly = true)
+    public void exportVotes(long poll, Consumer<Vote> consumer) {
+        log.info("Exporting votes for poll: {}", poll);
+
+        Map<Long, String> options = getOptionTexts(poll);
+        if (isArchived(poll)) {
+            ballotArchive.read(poll, vote -> {
+                vote.setOption(options.get(vote.getOptionId()));
+                consumer.accept(vote);
+            });
+            return;
+        }
+        try (Stream<Vote> votes = voteRepository.streamByPollOrderById(poll)) {
+            votes.forEach(vote -> {
+                vote.setOption(options.get(vote.getOptionId()));
+                consumer.accept(vote);
+                entityManager.detach(vote);
+            });
+        }
+    }
+
+    /**
+     * Given a poll identifier, return the vote distribution amongst the options of the poll.
+     * The distribution is served from the in-memory tally, see TallyEngine.
+     *
+     * @param poll - poll identifier - e.g 1
+     * @param includeVoteShare - flag to indicate whether the share of the votes is included for each option
+     * @return - a list of options
+     */
+    public List<OptionResponse> getResults(String poll, boolean includeVoteShare) {
+        log.debug("Retrieving results for poll: {}",poll);
+        return tallyEngine.toPollResponses(Long.parseLong(poll), includeVoteShare);
     }
 
     /**
@@ -47,48 +187,128 @@ public class VoteService {
      * @param voteCast - vote to cast e.g Liverpool
      * @return - a list of vote distribution after the vote cast
      */
-    public List<Vote> castVote(Long pollId, String voteCast) {
-        log.info("Casting vote for poll: {} and option {}", pollId, voteCast);
+    @Timed("voting.vote.cast")
+    public List<OptionResponse> castVote(Long pollId, String voteCast) {
+        return castVote(pollId, voteCast, null, null);
+    }
+
+    /**
+     * Given a poll identifier, a vote cast, the voter and the Idempotency-Key of the vote, save the vote once per
+     * key and return vote distribution taking into account the vote cast.
+     * 1. A retry of a vote is answered without saving it again, see IdempotencyIndex. A vote without a key is
+     *    always saved.
+     * 2. A poll that allows one vote per voter rejects a vote without a voter token, or of a voter who has voted,
+     *    see VoterRegistry.
+     * 3. A vote for a text that is not an option of the poll is rejected, see TallyEngine.resolve.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param voteCast - vote to cast e.g Liverpool
+     * @param voterToken - identifies the voter e.g. 6f3b2a91-53c4-4d1e-8f0a-2e7c9d5b1a44, or null
+     * @param ballotKey - the Idempotency-Key of the vote e.g. 2f1c7a4e-0d7b-4b8e-9a51-3c0e8e1f6d2b, or null
+     * @return - a list of vote distribution after the vote cast
+     */
+    @Timed("voting.vote.cast")
+    public List<OptionResponse> castVote(Long pollId, String voteCast, String voterToken, String ballotKey) {
+        if (ballotKey == null) {
+            return cast(pollId, voteCast, voterToken, null);
+        }
+        return idempotencyIndex.submit(pollId, ballotKey, () -> cast(pollId, voteCast, voterToken, ballotKey),
+                () -> tallyEngine.toPollResponses(pollId, true));
+    }
+
+    private List<OptionResponse> cast(Long pollId, String voteCast, String voterToken, String ballotKey) {
+        long start = System.nanoTime();
+        log.debug("Casting vote for poll: {} and option {}", pollId, voteCast);
+
+        // seed the tally before the vote is stored so the vote is not counted twice
+        PollOption option = tallyEngine.resolve(pollId, voteCast);
+
+        Long voterHash;
+        try {
+            voterHash = voterRegistry.register(pollId, voterToken);
+        } catch (AlreadyVotedException e) {
+            if (ballotKey == null || !voteRepository.existsByPollAndBallotKey(pollId, ballotKey)) {
+                throw e;
+            }
+            // a retry of the vote of the voter, from before a restart
+            log.debug("Vote for poll: {} with key {} was cast before", pollId, ballotKey);
+            return tallyEngine.toPollResponses(pollId, true);
+        }
 
         Vote vote = Vote.builder()
                 .poll(pollId)
-                .option(voteCast)
+                .optionId(option.getId())
+                .option(option.getOption())
                 .castOn(LocalDateTime.now())
+                .ballotKey(ballotKey)
+                .voterHash(voterHash)
                 .build();
 
-        Vote savedVote = voteRepository.saveAndFlush(vote);
-
-        log.info("Saved vote with id: {} and option {}" , savedVote.getId(), pollId);
+        long stored = System.nanoTime();
+        try {
+            ballotStore.store(vote);
+        } catch (RuntimeException e) {
+            // the vote was not saved, the voter may vote again
+            if (voterHash != null) {
+                voterRegistry.release(pollId, voterHash);
+            }
+            if (ballotKey == null || !(e instanceof DataIntegrityViolationException)) {
+                throw e;
+            }
+            // the key was cast before, by another instance or before a restart
+            log.debug("Vote for poll: {} with key {} was cast before", pollId, ballotKey);
+            return tallyEngine.toPollResponses(pollId, true);
+        }
+        long storeNanos = System.nanoTime() - stored;
+        storeTimer.record(storeNanos, TimeUnit.NANOSECONDS);
+        tallyEngine.record(pollId, option.getId());
+        voteTimeline.record(pollId, option.getId(), 1);
 
-        return voteRepository.findVotesByPoll(pollId);
+        List<OptionResponse> responses = tallyEngine.toPollResponses(pollId, true);
+        if (ThreadLocalRandom.current().nextDouble() < loggingProperties.voteSampleRate()) {
+            VOTE_LOG.info("vote poll={} option={} store_us={} total_us={}", pollId, option.getId(),
+                    storeNanos / 1000, (System.nanoTime() - start) / 1000);
+        }
+        return responses;
     }
 
     /**
      * Create a poll with a given payload. See the description about PollRequest class.
      * 1. Save the poll and use the identity of the created poll to associate the poll with options.
-     * 2. Save the options
+     * 2. Save the options in the given order, a repeated option is saved once
      *
      * @param pollRequest - poll detail to create.
      * @return id - the identity of the poll created.
      */
+    @Transactional
+    @Timed("voting.poll.create")
     public Long createPoll(PollRequest pollRequest) {
-        Poll poll = Poll.builder().question(pollRequest.question()).build();
+        Poll poll = Poll.builder()
+                .question(pollRequest.question())
+                .oneVotePerVoter(Boolean.TRUE.equals(pollRequest.oneVotePerVoter()))
+                .closesAt(pollRequest.closesAt())
+                .status(PollStatus.OPEN)
+                .build();
         Poll newPoll = pollRepository.saveAndFlush(poll);
 
-        List<Vote> options = new ArrayList<>();
-        pollRequest.options().forEach(opt -> {
-            Vote vote = Vote.builder()
-                    .poll(newPoll.getId())
-                    .option(opt)
-                    .castOn(LocalDateTime.now())
-                    .build();
+        List<PollOption> options = new ArrayList<>();
+        new LinkedHashSet<>(pollRequest.options()).forEach(opt -> options.add(PollOption.builder()
+                .poll(newPoll.getId())
+                .ordinal(options.size())
+                .option(opt)
+                .build()));
 
-            options.add(vote);
-        });
+        List<PollOption> savedOptions = pollOptionRepository.saveAllAndFlush(options);
+        pollOptionTallyRepository.initialize(newPoll.getId(), clusterProperties.nodeId());
+        tallyEngine.evict(newPoll.getId());
 
-        List<Vote> votes = voteRepository.saveAllAndFlush(options);
+        // the first client to open the poll finds it in the cache, put once the poll is committed
+        new TransactionAwareCacheDecorator(cacheManager.getCache(CacheConfig.POLLS)).put(newPoll.getId(),
+                new PollResponse(newPoll.getId(), newPoll.getQuestion(), savedOptions.stream().map(PollOption::getOption).toList(),
+                        newPoll.getClosesAt()));
 
-        log.info("Created poll with poll id: {} and option list {}" , newPoll.getId(), votes);
+        log.info("Created poll with poll id: {} and {} options" , newPoll.getId(), savedOptions.size());
+        log.debug("Created poll with poll id: {} and option list {}" , newPoll.getId(), savedOptions);
 
         return newPoll.getId();
     }
@@ -96,12 +316,17 @@ public class VoteService {
     /**
      * Given a poll id, return all the detail about the poll. See the description in PollResponse class for detail.
      * If no poll is found, an exception is thrown to indicate there is no such poll in the data store.
+     * The detail is cached by poll identity, votes do not change it, see CacheConfig.
      *
      * @param pollId - the identity of the poll
      * @return - poll details
      */
+    @Cacheable(cacheNames = CacheConfig.POLLS, key = "T(Long).parseLong(#pollId)", sync = true)
+    @Timed("voting.poll.read")
     public PollResponse getPoll(String pollId) {
-        val options = voteRepository.findOptionsByPoll(Long.parseLong(pollId));
+        val options = pollOptionRepository.findByPollOrderByOrdinal(Long.parseLong(pollId)).stream()
+                .map(PollOption::getOption)
+                .toList();
         Optional<Poll> poll = pollRepository.findById(Long.parseLong(pollId));
 
         if (poll.isEmpty() && options.isEmpty()) {
@@ -109,8 +334,22 @@ public class VoteService {
             throw new PollNotFoundException(pollId);
         }
 
-        log.info("Retrieving poll with poll id: {} and option list {}" , pollId, options);
+        log.debug("Retrieving poll with poll id: {} and option list {}" , pollId, options);
+
+        return new PollResponse(Long.parseLong(pollId), poll.get().getQuestion(), options, poll.get().getClosesAt());
+    }
+
+    /**
+     * Whether the ballots of a poll are read from its archive, see PollLifecycleService. A CLOSED poll keeps its
+     * ballots in the vote table until its archive is written whole, or when it was archived by an instance that does
+     * not share voting.polls.archive-directory.
+     */
+    private boolean isArchived(long pollId) {
+        return pollRepository.findById(pollId).filter(Poll::isCompacted).isPresent() && ballotArchive.exists(pollId);
+    }
 
-        return new PollResponse(Long.parseLong(pollId), poll.get().getQuestion(), options);
+    private Map<Long, String> getOptionTexts(long pollId) {
+        return pollOptionRepository.findByPollOrderByOrdinal(pollId).stream()
+                .collect(Collectors.toMap(PollOption::getId, PollOption::getOption));
     }
 }
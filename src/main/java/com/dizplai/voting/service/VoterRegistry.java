@@ -0,0 +1,190 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.VoterProperties;
+import com.dizplai.voting.error.AlreadyVotedException;
+import com.dizplai.voting.error.VoterTokenRequiredException;
+import com.dizplai.voting.model.Poll;
+import com.dizplai.voting.repository.PollRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.util.MappedLongSet;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the voters of the polls that allow one vote per voter, see Poll.oneVotePerVoter. A voter is identified
+ * by the voterToken of the vote, and kept as a 64-bit hash of the token and the poll - the token itself is not
+ * stored. The hashes of a poll are kept in a MappedLongSet, a file per poll in voting.voters.directory:
+ * 1. a vote is checked against the voters of its poll without reading the data store
+ * 2. the files are opened as they are, so a restart does not read the vote table. A file that is missing is
+ *    rebuilt from the voter_hash column of the votes of the poll
+ * 3. the memory used is the size of the files, outside the heap - 11 to 23 bytes a voter
+ * The files are written to the disk every voting.voters.sync-interval.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class VoterRegistry {
+    private final PollRepository pollRepository;
+    private final VoteRepository voteRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+    private final VoterProperties properties;
+    private final Map<Long, Optional<MappedLongSet>> voters = new ConcurrentHashMap<>();
+    // opening a poll reads the data store or rebuilds its file while holding the lock - a ReentrantLock rather
+    // than computeIfAbsent, which would hold the lock of the map bin and pin a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private ScheduledFuture<?> task;
+
+    @PostConstruct
+    public void start() {
+        task = taskScheduler.scheduleWithFixedDelay(this::force, properties.syncInterval());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (task != null) {
+            task.cancel(false);
+        }
+        voters.values().forEach(set -> set.ifPresent(MappedLongSet::close));
+        voters.clear();
+    }
+
+    /**
+     * @param pollId - poll identifier e.g. 1
+     * @return - true if the poll allows one vote per voter
+     */
+    public boolean isLimited(long pollId) {
+        return find(pollId).isPresent();
+    }
+
+    /**
+     * Record that a voter has voted in a poll. Polls that allow more than one vote per voter accept any vote.
+     * If the vote is not saved, the voter is to be released so they may vote again.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param voterToken - identifies the voter e.g. 6f3b2a91-53c4-4d1e-8f0a-2e7c9d5b1a44, or null
+     * @return - the hash of the voter to save with the vote, null if the poll does not limit the votes of a voter
+     * @throws VoterTokenRequiredException - the poll allows one vote per voter and the token is missing
+     * @throws AlreadyVotedException - the voter has voted in the poll
+     */
+    public Long register(long pollId, String voterToken) {
+        Optional<MappedLongSet> set = find(pollId);
+        if (set.isEmpty()) {
+            return null;
+        }
+        if (voterToken == null || voterToken.isBlank()) {
+            throw new VoterTokenRequiredException(pollId);
+        }
+        long hash = hash(pollId, voterToken);
+        if (!set.get().add(hash)) {
+            log.debug("Rejected second vote of a voter for poll: {}", pollId);
+            throw new AlreadyVotedException(pollId);
+        }
+        return hash;
+    }
+
+    /**
+     * Forget a voter whose vote was not saved.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param voterHash - the hash returned by register
+     */
+    public void release(long pollId, long voterHash) {
+        voters.getOrDefault(pollId, Optional.empty()).ifPresent(set -> set.remove(voterHash));
+    }
+
+    private Optional<MappedLongSet> find(long pollId) {
+        Optional<MappedLongSet> set = voters.get(pollId);
+        if (set != null) {
+            return set;
+        }
+        lock.lock();
+        try {
+            // open a poll once, a file opened twice would lose the voters added to the first
+            set = voters.get(pollId);
+            if (set == null) {
+                set = open(pollId);
+                if (set == null) {
+                    return Optional.empty();
+                }
+                voters.put(pollId, set);
+            }
+            return set;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return - the voters of a poll that allows one vote per voter, empty if it allows more, null if there is no
+     *           such poll - an unknown poll is not kept, as a poll may be created under its identifier later
+     */
+    private Optional<MappedLongSet> open(long pollId) {
+        Optional<Poll> poll = pollRepository.findById(pollId);
+        if (poll.isEmpty()) {
+            return null;
+        }
+        if (!Boolean.TRUE.equals(poll.get().getOneVotePerVoter())) {
+            return Optional.empty();
+        }
+
+        try {
+            Files.createDirectories(properties.directory());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Path path = properties.directory().resolve("poll-" + pollId + ".voters");
+        boolean rebuild = !Files.exists(path);
+        MappedLongSet set = MappedLongSet.open(path, properties.initialCapacity());
+        if (rebuild) {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Long> hashes = voteRepository.streamVoterHashesByPoll(pollId)) {
+                    hashes.forEach(set::add);
+                }
+            });
+            set.force();
+            log.info("Rebuilt {} voters of poll: {}", set.size(), pollId);
+        }
+
+        log.info("Opened {} voters of poll: {} in {} bytes", set.size(), pollId, set.footprint());
+        return Optional.of(set);
+    }
+
+    private void force() {
+        voters.values().forEach(set -> set.ifPresent(MappedLongSet::force));
+    }
+
+    /**
+     * The first 8 bytes of the SHA-256 of the poll and the token. A voter has a different hash in every poll,
+     * and a token cannot be chosen to take the hash of another voter.
+     */
+    static long hash(long pollId, String voterToken) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, pollId));
+            return ByteBuffer.wrap(digest.digest(voterToken.getBytes(StandardCharsets.UTF_8))).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.config.WriteBehindProperties;
+import com.dizplai.voting.error.BallotQueueFullException;
+import com.dizplai.voting.model.PollOptionTally;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.tally.TallyEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Queues the ballots on a bounded queue and saves them from a single background writer.
+ * 1. The writer takes the first waiting ballot and keeps collecting until the batch is full or the flush
+ *    interval has passed, then saves the batch in one transaction. Hibernate sends the inserts to the data
+ *    store in JDBC batches, see hibernate.jdbc.batch_size in application.properties. The poll_option_tally
+ *    table is updated in the same transaction, once per option in the batch.
+ * 2. When the queue is full a vote waits for space or is rejected, see WriteBehindProperties.
+ * 3. A batch that cannot be saved is retried until it is, the ballots queued behind it wait. A ballot whose
+ *    Idempotency-Key is in the vote table already - cast again on another instance, or after the first vote
+ *    left IdempotencyIndex - is dropped from the batch and not counted, the rest of the batch is saved. The
+ *    ballots keep their identities between attempts, so a shard that stored some of them before does not store
+ *    them twice, see ShardedVoteRepository.insertAll.
+ * 4. On shutdown no new ballot is accepted and the writer empties the queue before it stops. A batch that cannot
+ *    be saved while stopping is abandoned - its ballots are taken off the tallies and their voters released.
+ * The tally is updated when a ballot is queued, so the vote distribution runs ahead of the data store by
+ * at most the ballots in the queue.
+ * Metrics: voting.ballots.queue (ballots waiting), voting.ballots.flush (time to save a batch),
+ * voting.ballots.flush.size (ballots in a batch) and voting.ballots.flush.failures (batches not saved).
+ */
+@Component
+@ConditionalOnExpression("${voting.write-behind.enabled:false} and !${voting.ballot-log.enabled:false}")
+@Slf4j
+public class WriteBehindBallotStore implements BallotStore {
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final long RETRY_MILLIS = 1000;
+
+    private final VoteRepository voteRepository;
+    private final PollOptionTallyRepository pollOptionTallyRepository;
+    private final TallyEngine tallyEngine;
+    private final VoterRegistry voterRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final WriteBehindProperties properties;
+    private final ClusterProperties clusterProperties;
+    private final BlockingQueue<Vote> queue;
+    private final Thread writer;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+    private final Counter flushFailures;
+    private volatile boolean running = true;
+
+    public WriteBehindBallotStore(VoteRepository voteRepository, PollOptionTallyRepository pollOptionTallyRepository,
+                                  TallyEngine tallyEngine, VoterRegistry voterRegistry,
+                                  PlatformTransactionManager transactionManager,
+                                  WriteBehindProperties properties, ClusterProperties clusterProperties,
+                                  MeterRegistry meterRegistry) {
+        this.voteRepository = voteRepository;
+        this.pollOptionTallyRepository = pollOptionTallyRepository;
+        this.tallyEngine = tallyEngine;
+        this.voterRegistry = voterRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.clusterProperties = clusterProperties;
+        this.queue = new ArrayBlockingQueue<>(properties.queueCapacity());
+        Gauge.builder("voting.ballots.queue", queue, BlockingQueue::size)
+                .description("Ballots waiting to be written")
+                .register(meterRegistry);
+        Gauge.builder("voting.ballots.queue.capacity", queue, BlockingQueue::remainingCapacity)
+                .description("Ballots that can be queued before votes wait or are rejected")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("voting.ballots.flush").register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("voting.ballots.flush.size").register(meterRegistry);
+        this.flushFailures = Counter.builder("voting.ballots.flush.failures").register(meterRegistry);
+        this.writer = new Thread(this::drain, "ballot-writer");
+        this.writer.start();
+
+        log.info("Writing ballots behind with queue capacity {}, batch size {} and flush interval {}",
+                properties.queueCapacity(), properties.maxBatchSize(), properties.flushInterval());
+    }
+
+    @Override
+    public void store(Vote vote) {
+        if (!running) {
+            throw new BallotQueueFullException(vote.getPoll());
+        }
+        if (properties.backpressure() == WriteBehindProperties.Backpressure.REJECT) {
+            if (!queue.offer(vote)) {
+                log.warn("Ballot queue is full, rejecting vote for poll: {}", vote.getPoll());
+                throw new BallotQueueFullException(vote.getPoll());
+            }
+            return;
+        }
+        try {
+            queue.put(vote);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BallotQueueFullException(vote.getPoll());
+        }
+    }
+
+    /**
+     * @return - the number of ballots waiting to be written
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Stop accepting ballots and wait for the writer to save the ones already queued.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        log.info("Flushing {} queued ballots before shutdown", queue.size());
+        running = false;
+        writer.join();
+    }
+
+    private void drain() {
+        List<Vote> batch = new ArrayList<>(properties.maxBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                Vote head = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (head == null) {
+                    continue;
+                }
+                batch.add(head);
+                fill(batch);
+                write(batch);
+            } catch (InterruptedException e) {
+                log.warn("Ballot writer interrupted with {} ballots queued", queue.size());
+                running = false;
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fill(List<Vote> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + properties.flushInterval().toNanos();
+        while (batch.size() < properties.maxBatchSize()) {
+            queue.drainTo(batch, properties.maxBatchSize() - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= properties.maxBatchSize() || remaining <= 0 || !running) {
+                return;
+            }
+            Vote next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void write(List<Vote> batch) {
+        flushSize.record(batch.size());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                flushTimer.record(() -> save(batch));
+                log.debug("Saved batch of {} ballots", batch.size());
+                return;
+            } catch (RuntimeException e) {
+                flushFailures.increment();
+                if (e instanceof DataIntegrityViolationException && dropStored(batch)) {
+                    // save the rest of the batch at once
+                    continue;
+                }
+                if (!running) {
+                    log.error("Failed to save batch of {} ballots while stopping, abandoning them", batch.size(), e);
+                    abandon(batch);
+                    return;
+                }
+                log.error("Failed to save batch of {} ballots, attempt {}, retrying", batch.size(), attempt, e);
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                log.warn("Ballot writer interrupted, abandoning batch of {} ballots", batch.size());
+                abandon(batch);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void save(List<Vote> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            voteRepository.insertAll(batch);
+            voteRepository.flush();
+            batch.stream()
+                    .collect(Collectors.groupingBy(vote -> new PollOptionTally.Key(vote.getPoll(), vote.getOptionId(),
+                            clusterProperties.nodeId()), Collectors.counting()))
+                    .forEach((key, count) -> pollOptionTallyRepository.increment(key.getPoll(), key.getOptionId(),
+                            key.getNode(), count));
+        });
+    }
+
+    /**
+     * Remove the ballots with an Idempotency-Key stored before, or repeated in the batch, from a batch that failed
+     * on uk_vote_poll_ballot_key, and take them off the tallies that counted them when they were queued.
+     *
+     * @return - true if a ballot was removed
+     */
+    private boolean dropStored(List<Vote> batch) {
+        Set<String> keys = new HashSet<>();
+        List<Vote> dropped = new ArrayList<>();
+        batch.removeIf(vote -> {
+            boolean stored = vote.getBallotKey() != null && (!keys.add(vote.getPoll() + ":" + vote.getBallotKey())
+                    || voteRepository.existsByPollAndBallotKeyAndIdNot(vote.getPoll(), vote.getBallotKey(), vote.getId()));
+            if (stored) {
+                dropped.add(vote);
+            }
+            return stored;
+        });
+        dropped.forEach(vote -> tallyEngine.record(vote.getPoll(), vote.getOptionId(), -1));
+        if (!dropped.isEmpty()) {
+            log.warn("Dropped {} queued ballots with an Idempotency-Key stored before", dropped.size());
+        }
+        return !dropped.isEmpty();
+    }
+
+    /**
+     * Take ballots that are never saved off the tallies and release their voters, so they may vote again.
+     */
+    private void abandon(List<Vote> batch) {
+        for (Vote vote : batch) {
+            tallyEngine.record(vote.getPoll(), vote.getOptionId(), -1);
+            if (vote.getVoterHash() != null) {
+                voterRegistry.release(vote.getPoll(), vote.getVoterHash());
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.controller.ClusterController;
+import com.dizplai.voting.model.TallyDelta;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts the tallies to /api/v1/cluster/tally of every peer in voting.cluster.peers with the shared
+ * voting.cluster.secret. Each peer is sent to from a thread of its own, so publish returns at once and a peer
+ * that is slow or down delays neither the other peers nor the scheduled tasks of the application.
+ * A peer that does not connect within a second or answer within two misses the tallies, as does a peer with
+ * more tallies waiting to be sent than it can be sent meanwhile - both counted as voting.tally.exchange.failures.
+ */
+@Component
+@ConditionalOnProperty(prefix = "voting.cluster", name = "enabled", havingValue = "true")
+@Slf4j
+public class HttpTallyTransport implements TallyTransport {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration READ_TIMEOUT = Duration.ofSeconds(2);
+    // the tallies waiting to be sent to a peer, tallies merge so a peer that misses some catches up later
+    private static final int MAX_PENDING = 4;
+
+    private final RestClient restClient;
+    private final ClusterProperties properties;
+    private final Counter failures;
+    private final Map<URI, ExecutorService> senders = new LinkedHashMap<>();
+
+    public HttpTallyTransport(RestClient.Builder restClientBuilder, ClusterProperties properties, MeterRegistry meterRegistry) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(CONNECT_TIMEOUT);
+        requestFactory.setReadTimeout(READ_TIMEOUT);
+        this.restClient = restClientBuilder.requestFactory(requestFactory).build();
+        this.properties = properties;
+        this.failures = Counter.builder("voting.tally.exchange.failures").register(meterRegistry);
+        for (URI peer : properties.peers()) {
+            senders.put(peer, new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(MAX_PENDING), runnable -> {
+                        Thread thread = new Thread(runnable, "tally-sender-" + peer.getAuthority());
+                        thread.setDaemon(true);
+                        return thread;
+                    }));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        senders.values().forEach(ExecutorService::shutdownNow);
+    }
+
+    @Override
+    public void publish(TallyDelta delta) {
+        senders.forEach((peer, sender) -> {
+            try {
+                sender.execute(() -> send(peer, delta));
+            } catch (RejectedExecutionException e) {
+                log.warn("Peer {} is behind, not sending it {} tally counters", peer, delta.counters().size());
+                failures.increment();
+            }
+        });
+    }
+
+    private void send(URI peer, TallyDelta delta) {
+        try {
+            restClient.post()
+                    .uri(peer.resolve("/api/v1/cluster/tally"))
+                    .header(ClusterController.SECRET_HEADER, properties.secret())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(delta)
+                    .retrieve()
+                    .toBodilessEntity();
+        } catch (RestClientException e) {
+            log.warn("Failed to send {} tally counters to peer {}: {}", delta.counters().size(), peer, e.getMessage());
+            failures.increment();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.model.PollOption;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The options of a poll by text, so a vote is checked against the poll without reading the data store. An index
+ * is built when the options of a poll are loaded and never changed; the texts it returns are the instances
+ * loaded, so a vote does not hold on to the text of the request.
+ * 1. up to 7 options, the most a poll is created with - the texts are kept in an array in ordinal order and
+ *    compared in turn, with no hashing of the text voted for
+ * 2. more options, from polls created before the limit - a HashMap of the texts
+ */
+final class OptionIndex {
+    static final int ARRAY_LIMIT = 7;
+    static final OptionIndex EMPTY = new OptionIndex(List.of());
+
+    private final String[] texts;
+    private final PollOption[] options;
+    private final Map<String, PollOption> byText;
+
+    OptionIndex(List<PollOption> options) {
+        this.options = options.toArray(PollOption[]::new);
+        this.texts = options.stream().map(PollOption::getOption).toArray(String[]::new);
+        if (options.size() > ARRAY_LIMIT) {
+            byText = new HashMap<>();
+            // the first option with a text wins, as in the array
+            options.forEach(option -> byText.putIfAbsent(option.getOption(), option));
+        } else {
+            byText = null;
+        }
+    }
+
+    /**
+     * @param text - the text of an option e.g. Arsenal
+     * @return - the option with the given text, null if the poll has no such option
+     */
+    PollOption find(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (byText != null) {
+            return byText.get(text);
+        }
+        for (int i = 0; i < texts.length; i++) {
+            if (texts[i].equals(text)) {
+                return options[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,316 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.TallyDelta;
+import com.dizplai.voting.util.MessageUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The running vote count of a single poll, one lock-free counter per option.
+ * 1. Counters hold the number of votes cast for an option on this instance, keyed by the option identity.
+ * 2. The votes cast on the other instances are merged in as a PN-counter per instance and option, see
+ *    TallyDelta.Counter, and added to the counters when the distribution is composed.
+ * 3. Options are listed in the order a HashMap of the option texts iterates, the order the vote
+ *    distribution has always been returned in.
+ * 4. The version goes up with every vote, option and merge that changes a count, so an unchanged version
+ *    means an unchanged distribution. Versions restart when a poll is seeded again, the generation tells the
+ *    two tallies apart.
+ * 5. A poll stops accepting votes at its closing time, checked against the clock without a lookup. A poll whose
+ *    final count is stored is seeded from it and frozen, its counts never change again, see PollLifecycleService.
+ */
+public class PollTally {
+    // starts from the clock so the generations of a restarted application do not repeat
+    private static final AtomicLong GENERATIONS = new AtomicLong(System.currentTimeMillis());
+
+    private final long pollId;
+    private final long generation = GENERATIONS.incrementAndGet();
+    private final LongAdder version = new LongAdder();
+    private final String pollIdText;
+    private final Map<Long, LongAdder> counters = new ConcurrentHashMap<>();
+    // the votes removed from the counters, so the counters of this instance can be sent as a PN-counter
+    private final Map<Long, LongAdder> removed = new ConcurrentHashMap<>();
+    // increments and decrements of every option by the other instances
+    private final Map<String, Map<Long, long[]>> peers = new HashMap<>();
+    private final List<PollOption> options = new ArrayList<>();
+    private volatile Listing listing = new Listing(new String[0], new LongAdder[0], new long[0], new long[0]);
+    private volatile OptionIndex index = OptionIndex.EMPTY;
+    private volatile long closesAt = Long.MAX_VALUE;
+    private volatile long closings;
+    private volatile boolean frozen;
+
+    public PollTally(long pollId) {
+        this.pollId = pollId;
+        this.pollIdText = Long.toString(pollId);
+    }
+
+    public long getPollId() {
+        return pollId;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return - the number of changes made to the tally, read it before the distribution so the distribution
+     * is never older than the version
+     */
+    public long getVersion() {
+        return version.sum();
+    }
+
+    /**
+     * @return - the number of options, it only changes when an option is added
+     */
+    public int getOptionCount() {
+        return listing.texts.length;
+    }
+
+    /**
+     * @return - the number of changes made to the poll detail, an option added or the closing time changed
+     */
+    public long getDetailVersion() {
+        // both only go up, so the sum changes with either
+        return getOptionCount() + closings;
+    }
+
+    /**
+     * Set the time the poll stops accepting votes.
+     *
+     * @param epochMilli - the closing time in milliseconds since the epoch e.g. 1728244800000
+     * @return - true if the closing time changed
+     */
+    public synchronized boolean closeAt(long epochMilli) {
+        if (closesAt == epochMilli) {
+            return false;
+        }
+        closesAt = epochMilli;
+        closings++;
+        return true;
+    }
+
+    /**
+     * @return - the closing time in milliseconds since the epoch, Long.MAX_VALUE for a poll that stays open
+     */
+    public long getClosesAt() {
+        return closesAt;
+    }
+
+    /**
+     * @return - true once the closing time has passed or the final count is stored
+     */
+    public boolean isClosed() {
+        return frozen || System.currentTimeMillis() >= closesAt;
+    }
+
+    /**
+     * Stop the counts from changing, once the tally is seeded with the final count of the poll.
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Add an option to the poll with no votes. The options are expected in ordinal order.
+     *
+     * @param option - the option to add
+     */
+    public synchronized void addOption(PollOption option) {
+        if (counters.containsKey(option.getId())) {
+            return;
+        }
+        options.add(option);
+
+        // replay the options in ordinal order, as grouping the votes by option text did
+        Map<String, PollOption> byOrder = new HashMap<>();
+        options.forEach(o -> byOrder.put(o.getOption(), o));
+
+        // removed first, a counter is taken as the sign the option can be voted for
+        removed.put(option.getId(), new LongAdder());
+        counters.put(option.getId(), new LongAdder());
+        index = new OptionIndex(options);
+        List<PollOption> listed = List.copyOf(byOrder.values());
+        listing = new Listing(listed.stream().map(PollOption::getOption).toArray(String[]::new),
+                listed.stream().map(o -> counters.get(o.getId())).toArray(LongAdder[]::new),
+                listed.stream().mapToLong(PollOption::getId).toArray(),
+                peerVotes(listed.stream().mapToLong(PollOption::getId).toArray()));
+        version.increment();
+    }
+
+    /**
+     * Find an option by text in constant time for the options a poll is created with, see OptionIndex.
+     *
+     * @param text - the text of an option e.g. Arsenal
+     * @return - the option with the given text, null if the poll has no such option
+     */
+    public PollOption find(String text) {
+        return index.find(text);
+    }
+
+    /**
+     * @return - the options of the poll in ordinal order
+     */
+    public synchronized List<PollOption> getOptions() {
+        return List.copyOf(options);
+    }
+
+    public void increment(long optionId) {
+        add(optionId, 1);
+    }
+
+    /**
+     * Add a number of votes for the given option.
+     *
+     * @param optionId - the identity of the option e.g. 1
+     * @param votes - the number of votes
+     */
+    public void add(long optionId, long votes) {
+        if (frozen) {
+            // the count is final, a ballot stored this late is not in the archive either
+            return;
+        }
+        LongAdder counter = counters.get(optionId);
+        if (counter == null) {
+            throw new IllegalArgumentException("Option " + optionId + " is not an option of poll " + pollId);
+        }
+        counter.add(votes);
+        if (votes < 0) {
+            removed.get(optionId).add(-votes);
+        }
+        version.increment();
+    }
+
+    /**
+     * Merge the counters of the other instances. A counter of this instance, e.g. sent back by a peer after a
+     * restart, is taken into the counters of this instance where it is larger.
+     *
+     * @param node - the name of this instance, see ClusterProperties.nodeId
+     * @param peerCounters - counters of the poll, of any instance
+     * @return - true if a count changed
+     */
+    public synchronized boolean merge(String node, Collection<TallyDelta.Counter> peerCounters) {
+        if (frozen) {
+            // the final count holds the votes of every instance
+            return false;
+        }
+        boolean changed = false;
+        for (TallyDelta.Counter counter : peerCounters) {
+            LongAdder votes = counters.get(counter.optionId());
+            if (counter.poll() != pollId || votes == null) {
+                continue;
+            }
+            if (counter.node().equals(node)) {
+                // votes cast here before a restart that were not stored yet, the peers counted them
+                long removedVotes = removed.get(counter.optionId()).sum();
+                long addedVotes = votes.sum() + removedVotes;
+                long moreAdded = Math.max(0, counter.increments() - addedVotes);
+                long moreRemoved = Math.max(0, counter.decrements() - removedVotes);
+                if (moreAdded > 0 || moreRemoved > 0) {
+                    votes.add(moreAdded - moreRemoved);
+                    removed.get(counter.optionId()).add(moreRemoved);
+                    changed = true;
+                }
+                continue;
+            }
+            long[] state = peers.computeIfAbsent(counter.node(), n -> new HashMap<>())
+                    .computeIfAbsent(counter.optionId(), id -> new long[2]);
+            if (counter.increments() > state[0] || counter.decrements() > state[1]) {
+                state[0] = Math.max(state[0], counter.increments());
+                state[1] = Math.max(state[1], counter.decrements());
+                changed = true;
+            }
+        }
+        if (changed) {
+            Listing current = listing;
+            listing = new Listing(current.texts, current.counters, current.optionIds, peerVotes(current.optionIds));
+            version.increment();
+        }
+        return changed;
+    }
+
+    /**
+     * @param node - the name of this instance, see ClusterProperties.nodeId
+     * @return - the counters of every option, of this instance and of the other instances merged so far. None
+     * once frozen, the final count is not a count of this instance
+     */
+    public synchronized List<TallyDelta.Counter> getCounters(String node) {
+        if (frozen) {
+            return List.of();
+        }
+        List<TallyDelta.Counter> states = new ArrayList<>();
+        for (PollOption option : options) {
+            long removedVotes = removed.get(option.getId()).sum();
+            states.add(new TallyDelta.Counter(pollId, node, option.getId(),
+                    counters.get(option.getId()).sum() + removedVotes, removedVotes));
+        }
+        peers.forEach((peer, byOption) -> byOption.forEach((optionId, state) ->
+                states.add(new TallyDelta.Counter(pollId, peer, optionId, state[0], state[1]))));
+        return states;
+    }
+
+    /**
+     * @return - the number of votes cast for the poll
+     */
+    public long getTotal() {
+        Listing snapshot = listing;
+        long total = 0;
+        for (int i = 0; i < snapshot.counters.length; i++) {
+            total += snapshot.counters[i].sum() + snapshot.peerVotes[i];
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return listing.texts.length == 0;
+    }
+
+    /**
+     * Compose the vote distribution from the current counters in O(options).
+     *
+     * @param includeVoteShare - flag to indicate the formatting of the text on Vote view and Vote result view
+     * @return - a list of options, see MessageUtil.toPollResponses
+     */
+    public List<OptionResponse> toPollResponses(boolean includeVoteShare) {
+        Listing snapshot = listing;
+        long[] votes = new long[snapshot.counters.length];
+        for (int i = 0; i < votes.length; i++) {
+            votes[i] = snapshot.counters[i].sum() + snapshot.peerVotes[i];
+        }
+        return MessageUtil.toPollResponses(snapshot.texts, votes, pollIdText, includeVoteShare);
+    }
+
+    /**
+     * The votes of the other instances for each option, in the given order.
+     */
+    private long[] peerVotes(long[] optionIds) {
+        long[] votes = new long[optionIds.length];
+        for (int i = 0; i < votes.length; i++) {
+            for (Map<Long, long[]> byOption : peers.values()) {
+                long[] state = byOption.get(optionIds[i]);
+                votes[i] += state == null ? 0 : state[0] - state[1];
+            }
+        }
+        return votes;
+    }
+
+    /**
+     * The option texts in the order they are listed, the counter, identity and votes of the other instances of
+     * each. Replaced, never changed, when an option is added or a merge changes a count, so the
+     * distribution is composed without lookups.
+     */
+    private record Listing(String[] texts, LongAdder[] counters, long[] optionIds, long[] peerVotes) {
+    }
+}
@@ -0,0 +1,233 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.TimelineCount;
+import com.dizplai.voting.model.TimelineResolution;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The votes cast for each option of a single poll on this instance in the most recent buckets of time, a ring
+ * of buckets for every TimelineResolution.
+ * 1. A vote is added to the current bucket of every ring, a lock-free counter per bucket and option. A ring
+ *    reuses the slot of its oldest bucket when a new bucket starts, so the memory of a poll does not grow.
+ * 2. The votes added since the last flush are the counts less the flushed counts, see VoteTimeline.flush.
+ * 3. The rings are seeded with the counts this instance stored before, so the buckets held are whole.
+ */
+public class PollTimeline {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long pollId;
+    private final long[] optionIds;
+    private final Map<Long, Integer> positions = new HashMap<>();
+    private final Ring[] rings = new Ring[TimelineResolution.values().length];
+    private volatile long lastRecorded;
+
+    /**
+     * @param pollId - poll identifier e.g. 1
+     * @param options - the options of the poll in ordinal order
+     * @param buckets - the buckets held of each width e.g. 120
+     */
+    public PollTimeline(long pollId, List<PollOption> options, int buckets) {
+        this.pollId = pollId;
+        this.optionIds = options.stream().mapToLong(PollOption::getId).toArray();
+        for (int i = 0; i < optionIds.length; i++) {
+            positions.put(optionIds[i], i);
+        }
+        for (TimelineResolution resolution : TimelineResolution.values()) {
+            rings[resolution.ordinal()] = new Ring(resolution, buckets, optionIds.length);
+        }
+    }
+
+    public long getPollId() {
+        return pollId;
+    }
+
+    /**
+     * @return - the epoch second of the last vote added, 0 if none was
+     */
+    public long getLastRecorded() {
+        return lastRecorded;
+    }
+
+    /**
+     * @param optionId - the identity of an option e.g. 3
+     * @return - the position of the option in ordinal order, null if it is not an option of the poll
+     */
+    public Integer positionOf(long optionId) {
+        return positions.get(optionId);
+    }
+
+    /**
+     * Add a number of votes for an option to the buckets of the given time.
+     *
+     * @param optionId - the identity of the option e.g. 3
+     * @param votes - the number of votes e.g. 1
+     * @param epochSecond - the time the votes were cast e.g. 1728217481
+     */
+    public void add(long optionId, long votes, long epochSecond) {
+        Integer position = positions.get(optionId);
+        if (position == null) {
+            return;
+        }
+        for (Ring ring : rings) {
+            ring.add(ring.resolution.bucketOf(epochSecond), position, votes);
+        }
+        lastRecorded = epochSecond;
+    }
+
+    /**
+     * Add the votes this instance stored before, taken as flushed. Called before the timeline is shared.
+     *
+     * @param resolution - the width of the buckets counted
+     * @param counts - the votes of the buckets, counts of other polls or options are left out
+     */
+    void seed(TimelineResolution resolution, Collection<TimelineCount> counts) {
+        Ring ring = rings[resolution.ordinal()];
+        for (TimelineCount count : counts) {
+            Integer position = positions.get(count.optionId());
+            if (position != null) {
+                ring.seed(count.bucket(), position, count.count());
+            }
+        }
+    }
+
+    /**
+     * @param resolution - the width of the buckets
+     * @param epochSecond - the current time e.g. 1728217481
+     * @return - the oldest bucket held at the given time, the buckets before it are to be read from poll_timeline
+     */
+    public long heldFrom(TimelineResolution resolution, long epochSecond) {
+        return resolution.bucketOf(epochSecond) - rings[resolution.ordinal()].size + 1;
+    }
+
+    /**
+     * @param resolution - the width of the buckets
+     * @param bucket - the number of a bucket held, see heldFrom
+     * @param position - the position of the option, see positionOf
+     * @return - the votes cast for the option in the bucket
+     */
+    public long count(TimelineResolution resolution, long bucket, int position) {
+        return rings[resolution.ordinal()].count(bucket, position);
+    }
+
+    /**
+     * @param resolution - the width of the buckets
+     * @return - the votes added to the buckets since they were last flushed, by bucket and option
+     */
+    public List<TimelineCount> getUnflushed(TimelineResolution resolution) {
+        return rings[resolution.ordinal()].unflushed(optionIds);
+    }
+
+    /**
+     * Take the votes of a bucket as flushed, once they are stored.
+     *
+     * @param resolution - the width of the bucket
+     * @param flushed - the votes stored, as returned by getUnflushed
+     */
+    public void flushed(TimelineResolution resolution, TimelineCount flushed) {
+        Integer position = positions.get(flushed.optionId());
+        if (position != null) {
+            rings[resolution.ordinal()].flushed(flushed.bucket(), position, flushed.count());
+        }
+    }
+
+    /**
+     * The buckets of one width, a slot per bucket. Slot i holds the bucket numbered starts[i], with the votes and
+     * flushed votes of option j at i * options + j.
+     */
+    private static final class Ring {
+        private final TimelineResolution resolution;
+        private final int size;
+        private final int options;
+        private final AtomicLongArray starts;
+        private final AtomicLongArray counts;
+        private final AtomicLongArray flushed;
+
+        private Ring(TimelineResolution resolution, int size, int options) {
+            this.resolution = resolution;
+            this.size = size;
+            this.options = options;
+            this.starts = new AtomicLongArray(size);
+            this.counts = new AtomicLongArray(size * options);
+            this.flushed = new AtomicLongArray(size * options);
+            for (int slot = 0; slot < size; slot++) {
+                starts.set(slot, EMPTY);
+            }
+        }
+
+        private void add(long bucket, int position, long votes) {
+            int slot = slotOf(bucket);
+            if (starts.get(slot) != bucket) {
+                hold(slot, bucket);
+            }
+            // a vote older than the ring finds its slot taken by a newer bucket and is left out
+            if (starts.get(slot) == bucket) {
+                counts.addAndGet(slot * options + position, votes);
+            }
+        }
+
+        private void seed(long bucket, int position, long votes) {
+            int slot = slotOf(bucket);
+            hold(slot, bucket);
+            if (starts.get(slot) == bucket) {
+                counts.addAndGet(slot * options + position, votes);
+                flushed.addAndGet(slot * options + position, votes);
+            }
+        }
+
+        /**
+         * Clear a slot for a bucket newer than the one it holds. Votes are added without the lock, the slot of a
+         * bucket is only cleared once the bucket is a whole ring old.
+         */
+        private synchronized void hold(int slot, long bucket) {
+            long held = starts.get(slot);
+            if (held != EMPTY && held >= bucket) {
+                return;
+            }
+            for (int position = 0; position < options; position++) {
+                counts.set(slot * options + position, 0);
+                flushed.set(slot * options + position, 0);
+            }
+            starts.set(slot, bucket);
+        }
+
+        private long count(long bucket, int position) {
+            int slot = slotOf(bucket);
+            return starts.get(slot) == bucket ? counts.get(slot * options + position) : 0;
+        }
+
+        private List<TimelineCount> unflushed(long[] optionIds) {
+            List<TimelineCount> unflushed = new ArrayList<>();
+            for (int slot = 0; slot < size; slot++) {
+                long bucket = starts.get(slot);
+                if (bucket == EMPTY) {
+                    continue;
+                }
+                for (int position = 0; position < options; position++) {
+                    long votes = counts.get(slot * options + position) - flushed.get(slot * options + position);
+                    if (votes != 0) {
+                        unflushed.add(new TimelineCount(bucket, optionIds[position], votes));
+                    }
+                }
+            }
+            return unflushed;
+        }
+
+        private void flushed(long bucket, int position, long votes) {
+            int slot = slotOf(bucket);
+            if (starts.get(slot) == bucket) {
+                flushed.addAndGet(slot * options + position, votes);
+            }
+        }
+
+        private int slotOf(long bucket) {
+            return (int) Math.floorMod(bucket, (long) size);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.StreamProperties;
+import com.dizplai.voting.error.PollNotFoundException;
+import com.dizplai.voting.model.OptionResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes the vote distribution of a poll to its viewers as server-sent events. Viewers of the same poll share
+ * a feed: at most maxRate times a second the distribution of every watched poll is composed once, and sent to
+ * all its viewers only if it changed since the last update. The cost of an update does not grow with the
+ * number of viewers, and votes cast between two updates are coalesced into one event.
+ * Each viewer is sent to from a virtual thread of its own, so a slow viewer delays neither the other viewers nor
+ * the scheduled tasks of the application. A viewer still sending when the distribution changes again skips to
+ * the latest one.
+ * 1. votes - the event sent, with the same payload as GET /api/v1/poll/{pollId}/votes
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TallyBroadcaster {
+    static final String EVENT = "votes";
+
+    private final TallyEngine tallyEngine;
+    private final ObjectMapper mapper;
+    private final TaskScheduler taskScheduler;
+    private final StreamProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<Long, Feed> feeds = new ConcurrentHashMap<>();
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+    private ScheduledFuture<?> task;
+
+    @PostConstruct
+    public void start() {
+        Duration interval = Duration.ofNanos((long) (1_000_000_000L / properties.maxRate()));
+        task = taskScheduler.scheduleAtFixedRate(this::publish, interval);
+
+        log.info("Streaming vote distributions every {} ms", interval.toMillis());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (task != null) {
+            task.cancel(false);
+        }
+        sender.shutdownNow();
+        feeds.values().forEach(feed -> feed.viewers.forEach(viewer -> viewer.emitter.complete()));
+        feeds.clear();
+    }
+
+    /**
+     * Add a viewer to the feed of a poll. The viewer is sent the current distribution straight away, then
+     * every change until the emitter completes, times out or fails.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param emitter - the connection of the viewer
+     * @return - the emitter
+     * @throws PollNotFoundException - if the poll does not exist
+     */
+    public SseEmitter subscribe(long pollId, SseEmitter emitter) {
+        if (tallyEngine.find(pollId) == null) {
+            throw new PollNotFoundException(Long.toString(pollId));
+        }
+        Viewer viewer = new Viewer(pollId, emitter);
+        Feed feed = feeds.compute(pollId, (id, existing) -> {
+            Feed f = existing == null ? new Feed() : existing;
+            f.viewers.add(viewer);
+            return f;
+        });
+        emitter.onCompletion(() -> unsubscribe(pollId, emitter));
+        emitter.onTimeout(() -> unsubscribe(pollId, emitter));
+        emitter.onError(e -> unsubscribe(pollId, emitter));
+
+        if (feed.event == null) {
+            refresh(pollId, feed);
+        }
+        viewer.offer(feed.event);
+
+        log.info("Viewer joined poll: {}, {} watching", pollId, feed.viewers.size());
+        return emitter;
+    }
+
+    /**
+     * Send the distribution of every watched poll that changed since the last update to its viewers.
+     */
+    void publish() {
+        feeds.forEach((pollId, feed) -> {
+            try {
+                if (refresh(pollId, feed)) {
+                    Set<ResponseBodyEmitter.DataWithMediaType> event = feed.event;
+                    feed.viewers.forEach(viewer -> viewer.offer(event));
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to publish vote distribution of poll: {}", pollId, e);
+            }
+        });
+    }
+
+    int getViewers(long pollId) {
+        Feed feed = feeds.get(pollId);
+        return feed == null ? 0 : feed.viewers.size();
+    }
+
+    /**
+     * Compose the distribution of a poll and keep it as the event of the feed if it changed.
+     *
+     * @return - true if the distribution changed since the last update
+     */
+    private boolean refresh(long pollId, Feed feed) {
+        feed.lock.lock();
+        try {
+            List<OptionResponse> responses = tallyEngine.toPollResponses(pollId, true);
+            if (responses.equals(feed.last)) {
+                return false;
+            }
+            Timer.Sample sample = Timer.start(meterRegistry);
+            try {
+                // serialize once for all the viewers
+                feed.event = SseEmitter.event()
+                        .name(EVENT)
+                        .data(mapper.writeValueAsString(responses), MediaType.APPLICATION_JSON)
+                        .build();
+                feed.last = responses;
+                return true;
+            } catch (JsonProcessingException e) {
+                log.error("Failed to serialize vote distribution of poll: {}", pollId, e);
+                return false;
+            } finally {
+                sample.stop(Timer.builder("voting.results.serialize").tag("view", "stream").register(meterRegistry));
+            }
+        } finally {
+            feed.lock.unlock();
+        }
+    }
+
+    private void unsubscribe(long pollId, SseEmitter emitter) {
+        feeds.computeIfPresent(pollId, (id, feed) -> {
+            feed.viewers.removeIf(viewer -> viewer.emitter == emitter);
+            return feed.viewers.isEmpty() ? null : feed;
+        });
+    }
+
+    private static class Feed {
+        private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+        // not synchronized, composing may load the poll from the data store on a virtual thread
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile List<OptionResponse> last;
+        private volatile Set<ResponseBodyEmitter.DataWithMediaType> event;
+    }
+
+    private class Viewer {
+        private final long pollId;
+        private final SseEmitter emitter;
+        // the latest event not sent yet, replaced by a newer one while the viewer is sending
+        private final AtomicReference<Set<ResponseBodyEmitter.DataWithMediaType>> pending = new AtomicReference<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private Viewer(long pollId, SseEmitter emitter) {
+            this.pollId = pollId;
+            this.emitter = emitter;
+        }
+
+        /**
+         * Send an event from the sender unless the viewer is sending already, the event is then sent next.
+         */
+        private void offer(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+            if (event == null) {
+                return;
+            }
+            pending.set(event);
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // stopping
+                    sending.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            do {
+                Set<ResponseBodyEmitter.DataWithMediaType> event;
+                while ((event = pending.getAndSet(null)) != null) {
+                    if (!send(event)) {
+                        return;
+                    }
+                }
+                sending.set(false);
+                // an event offered after the last was taken, and before sending was cleared
+            } while (pending.get() != null && sending.compareAndSet(false, true));
+        }
+
+        private boolean send(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+            try {
+                emitter.send(event);
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Dropping viewer of poll: {} - {}", pollId, e.getMessage());
+                unsubscribe(pollId, emitter);
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+    }
+}
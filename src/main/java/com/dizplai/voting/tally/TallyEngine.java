@@ -0,0 +1,248 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.error.PollClosedException;
+import com.dizplai.voting.error.UnknownOptionException;
+import com.dizplai.voting.model.NodeCount;
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.Poll;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.PollResult;
+import com.dizplai.voting.model.TallyDelta;
+import com.dizplai.voting.repository.PollOptionRepository;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.PollRepository;
+import com.dizplai.voting.repository.PollResultRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the options and the vote count of every poll in memory so the vote distribution can be served
+ * without reloading the ballots. A poll is seeded from the data store the first time it is accessed; from
+ * then on every vote cast through the service is added to its counters.
+ * Polls are seeded from the poll_option and poll_option_tally tables, or by counting the votes of a poll that
+ * has not been counted there yet, see TallyReconciler. Votes are counted by the data store, never loaded.
+ * The counts of the other instances are seeded as their counters, so the counters they send later are merged
+ * without counting their votes twice, see TallyExchange.
+ * A closed poll is seeded from its final count in poll_result and frozen, its ballots are not read again, see
+ * PollLifecycleService.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TallyEngine {
+    private final VoteRepository voteRepository;
+    private final PollRepository pollRepository;
+    private final PollOptionRepository pollOptionRepository;
+    private final PollOptionTallyRepository pollOptionTallyRepository;
+    private final PollResultRepository pollResultRepository;
+    private final ClusterProperties clusterProperties;
+    private final Map<Long, PollTally> tallies = new ConcurrentHashMap<>();
+    // seeding waits on the data store while holding the lock - a ReentrantLock rather than
+    // synchronized or ConcurrentHashMap.computeIfAbsent, so a virtual thread does not pin its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Add a vote to the tally of its poll. The poll is seeded before the caller stores the vote,
+     * see seed(long), so the vote is never counted twice.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param optionId - identity of the option voted for e.g. 3
+     */
+    public void record(long pollId, long optionId) {
+        seed(pollId).increment(optionId);
+    }
+
+    /**
+     * Add a number of votes for an option to the tally of its poll, see record(long, long).
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param optionId - identity of the option voted for e.g. 3
+     * @param votes - the number of votes e.g. 1000
+     */
+    public void record(long pollId, long optionId, long votes) {
+        seed(pollId).add(optionId, votes);
+    }
+
+    /**
+     * Return the tally of a poll, loading it from the data store if this is the first access.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @return - the tally of the poll, empty if the poll has no options stored
+     */
+    public PollTally seed(long pollId) {
+        PollTally tally = tallies.get(pollId);
+        if (tally != null) {
+            return tally;
+        }
+        lock.lock();
+        try {
+            // load a poll once, a vote stored while a second load runs would be counted twice
+            tally = tallies.get(pollId);
+            if (tally == null) {
+                tally = load(pollId);
+                tallies.put(pollId, tally);
+            }
+            return tally;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Find the option of a poll with the given text. The tally of the poll is seeded first, so a vote stored
+     * after the option is found is never counted twice.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param text - the text of the option e.g. Liverpool
+     * @return - the option
+     * @throws UnknownOptionException - the poll has no option with the text, or no options at all
+     * @throws PollClosedException - the closing time of the poll has passed
+     */
+    public PollOption resolve(long pollId, String text) {
+        // an unknown poll is not kept, so votes for made up polls do not fill the tallies
+        PollTally tally = find(pollId);
+        PollOption option = tally == null ? null : tally.find(text);
+        if (option == null) {
+            log.debug("Rejected vote for an unknown option of poll: {}", pollId);
+            throw new UnknownOptionException(pollId);
+        }
+        if (tally.isClosed()) {
+            log.debug("Rejected vote for closed poll: {}", pollId);
+            throw new PollClosedException(pollId);
+        }
+        return option;
+    }
+
+    /**
+     * Given a poll identifier, return the vote distribution. See MessageUtil.toPollResponses for detail.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param includeVoteShare - flag to indicate the formatting of the text on Vote view and Vote result view
+     * @return - a list of options
+     */
+    public List<OptionResponse> toPollResponses(long pollId, boolean includeVoteShare) {
+        PollTally tally = find(pollId);
+        return tally == null ? List.of() : tally.toPollResponses(includeVoteShare);
+    }
+
+    /**
+     * Return the tally of a poll that has options, loading it from the data store if this is the first access.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @return - the tally of the poll, null if the poll has no options stored
+     */
+    public PollTally find(long pollId) {
+        PollTally tally = tallies.get(pollId);
+        if (tally != null) {
+            return tally;
+        }
+        lock.lock();
+        try {
+            // loaded under the lock of seed(long), a vote stored while a second load runs would be counted twice
+            tally = tallies.get(pollId);
+            if (tally == null) {
+                tally = load(pollId);
+                if (tally.isEmpty()) {
+                    // do not hold on to unknown polls - they would be seeded again when a vote is cast
+                    return null;
+                }
+                tallies.put(pollId, tally);
+            }
+            return tally;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param pollId - poll identifier e.g. 1
+     * @return - the tally of the poll if it is seeded, never loaded from the data store
+     */
+    public PollTally peek(long pollId) {
+        return tallies.get(pollId);
+    }
+
+    /**
+     * @return - the tallies of the polls seeded so far, a live view
+     */
+    public Collection<PollTally> getTallies() {
+        return Collections.unmodifiableCollection(tallies.values());
+    }
+
+    /**
+     * Drop the tally of a poll so the next access seeds it again from the data store.
+     *
+     * @param pollId - poll identifier e.g. 1
+     */
+    public void evict(long pollId) {
+        tallies.remove(pollId);
+    }
+
+    /**
+     * @param closesAt - the closing time of a poll e.g. 2024-10-06T20:00, in the zone of the application
+     * @return - the closing time in milliseconds since the epoch
+     */
+    public static long toEpochMilli(LocalDateTime closesAt) {
+        return closesAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private PollTally load(long pollId) {
+        PollTally tally = new PollTally(pollId);
+        pollOptionRepository.findByPollOrderByOrdinal(pollId).forEach(tally::addOption);
+
+        Optional<Poll> poll = pollRepository.findById(pollId);
+        poll.map(Poll::getClosesAt).ifPresent(closesAt -> tally.closeAt(toEpochMilli(closesAt)));
+        if (poll.isPresent() && poll.get().isCompacted()) {
+            // the final count, the ballots may be archived
+            List<PollResult> results = pollResultRepository.findByPoll(pollId);
+            results.forEach(result -> tally.add(result.getOptionId(), result.getCount()));
+            tally.freeze();
+
+            log.info("Seeded tally for closed poll: {} from {} results", pollId, results.size());
+            return tally;
+        }
+
+        List<NodeCount> nodeCounts = pollOptionTallyRepository.findNodeCountsByPoll(pollId);
+        if (!nodeCounts.isEmpty()) {
+            String node = clusterProperties.nodeId();
+            List<TallyDelta.Counter> peerCounts = new ArrayList<>();
+            nodeCounts.forEach(count -> {
+                if (count.node().equals(node)) {
+                    tally.add(count.optionId(), count.count());
+                } else {
+                    peerCounts.add(new TallyDelta.Counter(pollId, count.node(), count.optionId(), count.count(), 0));
+                }
+            });
+            tally.merge(node, peerCounts);
+            if (!tally.isEmpty() && nodeCounts.stream().noneMatch(count -> count.node().equals(node))) {
+                // the first votes of the instance would insert its counts at once
+                pollOptionTallyRepository.initialize(pollId, node);
+            }
+
+            log.info("Seeded tally for poll: {} from {} option counts", pollId, nodeCounts.size());
+            return tally;
+        }
+
+        // count the votes in the data store rather than loading every ballot
+        List<OptionCount> counts = voteRepository.countVotesByOption(pollId);
+        counts.forEach(count -> tally.add(count.optionId(), count.count()));
+
+        log.info("Seeded tally for poll: {} from {} vote counts", pollId, counts.size());
+        return tally;
+    }
+}
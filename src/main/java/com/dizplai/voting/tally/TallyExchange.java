@@ -0,0 +1,141 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.model.TallyDelta;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Exchanges the tallies of the instances that serve the same polls, so each counts the votes cast on all of
+ * them without reading the data store. Every instance counts its own votes and keeps the counters of the
+ * others, see PollTally:
+ * 1. every voting.cluster.exchange-interval the counters of the polls changed since the last exchange are sent
+ *    to the peers through the TallyTransport, and every voting.cluster.full-state-interval those of every poll
+ * 2. counters received are merged into the tallies, taking the larger counts, so they can arrive late, twice or
+ *    out of order
+ * 3. a counter of this instance sent back by a peer restores the votes counted before a restart
+ * While the peers are reachable a result lags the votes cast on a peer by about an exchange interval. The
+ * seconds since the last tallies of the least recent peer are published as voting.tally.peer.staleness.
+ */
+@Component
+@ConditionalOnProperty(prefix = "voting.cluster", name = "enabled", havingValue = "true")
+@Slf4j
+public class TallyExchange {
+    private final TallyEngine tallyEngine;
+    private final TallyTransport transport;
+    private final TaskScheduler taskScheduler;
+    private final ClusterProperties properties;
+    // the generation and version of every poll sent, see PollTally
+    private final Map<Long, long[]> sent = new HashMap<>();
+    private final Map<String, Long> heard = new ConcurrentHashMap<>();
+    private long fullStateAt = System.nanoTime();
+    private ScheduledFuture<?> task;
+
+    public TallyExchange(TallyEngine tallyEngine, TallyTransport transport, TaskScheduler taskScheduler,
+                         ClusterProperties properties, MeterRegistry meterRegistry) {
+        this.tallyEngine = tallyEngine;
+        this.transport = transport;
+        this.taskScheduler = taskScheduler;
+        this.properties = properties;
+        Gauge.builder("voting.tally.peer.staleness", this, TallyExchange::getStaleness)
+                .description("Seconds since the tallies of the peer heard from least recently")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        task = taskScheduler.scheduleAtFixedRate(this::exchange, properties.exchangeInterval());
+        log.info("Exchanging tallies as {} with {} every {}", properties.nodeId(), properties.peers(),
+                properties.exchangeInterval());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Send the counters of the polls changed since the last exchange, or of every poll once a full state
+     * interval has passed.
+     */
+    public synchronized void exchange() {
+        boolean full = System.nanoTime() - fullStateAt >= 0;
+        if (full) {
+            fullStateAt = System.nanoTime() + properties.fullStateInterval().toNanos();
+        }
+
+        List<TallyDelta.Counter> counters = new ArrayList<>();
+        Set<Long> polls = new HashSet<>();
+        for (PollTally tally : tallyEngine.getTallies()) {
+            polls.add(tally.getPollId());
+            // the version is read first, so the counters sent are at least as new as the version kept
+            long[] version = {tally.getGeneration(), tally.getVersion()};
+            long[] last = sent.get(tally.getPollId());
+            if (full || last == null || last[0] != version[0] || last[1] != version[1]) {
+                counters.addAll(tally.getCounters(properties.nodeId()));
+                sent.put(tally.getPollId(), version);
+            }
+        }
+        sent.keySet().retainAll(polls);
+        if (counters.isEmpty()) {
+            return;
+        }
+
+        try {
+            transport.publish(new TallyDelta(properties.nodeId(), counters));
+            log.debug("Sent {} tally counters", counters.size());
+        } catch (RuntimeException e) {
+            log.warn("Failed to send {} tally counters", counters.size(), e);
+        }
+    }
+
+    /**
+     * Merge the counters sent by a peer. Counters of polls this instance does not know are ignored.
+     *
+     * @param delta - the counters sent
+     */
+    public void receive(TallyDelta delta) {
+        heard.put(delta.node(), System.nanoTime());
+        Map<Long, List<TallyDelta.Counter>> byPoll = delta.counters().stream()
+                .collect(Collectors.groupingBy(TallyDelta.Counter::poll));
+        int changed = 0;
+        for (Map.Entry<Long, List<TallyDelta.Counter>> entry : byPoll.entrySet()) {
+            PollTally tally = tallyEngine.find(entry.getKey());
+            if (tally != null && tally.merge(properties.nodeId(), entry.getValue())) {
+                changed++;
+            }
+        }
+        log.debug("Merged tallies of {} polls from {}, {} changed", byPoll.size(), delta.node(), changed);
+    }
+
+    /**
+     * @return - the seconds since the tallies of the peer heard from least recently, 0 if none was heard from
+     */
+    public double getStaleness() {
+        long now = System.nanoTime();
+        return heard.values().stream()
+                .mapToLong(at -> now - at)
+                .max()
+                .orElse(0) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,73 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.repository.VoteShards;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Rebuilds the poll_option_tally table from the vote table, or from the shards of the polls, see VoteShards.
+ * 1. On startup, polls with options stored before the tally table existed are counted.
+ * 2. All polls are counted again on the voting.tally.reconcile-cron schedule, disabled by default.
+ * A vote cast for a poll while it is counted may be left out until the next run. The in-memory tally is
+ * not affected, it is seeded from the table the next time the application starts.
+ * The vote table does not record the instance that stored a vote, so every vote of a poll is counted as a vote
+ * of the instance that reconciles it and the counts of the other instances are removed. Reconcile while the
+ * other instances are stopped, they would otherwise send their counts again, see TallyExchange.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TallyReconciler {
+    private final VoteRepository voteRepository;
+    private final PollOptionTallyRepository pollOptionTallyRepository;
+    private final ClusterProperties clusterProperties;
+    private final VoteShards voteShards;
+
+    /**
+     * Set the counts of a poll to the number of vote rows stored for each of its options, and to zero for
+     * options with no votes, as counted by this instance.
+     *
+     * @param pollId - poll identifier e.g. 1
+     */
+    public void reconcile(long pollId) {
+        String node = clusterProperties.nodeId();
+        pollOptionTallyRepository.initialize(pollId, node);
+        pollOptionTallyRepository.removeOtherNodes(pollId, node);
+        int options;
+        if (voteShards.isEnabled()) {
+            // the votes are in a shard, counted there and set here
+            List<OptionCount> counts = voteRepository.countVotesByOption(pollId);
+            counts.forEach(count -> pollOptionTallyRepository.setCount(pollId, count.optionId(), node, count.count()));
+            options = counts.size();
+        } else {
+            options = pollOptionTallyRepository.reconcile(pollId, node);
+        }
+        log.info("Reconciled tally of {} options for poll: {}", options, pollId);
+    }
+
+    @Scheduled(cron = "${voting.tally.reconcile-cron:-}")
+    public void reconcileAll() {
+        List<Long> polls = voteRepository.findPolls();
+        log.info("Reconciling tally of {} polls", polls.size());
+        polls.forEach(this::reconcile);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileMissing() {
+        List<Long> polls = pollOptionTallyRepository.findPollsWithoutTally();
+        if (!polls.isEmpty()) {
+            log.info("Counting {} polls stored without a tally", polls.size());
+            polls.forEach(this::reconcile);
+        }
+    }
+}
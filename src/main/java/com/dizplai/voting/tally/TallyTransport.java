@@ -0,0 +1,19 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.model.TallyDelta;
+
+/**
+ * Sends the tallies of this instance to its peers, see TallyExchange. A peer passes the tallies it receives
+ * to its TallyExchange.receive.
+ *      1. HttpTallyTransport - posts the tallies to every instance in voting.cluster.peers
+ * Tallies merge by taking the larger counts, so a transport may deliver them late, twice or out of order.
+ */
+public interface TallyTransport {
+    /**
+     * Send tallies to the peers. A peer that cannot be reached misses them, it is sent every tally again
+     * within voting.cluster.full-state-interval.
+     *
+     * @param delta - the tallies to send
+     */
+    void publish(TallyDelta delta);
+}
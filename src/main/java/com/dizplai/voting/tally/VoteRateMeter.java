@@ -0,0 +1,64 @@
+package com.dizplai.voting.tally;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the number of votes cast a second for each poll as the voting.poll.votes.rate gauge, tagged with
+ * the poll. The vote totals of the tallies are sampled every second. A poll is reported while it has had a
+ * vote in the last minute, so polls nobody votes on do not each keep a time series.
+ */
+@Component
+public class VoteRateMeter {
+    static final String RATE = "voting.poll.votes.rate";
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final TallyEngine tallyEngine;
+    private final MultiGauge rates;
+    // only used by the sampling task
+    private final Map<Long, Sample> samples = new HashMap<>();
+
+    public VoteRateMeter(TallyEngine tallyEngine, MeterRegistry meterRegistry) {
+        this.tallyEngine = tallyEngine;
+        this.rates = MultiGauge.builder(RATE)
+                .description("Votes cast a second")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void sample() {
+        long now = System.nanoTime();
+        Map<Long, Sample> seen = new HashMap<>();
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        for (PollTally tally : tallyEngine.getTallies()) {
+            long total = tally.getTotal();
+            Sample last = samples.get(tally.getPollId());
+            if (last == null) {
+                // the first sample of a poll only sets the starting total
+                seen.put(tally.getPollId(), new Sample(total, now, now - IDLE_NANOS));
+                continue;
+            }
+            Sample sample = new Sample(total, now, total == last.total ? last.votedAt : now);
+            seen.put(tally.getPollId(), sample);
+            if (now - sample.votedAt < IDLE_NANOS) {
+                rows.add(MultiGauge.Row.of(Tags.of("poll", Long.toString(tally.getPollId())),
+                        (total - last.total) * 1e9 / (now - last.at)));
+            }
+        }
+        samples.clear();
+        samples.putAll(seen);
+        rates.register(rows, true);
+    }
+
+    private record Sample(long total, long at, long votedAt) {
+    }
+}
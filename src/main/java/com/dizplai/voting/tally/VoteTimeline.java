@@ -0,0 +1,220 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.config.TimelineProperties;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.TimelineCount;
+import com.dizplai.voting.model.TimelineResolution;
+import com.dizplai.voting.model.TimelineResponse;
+import com.dizplai.voting.repository.PollTimelineRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts the votes cast for each option of a poll in buckets of 10 seconds, a minute and an hour, so the
+ * momentum of a poll is charted without reading its ballots.
+ * 1. The most recent voting.timeline.buckets buckets of each width are counted in memory, see PollTimeline.
+ * 2. Every voting.timeline.flush-interval the votes counted since the last flush are added to the rows of
+ *    poll_timeline, a row per poll, width, bucket, option and instance. The buckets of every width are stored,
+ *    so a timeline is read in a row per bucket and option whatever the width.
+ * 3. A timeline is read from memory for the buckets held, and from poll_timeline for older buckets and the
+ *    votes of the other instances.
+ * Votes are counted from when they are cast on an instance, the ballots stored before are not counted. The
+ * votes counted since the last flush are missing from the history if the application stops.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class VoteTimeline {
+    private final PollTimelineRepository pollTimelineRepository;
+    private final TallyEngine tallyEngine;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+    private final ClusterProperties clusterProperties;
+    private final TimelineProperties properties;
+    private final Map<Long, PollTimeline> timelines = new ConcurrentHashMap<>();
+    // seeding waits on the data store while holding the lock, see TallyEngine
+    private final ReentrantLock lock = new ReentrantLock();
+    private ScheduledFuture<?> task;
+
+    @PostConstruct
+    public void start() {
+        task = taskScheduler.scheduleWithFixedDelay(this::flush, properties.flushInterval());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (task != null) {
+            task.cancel(false);
+        }
+        flush();
+    }
+
+    /**
+     * Add a number of votes for an option to the current buckets of its poll. Call after the vote is added to
+     * the tally, see TallyEngine.record.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param optionId - identity of the option voted for e.g. 3
+     * @param votes - the number of votes e.g. 1
+     */
+    public void record(long pollId, long optionId, long votes) {
+        record(pollId, optionId, votes, Instant.now().getEpochSecond());
+    }
+
+    /**
+     * @param epochSecond - the time the votes were cast e.g. 1728217481
+     * @see #record(long, long, long)
+     */
+    public void record(long pollId, long optionId, long votes, long epochSecond) {
+        if (votes <= 0) {
+            return;
+        }
+        timeline(pollId, epochSecond).add(optionId, votes, epochSecond);
+    }
+
+    /**
+     * Return the votes cast for each option of a poll in the most recent buckets of a width, up to the current
+     * bucket.
+     *
+     * @param pollId - poll identifier e.g. 1
+     * @param resolution - the width of the buckets
+     * @param limit - the number of buckets e.g. 60
+     * @return - the buckets from the oldest, empty if the poll has no options
+     */
+    public TimelineResponse getTimeline(long pollId, TimelineResolution resolution, int limit) {
+        return getTimeline(pollId, resolution, limit, Instant.now().getEpochSecond());
+    }
+
+    /**
+     * @param epochSecond - the current time e.g. 1728217481
+     * @see #getTimeline(long, TimelineResolution, int)
+     */
+    public TimelineResponse getTimeline(long pollId, TimelineResolution resolution, int limit, long epochSecond) {
+        PollTally tally = tallyEngine.find(pollId);
+        if (tally == null) {
+            return new TimelineResponse(pollId, resolution.getLabel(), List.of(), List.of());
+        }
+        List<PollOption> options = tally.getOptions();
+        long to = resolution.bucketOf(epochSecond);
+        long from = to - limit + 1;
+        long[][] votes = new long[limit][options.size()];
+
+        PollTimeline timeline = timelines.get(pollId);
+        // the votes of this instance are read from memory from the held bucket on
+        long held = timeline == null ? Long.MAX_VALUE : timeline.heldFrom(resolution, epochSecond);
+        for (long bucket = Math.max(from, held); bucket <= to; bucket++) {
+            for (int position = 0; position < options.size(); position++) {
+                votes[(int) (bucket - from)][position] = timeline.count(resolution, bucket, position);
+            }
+        }
+        if (from < held || clusterProperties.enabled()) {
+            Map<Long, Integer> positions = new HashMap<>();
+            for (int position = 0; position < options.size(); position++) {
+                positions.put(options.get(position).getId(), position);
+            }
+            for (TimelineCount count : pollTimelineRepository.findCounts(pollId, resolution.getSeconds(), from, to,
+                    clusterProperties.nodeId(), held)) {
+                Integer position = positions.get(count.optionId());
+                if (position != null) {
+                    votes[(int) (count.bucket() - from)][position] += count.count();
+                }
+            }
+        }
+
+        List<TimelineResponse.Bucket> buckets = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            LocalDateTime start = LocalDateTime.ofInstant(
+                    Instant.ofEpochSecond((from + i) * resolution.getSeconds()), ZoneId.systemDefault());
+            buckets.add(new TimelineResponse.Bucket(start, votes[i]));
+        }
+        return new TimelineResponse(pollId, resolution.getLabel(),
+                options.stream().map(PollOption::getOption).toList(), buckets);
+    }
+
+    /**
+     * Add the votes counted since the last flush to poll_timeline, a transaction per poll. A timeline nobody
+     * voted on for as long as its 10 second buckets are held is dropped once flushed, and seeded again from
+     * poll_timeline on the next vote.
+     */
+    public void flush() {
+        long idleSince = Instant.now().getEpochSecond() - (long) properties.buckets() * TimelineResolution.TEN_SECONDS.getSeconds();
+        for (PollTimeline timeline : timelines.values()) {
+            try {
+                flush(timeline);
+                if (timeline.getLastRecorded() < idleSince && timelines.remove(timeline.getPollId(), timeline)) {
+                    // a vote added while the timeline was removed
+                    flush(timeline);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to flush the timeline of poll: {}, it is retried on the next flush", timeline.getPollId(), e);
+            }
+        }
+    }
+
+    private void flush(PollTimeline timeline) {
+        String node = clusterProperties.nodeId();
+        Map<TimelineResolution, List<TimelineCount>> unflushed = new EnumMap<>(TimelineResolution.class);
+        for (TimelineResolution resolution : TimelineResolution.values()) {
+            List<TimelineCount> counts = timeline.getUnflushed(resolution);
+            if (!counts.isEmpty()) {
+                unflushed.put(resolution, counts);
+            }
+        }
+        if (unflushed.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> unflushed.forEach((resolution, counts) ->
+                counts.forEach(count -> pollTimelineRepository.increment(timeline.getPollId(), resolution.getSeconds(),
+                        count.bucket(), count.optionId(), node, count.count()))));
+        unflushed.forEach((resolution, counts) -> counts.forEach(count -> timeline.flushed(resolution, count)));
+
+        log.debug("Flushed the timeline of poll: {}", timeline.getPollId());
+    }
+
+    private PollTimeline timeline(long pollId, long epochSecond) {
+        PollTimeline timeline = timelines.get(pollId);
+        if (timeline != null) {
+            return timeline;
+        }
+        lock.lock();
+        try {
+            timeline = timelines.get(pollId);
+            if (timeline == null) {
+                timeline = load(pollId, epochSecond);
+                timelines.put(pollId, timeline);
+            }
+            return timeline;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PollTimeline load(long pollId, long epochSecond) {
+        PollTimeline timeline = new PollTimeline(pollId, tallyEngine.seed(pollId).getOptions(), properties.buckets());
+        for (TimelineResolution resolution : TimelineResolution.values()) {
+            // the buckets held, counted by this instance before it stopped or dropped the timeline
+            timeline.seed(resolution, pollTimelineRepository.findNodeCounts(pollId, resolution.getSeconds(),
+                    timeline.heldFrom(resolution, epochSecond), clusterProperties.nodeId()));
+        }
+        log.debug("Seeded the timeline of poll: {}", pollId);
+        return timeline;
+    }
+}
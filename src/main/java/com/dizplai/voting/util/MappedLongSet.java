@@ -0,0 +1,269 @@
+package com.dizplai.voting.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A set of longs kept in a memory-mapped file, so it lives outside the heap and is not rebuilt when the file is
+ * opened again. The values are stored in an open-addressing table of 8-byte slots with linear probing:
+ * 1. memory - 8 bytes a slot, the table doubles when it is 70% full, so 11 to 23 bytes a value
+ * 2. capacity - up to 2^27 slots (1 GB), about 94 million values
+ * 3. durability - a change is in the file once made and survives the process, force writes it to the disk
+ * The file starts with a 64 byte header of the magic number, the size and whether 0 is in the set (slot value
+ * 0 marks an empty slot). Methods are serialized by a lock.
+ */
+public class MappedLongSet implements Closeable {
+    private static final long MAGIC = 0x564f544552534554L;
+    private static final int HEADER = 64;
+    private static final int SIZE_OFFSET = 8;
+    private static final int ZERO_OFFSET = 16;
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final double LOAD_FACTOR = 0.7;
+
+    private final Path path;
+    private final ReentrantLock lock = new ReentrantLock();
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private long size;
+
+    private MappedLongSet(Path path, MappedByteBuffer buffer, int capacity) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.size = buffer.getLong(SIZE_OFFSET);
+    }
+
+    /**
+     * Open the set stored in a file, creating the file if there is none.
+     *
+     * @param path - the file e.g. data/voters/poll-1.voters
+     * @param initialCapacity - the slots of a new file, rounded up to a power of 2 e.g. 65536
+     * @return - the set
+     */
+    public static MappedLongSet open(Path path, int initialCapacity) {
+        try {
+            if (Files.exists(path) && Files.size(path) > 0) {
+                long length = Files.size(path);
+                int capacity = (int) ((length - HEADER) / 8);
+                MappedByteBuffer buffer = map(path, length);
+                if (buffer.getLong(0) != MAGIC || Integer.bitCount(capacity) != 1) {
+                    throw new IllegalStateException("Not a set of longs: " + path);
+                }
+                return new MappedLongSet(path, buffer, capacity);
+            }
+            int capacity = Math.min(MAX_CAPACITY, Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1);
+            return new MappedLongSet(path, create(path, capacity), capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Add a value to the set.
+     *
+     * @param value - the value e.g. 7046029254386353131
+     * @return - true if the value was added, false if it was in the set
+     */
+    public boolean add(long value) {
+        lock.lock();
+        try {
+            if (value == 0) {
+                if (buffer.getLong(ZERO_OFFSET) != 0) {
+                    return false;
+                }
+                buffer.putLong(ZERO_OFFSET, 1);
+                setSize(size + 1);
+                return true;
+            }
+            int slot = find(value);
+            if (buffer.getLong(offset(slot)) == value) {
+                return false;
+            }
+            if (size + 1 > capacity * LOAD_FACTOR) {
+                grow();
+                slot = find(value);
+            }
+            buffer.putLong(offset(slot), value);
+            setSize(size + 1);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean contains(long value) {
+        lock.lock();
+        try {
+            if (value == 0) {
+                return buffer.getLong(ZERO_OFFSET) != 0;
+            }
+            return buffer.getLong(offset(find(value))) == value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a value from the set. The values that follow it in its run of slots are shifted back, so a lookup
+     * never stops at the slot it left.
+     *
+     * @param value - the value e.g. 7046029254386353131
+     * @return - true if the value was removed, false if it was not in the set
+     */
+    public boolean remove(long value) {
+        lock.lock();
+        try {
+            if (value == 0) {
+                if (buffer.getLong(ZERO_OFFSET) == 0) {
+                    return false;
+                }
+                buffer.putLong(ZERO_OFFSET, 0);
+                setSize(size - 1);
+                return true;
+            }
+            int hole = find(value);
+            if (buffer.getLong(offset(hole)) != value) {
+                return false;
+            }
+            int mask = capacity - 1;
+            for (int slot = (hole + 1) & mask; ; slot = (slot + 1) & mask) {
+                long next = buffer.getLong(offset(slot));
+                if (next == 0) {
+                    break;
+                }
+                // move the value into the hole unless its home slot lies cyclically in (hole, slot]
+                int home = home(next);
+                if (hole <= slot ? (home <= hole || home > slot) : (home <= hole && home > slot)) {
+                    buffer.putLong(offset(hole), next);
+                    hole = slot;
+                }
+            }
+            buffer.putLong(offset(hole), 0);
+            setSize(size - 1);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The bytes of the file, see the description of the class for the bytes a value.
+     */
+    public long footprint() {
+        lock.lock();
+        try {
+            return HEADER + (long) capacity * 8;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the changes to the disk, so they survive a crash of the machine.
+     */
+    public void force() {
+        lock.lock();
+        try {
+            buffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    /**
+     * The slot of a value, or of the empty slot that ends its run if it is not in the set.
+     */
+    private int find(long value) {
+        int mask = capacity - 1;
+        int slot = home(value);
+        long current;
+        while ((current = buffer.getLong(offset(slot))) != 0 && current != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int home(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return (int) value & (capacity - 1);
+    }
+
+    private static int offset(int slot) {
+        return HEADER + slot * 8;
+    }
+
+    private void setSize(long size) {
+        this.size = size;
+        buffer.putLong(SIZE_OFFSET, size);
+    }
+
+    /**
+     * Copy the values to a file of twice the slots, then replace the file with it.
+     */
+    private void grow() {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("The set is full at " + size + " values: " + path);
+        }
+        try {
+            Path grown = path.resolveSibling(path.getFileName() + ".grow");
+            Files.deleteIfExists(grown);
+            MappedByteBuffer previous = buffer;
+            int previousCapacity = capacity;
+
+            buffer = create(grown, capacity * 2);
+            capacity = capacity * 2;
+            buffer.putLong(ZERO_OFFSET, previous.getLong(ZERO_OFFSET));
+            for (int slot = 0; slot < previousCapacity; slot++) {
+                long value = previous.getLong(offset(slot));
+                if (value != 0) {
+                    buffer.putLong(offset(find(value)), value);
+                }
+            }
+            buffer.putLong(SIZE_OFFSET, size);
+            buffer.force();
+            Files.move(grown, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MappedByteBuffer create(Path path, int capacity) throws IOException {
+        MappedByteBuffer buffer = map(path, HEADER + (long) capacity * 8);
+        buffer.putLong(0, MAGIC);
+        return buffer;
+    }
+
+    private static MappedByteBuffer map(Path path, long length) throws IOException {
+        // the mapping outlives the channel
+        try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+}
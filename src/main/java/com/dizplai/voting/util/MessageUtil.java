@@ -1,22 +1,30 @@
 package com.dizplai.voting.util;
 
+import com.dizplai.voting.model.OptionCount;
 import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.PollOption;
 import com.dizplai.voting.model.Vote;
 import lombok.extern.slf4j.Slf4j;
 
 import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Locale;
 
 @Slf4j
 public class MessageUtil {
+    public static final String CSV_HEADER = "poll,option,cast_on\n";
+
+    // the percentages from 0% to 100% in steps of 0.01%, formatted as they are first needed
+    private static final String[] PERCENTAGES = new String[100 * 100 + 1];
+
     /**
      * A utility to format the response messages to suit the client requirements
-     * @param votes - contains the vote detail. We can derive options list from vote list
-     * @param pollId - the poll a vote is associated
+     * @param options - the options of the poll in the order they are to be listed
+     * @param ballots - the number of ballots cast for the option at the same index
+     * @param pollId - the poll the options are associated
      * @param includeVoteShare - flag to indicate the formatting of the text on Vote view and Vote result view
      * @return - a list of options e.g.
      *
@@ -38,31 +46,95 @@ public class MessageUtil {
      *     }
      * ]
      */
-    public static List<OptionResponse> toPollResponses(final List<Vote> votes, final Optional<Long> pollId, final boolean includeVoteShare) {
-        List<OptionResponse> optionResponse = new ArrayList<>();
-        String pId = votes.isEmpty() ? null : Long.toString(votes.getFirst().getPoll());
-
-        // count the votes for each option and put to a map
-        Map<String, Long> voteMap = votes.stream()
-                .collect(Collectors.groupingBy(
-                        Vote::getOption,
-                        Collectors.counting()
-                ));
+    public static List<OptionResponse> toPollResponses(final String[] options, final long[] ballots, final String pollId, final boolean includeVoteShare) {
+        List<OptionResponse> optionResponse = new ArrayList<>(options.length);
 
         // find the total votes cast so far
-        float sum = (voteMap.values().stream().mapToLong(Long::intValue).sum() - voteMap.size());
+        long total = 0;
+        for (long count : ballots) {
+            total += count;
+        }
+        float sum = total;
 
         // compose the vote distribution as a percentage of the total votes cast
-        voteMap.forEach((key, value) -> optionResponse.add(
-                OptionResponse.builder()
-                        .option(key)
-                        .poll(pId)
-                        .count(includeVoteShare ? new DecimalFormat("#.##")
-                                .format(sum == 0 ? 0.0f : (value.intValue()-1)/sum * 100.0f) + "%" :
-                                null)
-                        .build())
-        );
+        for (int i = 0; i < options.length; i++) {
+            optionResponse.add(new OptionResponse(options[i],
+                    includeVoteShare ? toPercentage(sum == 0 ? 0.0f : ballots[i] / sum * 100.0f) : null,
+                    pollId));
+        }
 
         return optionResponse;
     }
+
+    /**
+     * Format a percentage with at most 2 decimals, rounded half to even, as DecimalFormat("#.##") does.
+     * The formatted text is kept, so formatting a percentage again does not allocate.
+     * @param percentage - a percentage between 0 and 100 e.g. 23.076923
+     * @return - the percentage e.g. 23.08%
+     */
+    public static String toPercentage(final float percentage) {
+        // a float times 100 is exact as a double, so rint rounds the exact value as DecimalFormat does
+        int hundredths = (int) Math.rint((double) percentage * 100);
+        if (hundredths < 0 || hundredths >= PERCENTAGES.length) {
+            // a decimal point whatever the default locale, as the percentages kept
+            return new DecimalFormat("#.##", DecimalFormatSymbols.getInstance(Locale.ROOT)).format(percentage) + "%";
+        }
+        String text = PERCENTAGES[hundredths];
+        if (text == null) {
+            text = formatHundredths(hundredths);
+            PERCENTAGES[hundredths] = text;
+        }
+        return text;
+    }
+
+    private static String formatHundredths(final int hundredths) {
+        StringBuilder text = new StringBuilder(7).append(hundredths / 100);
+        int fraction = hundredths % 100;
+        if (fraction != 0) {
+            text.append('.').append(fraction / 10);
+            if (fraction % 10 != 0) {
+                text.append(fraction % 10);
+            }
+        }
+        return text.append('%').toString();
+    }
+
+    /**
+     * A utility to format the response messages from the vote counts of the data store, see
+     * VoteRepository.countVotesByOption. An option with no count has had no votes cast.
+     * @param options - the options of the poll in the order they are to be listed
+     * @param counts - the number of ballots cast for each option that has votes, in any order
+     * @param pollId - the poll the options are associated
+     * @param includeVoteShare - flag to indicate the formatting of the text on Vote view and Vote result view
+     * @return - a list of options, see toPollResponses(String[], long[], String, boolean)
+     */
+    public static List<OptionResponse> toPollResponses(final List<PollOption> options, final List<OptionCount> counts, final String pollId, final boolean includeVoteShare) {
+        String[] texts = new String[options.size()];
+        long[] ballots = new long[options.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = options.get(i).getOption();
+            for (OptionCount count : counts) {
+                if (count.optionId() == options.get(i).getId()) {
+                    ballots[i] = count.count();
+                    break;
+                }
+            }
+        }
+
+        return toPollResponses(texts, ballots, pollId, includeVoteShare);
+    }
+
+    /**
+     * Format a vote as a line of comma separated values, see CSV_HEADER. The option is quoted when it
+     * contains a comma, a quote or a line break.
+     * @param vote - the vote to format
+     * @return - a line e.g. 1,Arsenal,2024-10-06T12:24:41.154181
+     */
+    public static String toCsv(final Vote vote) {
+        String option = vote.getOption() == null ? "" : vote.getOption();
+        if (option.contains(",") || option.contains("\"") || option.contains("\n") || option.contains("\r")) {
+            option = "\"" + option.replace("\"", "\"\"") + "\"";
+        }
+        return vote.getPoll() + "," + option + "," + (vote.getCastOn() == null ? "" : DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(vote.getCastOn())) + "\n";
+    }
 }
@@ -0,0 +1,111 @@
+package com.dizplai.voting.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Bloom filter of the keys added in the last one to two time windows. Keys are added to the current
+ * generation and looked up in the current and previous ones; when a window ends the previous generation is
+ * dropped and the current one takes its place. The memory used is fixed by the keys expected in a window.
+ * 1. mightContain - false if the key was not added in the last window, true if it was - or, at the false
+ *    positive rate, if it was not
+ * 2. put - lock-free, bits are set with compare-and-set
+ */
+public class RotatingBloomFilter {
+    private final int bits;
+    private final int hashes;
+    private final long windowNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+    private volatile long rotateAt;
+
+    /**
+     * @param expectedKeys - the keys expected to be added in a window e.g. 1000000
+     * @param falsePositiveRate - the rate of keys wrongly found once the window is full e.g. 0.01
+     * @param windowNanos - the length of a window
+     */
+    public RotatingBloomFilter(int expectedKeys, double falsePositiveRate, long windowNanos) {
+        // m = -n ln p / (ln 2)^2 and k = m / n ln 2, see https://en.wikipedia.org/wiki/Bloom_filter
+        long size = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = (int) Math.min(Math.max(size, 64), Integer.MAX_VALUE - 63);
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedKeys * Math.log(2)));
+        this.windowNanos = windowNanos;
+        this.current = new AtomicLongArray((bits + 63) / 64);
+        this.previous = new AtomicLongArray((bits + 63) / 64);
+        this.rotateAt = System.nanoTime() + windowNanos;
+    }
+
+    public boolean mightContain(String key) {
+        rotate();
+        long hash = hash(key);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    public void put(String key) {
+        rotate();
+        long hash = hash(key);
+        AtomicLongArray words = current;
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(hash, i);
+            long mask = 1L << bit;
+            int word = bit >>> 6;
+            long value = words.get(word);
+            while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask)) {
+                value = words.get(word);
+            }
+        }
+    }
+
+    private boolean contains(AtomicLongArray words, long hash) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(hash, i);
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rotate() {
+        if (System.nanoTime() - rotateAt < 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (now - rotateAt >= 0) {
+                // a filter idle for two windows or more has nothing left to remember
+                previous = now - rotateAt >= windowNanos ? new AtomicLongArray(current.length()) : current;
+                current = new AtomicLongArray(current.length());
+                rotateAt = now + windowNanos;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The i-th bit of a key, from the two halves of its hash (Kirsch and Mitzenmacher).
+     */
+    private int index(long hash, int i) {
+        int combined = (int) hash + i * (int) (hash >>> 32);
+        return (combined & Integer.MAX_VALUE) % bits;
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 bytes of the key, mixed with the finalizer of MurmurHash3.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,103 @@
+package com.dizplai.voting;
+
+import com.dizplai.voting.config.ConnectionLimitingDataSource;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.repository.VoteRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:virtual-threads-test",
+        "spring.threads.virtual.enabled=true",
+        "spring.datasource.hikari.maximum-pool-size=4"
+})
+public class VirtualThreadsTest {
+    private static final int VOTES = 400;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private ServletWebServerApplicationContext context;
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private ObjectMapper mapper;
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void requests_are_served_on_virtual_threads() {
+        TomcatWebServer server = (TomcatWebServer) context.getWebServer();
+
+        assertInstanceOf(VirtualThreadExecutor.class, server.getTomcat().getConnector().getProtocolHandler().getExecutor());
+    }
+
+    @Test
+    public void connection_pool_is_capped_at_the_carriers() throws SQLException {
+        assertInstanceOf(ConnectionLimitingDataSource.class, dataSource);
+        assertEquals(Math.min(4, Runtime.getRuntime().availableProcessors()),
+                dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize());
+    }
+
+    @Test
+    public void concurrent_votes_beyond_the_pool_are_all_counted() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        String poll = client.send(post("/api/v1/poll",
+                        "{\"question\": \"Who will win the Premier League?\", \"options\": [\"Arsenal\", \"Liverpool\"]}"),
+                HttpResponse.BodyHandlers.ofString()).body();
+
+        List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < VOTES; i++) {
+                String option = i % 4 == 0 ? "Liverpool" : "Arsenal";
+                responses.add(clients.submit(() -> client.send(post("/api/v1/poll/" + poll + "/vote",
+                        "{\"voteCast\": \"" + option + "\"}"), HttpResponse.BodyHandlers.ofString())));
+            }
+        }
+        for (Future<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+        }
+
+        List<OptionResponse> votes = mapper.readValue(client.send(HttpRequest.newBuilder(uri("/api/v1/poll/" + poll + "/votes")).build(),
+                HttpResponse.BodyHandlers.ofString()).body(), new TypeReference<>() {});
+        assertEquals(VOTES, voteRepository.findVotesByPoll(Long.parseLong(poll)).size());
+        assertEquals(List.of("75%", "25%"), votes.stream()
+                .sorted((a, b) -> a.option().compareTo(b.option()))
+                .map(OptionResponse::count)
+                .toList());
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
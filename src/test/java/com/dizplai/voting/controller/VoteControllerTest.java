@@ -1,21 +1,39 @@
 package com.dizplai.voting.controller;
 
+import com.dizplai.voting.config.BulkVoteProperties;
+import com.dizplai.voting.config.ResultProperties;
+import com.dizplai.voting.error.PollNotFoundException;
+import com.dizplai.voting.error.UnknownOptionException;
+import com.dizplai.voting.model.BulkVoteRequest;
+import com.dizplai.voting.model.BulkVoteResponse;
 import com.dizplai.voting.model.PollRequest;
 import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.ResultSnapshot;
+import com.dizplai.voting.model.TimelineResolution;
+import com.dizplai.voting.model.TimelineResponse;
 import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.model.VoteResponse;
+import com.dizplai.voting.service.BulkVoteService;
+import com.dizplai.voting.service.PollLifecycleService;
+import com.dizplai.voting.service.ResultSnapshotService;
 import com.dizplai.voting.service.VoteService;
+import com.dizplai.voting.tally.TallyBroadcaster;
+import com.dizplai.voting.tally.VoteTimeline;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.ServletException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.context.WebApplicationContext;
@@ -24,16 +42,26 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(VoteController.class)
 @AutoConfigureMockMvc
+@EnableConfigurationProperties({ResultProperties.class, BulkVoteProperties.class})
 public class VoteControllerTest {
     @Autowired
     private MockMvc mockMvc;
@@ -43,6 +71,16 @@ public class VoteControllerTest {
     private WebApplicationContext webApplicationContext;
     @MockBean
     private VoteService voteService;
+    @MockBean
+    private ResultSnapshotService resultSnapshotService;
+    @MockBean
+    private BulkVoteService bulkVoteService;
+    @MockBean
+    private TallyBroadcaster tallyBroadcaster;
+    @MockBean
+    private PollLifecycleService pollLifecycleService;
+    @MockBean
+    private VoteTimeline voteTimeline;
 
     private final List<Vote> options = new ArrayList<>();
     private final List<OptionResponse> optionResponse = new ArrayList<>();
@@ -95,6 +133,57 @@ public class VoteControllerTest {
         assertEquals("400 Invalid input - A poll can have between 2 and 7 options", cause.getMessage());
     }
 
+    @Test
+    public void create_poll_with_the_same_option_twice_throws_exception() throws JsonProcessingException {
+        PollRequest request = new PollRequest("Who will win the Premier League?", Arrays.asList(new String[]
+                {"Arsenal", "Arsenal"}));
+
+        String jsonRequest = mapper.writeValueAsString(request);
+
+        Exception exception = assertThrows(ServletException.class, () -> {
+            mockMvc.perform( post("/api/v1/poll")
+                            .content(jsonRequest)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().is4xxClientError());
+        });
+
+        HttpClientErrorException cause = (HttpClientErrorException) exception.getCause();
+
+        assertEquals(HttpStatus.BAD_REQUEST, cause.getStatusCode());
+        assertEquals("400 Invalid input - A poll cannot have the same option twice", cause.getMessage());
+        verify(voteService, never()).createPoll(any());
+    }
+
+    @Test
+    public void create_poll_closing_in_the_past_throws_exception() throws JsonProcessingException {
+        PollRequest request = new PollRequest("Who will win the Premier League?", Arrays.asList(new String[]
+                {"Manchester City", "Arsenal"}), null, LocalDateTime.now().minusMinutes(1));
+
+        String jsonRequest = mapper.writeValueAsString(request);
+
+        Exception exception = assertThrows(ServletException.class, () -> {
+            mockMvc.perform( post("/api/v1/poll")
+                            .content(jsonRequest)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().is4xxClientError());
+        });
+
+        HttpClientErrorException cause = (HttpClientErrorException) exception.getCause();
+
+        assertEquals(HttpStatus.BAD_REQUEST, cause.getStatusCode());
+        assertEquals("400 Invalid input - A poll has to close after it is created", cause.getMessage());
+    }
+
+    @Test
+    public void close_poll_returns_no_content() throws Exception {
+        mockMvc.perform( post("/api/v1/poll/1/close"))
+                .andExpect(status().isNoContent());
+
+        verify(pollLifecycleService).close(1L);
+    }
+
     @Test
     public void valid_input_create_poll_returns_initialised_poll() throws Exception {
         PollRequest request = new PollRequest("Who will win the Premier League?", Arrays.asList(new String[]
@@ -118,7 +207,7 @@ public class VoteControllerTest {
     public void valid_input_get_options_returns_options() throws Exception {
         String jsonResponse = mapper.writeValueAsString(optionResponse);
 
-        when(voteService.getVotes("1")).thenReturn(options);
+        when(resultSnapshotService.getResults("1", false)).thenReturn(new ResultSnapshot("\"1.1.3\"", mapper.writeValueAsBytes(optionResponse)));
 
         mockMvc.perform( get("/api/v1/poll/1/options")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -136,7 +225,7 @@ public class VoteControllerTest {
 
         String jsonResponse = mapper.writeValueAsString(optionResponse);
 
-        when(voteService.castVote(1L,"{\"voteCast\": \"Arsenal\"}")).thenReturn(options);
+        when(voteService.castVote(1L,"Arsenal", null, null)).thenReturn(optionResponse);
 
         mockMvc.perform( post("/api/v1/poll/1/vote")
                         .content("{\"voteCast\": \"Arsenal\"}")
@@ -150,15 +239,47 @@ public class VoteControllerTest {
     public void valid_input_poll_result_returns_options() throws Exception {
         String jsonResponse = mapper.writeValueAsString(optionResponse);
 
-        when(voteService.getVotes("1")).thenReturn(options);
+        when(resultSnapshotService.getResults("1", true)).thenReturn(new ResultSnapshot("\"1.1.42\"", mapper.writeValueAsBytes(optionResponse)));
 
         mockMvc.perform( get("/api/v1/poll/1/votes")
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1.1.42\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=1, must-revalidate, public"))
                 .andExpect(content().json(jsonResponse));
     }
 
+    @Test
+    public void unchanged_poll_result_returns_not_modified() throws Exception {
+        when(resultSnapshotService.getResults("1", true)).thenReturn(new ResultSnapshot("\"1.1.42\"", mapper.writeValueAsBytes(optionResponse)));
+
+        mockMvc.perform( get("/api/v1/poll/1/votes")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1.1.42\"")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1.1.42\""))
+                .andExpect(content().bytes(new byte[0]));
+
+        mockMvc.perform( get("/api/v1/poll/1/votes")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1.1.41\"")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(optionResponse)));
+    }
+
+    @Test
+    public void unknown_poll_result_is_not_cached() throws Exception {
+        when(resultSnapshotService.getResults("9", true)).thenReturn(new ResultSnapshot(null, "[]".getBytes()));
+
+        mockMvc.perform( get("/api/v1/poll/9/votes")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"))
+                .andExpect(content().json("[]"));
+    }
+
     @Test
     public void valid_input_ballot_details_returns_options() throws Exception {
         when(voteService.getVotes("1")).thenReturn(options);
@@ -168,4 +289,232 @@ public class VoteControllerTest {
                         .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk());
     }
+
+    @Test
+    public void valid_input_ballot_page_returns_votes_and_next() throws Exception {
+        VoteResponse page = VoteResponse.builder().votes(options.subList(0, 2)).next(2L).build();
+
+        when(voteService.getVotes("1", 0L, 2)).thenReturn(page);
+
+        mockMvc.perform( get("/api/v1/poll/1/ballots?limit=2")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(page)));
+    }
+
+    @Test
+    public void vote_for_unknown_option_returns_bad_request() throws Exception {
+        when(voteService.castVote(1L,"Everton", null, null)).thenThrow(new UnknownOptionException(1L));
+
+        mockMvc.perform( post("/api/v1/poll/1/vote")
+                        .content("{\"voteCast\": \"Everton\"}")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void bulk_votes_return_the_distribution() throws Exception {
+        BulkVoteResponse response = BulkVoteResponse.builder().accepted(1201).results(optionResponse).build();
+        when(bulkVoteService.castVotes(eq(1L), any(BulkVoteRequest.class))).thenReturn(response);
+
+        mockMvc.perform( post("/api/v1/poll/1/ballots")
+                        .content("{\"counts\": {\"Arsenal\": 1200}, \"ballots\": [{\"voteCast\": \"Liverpool\"}]}")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(response)));
+    }
+
+    @Test
+    public void rejected_bulk_votes_return_bad_request() throws Exception {
+        BulkVoteResponse response = BulkVoteResponse.builder().accepted(0).rejected(1)
+                .errors(List.of(new BulkVoteResponse.Error("ballots[0]", "The vote is not for an option of poll 1"))).build();
+        when(bulkVoteService.castVotes(eq(1L), any(BulkVoteRequest.class))).thenReturn(response);
+
+        mockMvc.perform( post("/api/v1/poll/1/ballots")
+                        .content("{\"ballots\": [{\"voteCast\": \"Everton\"}]}")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().json(mapper.writeValueAsString(response)));
+    }
+
+    @Test
+    public void bulk_votes_none_accepted_return_bad_request() throws Exception {
+        BulkVoteResponse response = BulkVoteResponse.builder().accepted(0).rejected(2)
+                .errors(List.of(new BulkVoteResponse.Error("counts.Everton", "The vote is not for an option of poll 1"),
+                        new BulkVoteResponse.Error("ballots[0]", "The vote is not for an option of poll 1")))
+                .results(optionResponse).build();
+        when(bulkVoteService.castVotes(eq(1L), any(BulkVoteRequest.class))).thenReturn(response);
+
+        mockMvc.perform( post("/api/v1/poll/1/ballots")
+                        .content("{\"atomic\": false, \"counts\": {\"Everton\": 10}, \"ballots\": [{\"voteCast\": \"Everton\"}]}")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().json(mapper.writeValueAsString(response)));
+    }
+
+    @Test
+    public void too_many_bulk_votes_throws_exception() {
+        Exception exception = assertThrows(ServletException.class, () -> {
+            mockMvc.perform( post("/api/v1/poll/1/ballots")
+                    .content("{\"counts\": {\"Arsenal\": 100001}}")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.APPLICATION_JSON));
+        });
+
+        HttpClientErrorException cause = (HttpClientErrorException) exception.getCause();
+
+        assertEquals(HttpStatus.BAD_REQUEST, cause.getStatusCode());
+    }
+
+    @Test
+    public void vote_with_idempotency_key_passes_the_key() throws Exception {
+        when(voteService.castVote(1L,"Arsenal", null, "ballot-1")).thenReturn(optionResponse);
+
+        mockMvc.perform( post("/api/v1/poll/1/vote")
+                        .header("Idempotency-Key", "ballot-1")
+                        .content("{\"voteCast\": \"Arsenal\"}")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(optionResponse)));
+    }
+
+    @Test
+    public void idempotency_key_too_long_in_utf8_throws_exception() {
+        Exception exception = assertThrows(ServletException.class, () -> {
+            mockMvc.perform( post("/api/v1/poll/1/vote")
+                    .header("Idempotency-Key", "\u00e9".repeat(64))
+                    .content("{\"voteCast\": \"Arsenal\"}")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.APPLICATION_JSON));
+        });
+
+        HttpClientErrorException cause = (HttpClientErrorException) exception.getCause();
+
+        assertEquals(HttpStatus.BAD_REQUEST, cause.getStatusCode());
+    }
+
+    @Test
+    public void too_long_idempotency_key_throws_exception() {
+        Exception exception = assertThrows(ServletException.class, () -> {
+            mockMvc.perform( post("/api/v1/poll/1/vote")
+                    .header("Idempotency-Key", "k".repeat(65))
+                    .content("{\"voteCast\": \"Arsenal\"}")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.APPLICATION_JSON));
+        });
+
+        HttpClientErrorException cause = (HttpClientErrorException) exception.getCause();
+
+        assertEquals(HttpStatus.BAD_REQUEST, cause.getStatusCode());
+    }
+
+    @Test
+    public void invalid_limit_ballot_page_throws_exception() {
+        Exception exception = assertThrows(ServletException.class, () -> {
+            mockMvc.perform( get("/api/v1/poll/1/ballots?limit=0")
+                    .accept(MediaType.APPLICATION_JSON));
+        });
+
+        HttpClientErrorException cause = (HttpClientErrorException) exception.getCause();
+
+        assertEquals(HttpStatus.BAD_REQUEST, cause.getStatusCode());
+    }
+
+    @Test
+    public void valid_input_timeline_returns_buckets() throws Exception {
+        TimelineResponse timeline = new TimelineResponse(1, "10s", List.of("Manchester City", "Arsenal"), List.of(
+                new TimelineResponse.Bucket(LocalDateTime.of(2024, 9, 25, 10, 30, 40), new long[] {2, 5}),
+                new TimelineResponse.Bucket(LocalDateTime.of(2024, 9, 25, 10, 30, 50), new long[] {0, 3})));
+
+        when(voteTimeline.getTimeline(1L, TimelineResolution.TEN_SECONDS, 2)).thenReturn(timeline);
+
+        mockMvc.perform( get("/api/v1/poll/1/timeline?bucket=10s&limit=2")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"bucket\": \"10s\", \"buckets\": [{\"start\": \"2024-09-25T10:30:40\", \"votes\": [2, 5]}, "
+                        + "{\"start\": \"2024-09-25T10:30:50\", \"votes\": [0, 3]}]}"));
+    }
+
+    @Test
+    public void invalid_bucket_timeline_throws_exception() {
+        Exception exception = assertThrows(ServletException.class, () -> {
+            mockMvc.perform( get("/api/v1/poll/1/timeline?bucket=5m")
+                    .accept(MediaType.APPLICATION_JSON));
+        });
+
+        HttpClientErrorException cause = (HttpClientErrorException) exception.getCause();
+
+        assertEquals(HttpStatus.BAD_REQUEST, cause.getStatusCode());
+        assertEquals("400 Invalid input - A bucket can be 10s, 1m or 1h", cause.getMessage());
+    }
+
+    @Test
+    public void valid_input_ballot_export_streams_csv() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Vote> consumer = invocation.getArgument(1);
+            options.forEach(consumer);
+            return null;
+        }).when(voteService).exportVotes(eq(1L), any());
+
+        MvcResult result = mockMvc.perform( get("/api/v1/poll/1/ballots/export?format=csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andExpect(content().string("""
+                        poll,option,cast_on
+                        1,Manchester City,2024-09-25T10:30:45
+                        1,Liverpool,2024-09-25T10:30:45
+                        1,Arsenal,2024-09-25T10:30:45
+                        """));
+    }
+
+    @Test
+    public void valid_input_ballot_export_streams_ndjson() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Vote> consumer = invocation.getArgument(1);
+            options.forEach(consumer);
+            return null;
+        }).when(voteService).exportVotes(eq(1L), any());
+
+        MvcResult result = mockMvc.perform( get("/api/v1/poll/1/ballots/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String[] lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        assertEquals(3, lines.length);
+        assertEquals("Manchester City", mapper.readTree(lines[0]).get("option").asText());
+        assertEquals("Arsenal", mapper.readTree(lines[2]).get("option").asText());
+    }
+
+    @Test
+    public void valid_input_stream_subscribes_to_poll() throws Exception {
+        when(tallyBroadcaster.subscribe(eq(1L), any())).thenAnswer(invocation -> invocation.getArgument(1));
+
+        mockMvc.perform( get("/api/v1/poll/1/stream")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted());
+
+        verify(tallyBroadcaster).subscribe(eq(1L), any());
+    }
+
+    @Test
+    public void stream_of_unknown_poll_returns_not_found() throws Exception {
+        when(tallyBroadcaster.subscribe(eq(2L), any())).thenThrow(new PollNotFoundException("2"));
+
+        mockMvc.perform( get("/api/v1/poll/2/stream")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isNotFound());
+    }
 }
@@ -0,0 +1,68 @@
+package com.dizplai.voting.migration;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LegacyVoteMigrationTest {
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach()
+    public void setup() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:legacy-vote-migration-test;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute("drop all objects");
+        jdbcTemplate.execute("create table vote (id bigint not null, poll bigint not null, " +
+                "option varchar(255) not null, cast_on timestamp, primary key (id))");
+        jdbcTemplate.execute("create table poll_option_tally (poll bigint not null, option varchar(255) not null, " +
+                "count bigint not null, primary key (poll, option))");
+
+        // poll 1 was created with three options, poll 2 with two
+        String[][] rows = {
+                {"1", "Manchester City"}, {"1", "Arsenal"}, {"1", "Liverpool"}, {"2", "Yes"}, {"2", "No"},
+                {"1", "Arsenal"}, {"1", "Arsenal"}, {"2", "No"}, {"1", "Liverpool"}
+        };
+        for (int i = 0; i < rows.length; i++) {
+            jdbcTemplate.update("insert into vote (id, poll, option, cast_on) values (?, ?, ?, current_timestamp)",
+                    i + 1, Long.parseLong(rows[i][0]), rows[i][1]);
+        }
+    }
+
+    @Test
+    public void options_move_to_poll_option_and_votes_refer_to_them() {
+        new LegacyVoteMigration(dataSource).migrate();
+
+        assertEquals(List.of("Manchester City", "Arsenal", "Liverpool"), jdbcTemplate.queryForList(
+                "select option from poll_option where poll = 1 order by ordinal", String.class));
+        assertEquals(List.of("Yes", "No"), jdbcTemplate.queryForList(
+                "select option from poll_option where poll = 2 order by ordinal", String.class));
+
+        List<Map<String, Object>> votes = jdbcTemplate.queryForList("select v.poll, o.option from vote v " +
+                "join poll_option o on o.id = v.option_id order by v.id");
+        assertEquals(4, votes.size());
+        assertEquals(List.of("Arsenal", "Arsenal", "No", "Liverpool"),
+                votes.stream().map(vote -> vote.get("OPTION")).toList());
+
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                "where lower(table_name) = 'vote' and lower(column_name) = 'option'", Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from information_schema.tables " +
+                "where lower(table_name) = 'poll_option_tally'", Integer.class));
+    }
+
+    @Test
+    public void migrated_store_is_left_alone() {
+        new LegacyVoteMigration(dataSource).migrate();
+        new LegacyVoteMigration(dataSource).migrate();
+
+        assertEquals(5, jdbcTemplate.queryForObject("select count(*) from poll_option", Integer.class));
+    }
+}
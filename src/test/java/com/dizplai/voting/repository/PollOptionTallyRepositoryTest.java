@@ -0,0 +1,93 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.PollOptionTally;
+import com.dizplai.voting.model.Vote;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:poll-option-tally-repository-test")
+public class PollOptionTallyRepositoryTest {
+    @Autowired
+    private PollOptionTallyRepository pollOptionTallyRepository;
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private PollOptionRepository pollOptionRepository;
+
+    @Test
+    public void increment_adds_to_existing_and_new_options() {
+        pollOptionTallyRepository.increment(1L, 10L, "local", 1);
+        pollOptionTallyRepository.increment(1L, 10L, "local", 4);
+        pollOptionTallyRepository.increment(1L, 11L, "local", 2);
+
+        assertEquals(Map.of(10L, 5L, 11L, 2L), counts(1L));
+    }
+
+    @Test
+    public void reconcile_rebuilds_counts_from_votes() {
+        for (long optionId : new long[] {20L, 20L, 20L, 21L}) {
+            voteRepository.save(Vote.builder()
+                    .poll(2)
+                    .optionId(optionId)
+                    .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                    .build());
+        }
+        pollOptionTallyRepository.increment(2L, 20L, "local", 42);
+
+        pollOptionTallyRepository.reconcile(2L, "local");
+
+        assertEquals(Map.of(20L, 3L, 21L, 1L), counts(2L));
+    }
+
+    @Test
+    public void initialize_counts_new_options_as_zero() {
+        PollOption arsenal = pollOptionRepository.save(PollOption.builder().poll(3).ordinal(0).option("Arsenal").build());
+        PollOption liverpool = pollOptionRepository.save(PollOption.builder().poll(3).ordinal(1).option("Liverpool").build());
+        pollOptionTallyRepository.increment(3L, arsenal.getId(), "local", 2);
+
+        pollOptionTallyRepository.initialize(3L, "local");
+
+        assertEquals(Map.of(arsenal.getId(), 2L, liverpool.getId(), 0L), counts(3L));
+    }
+
+    @Test
+    public void counts_of_nodes_are_summed() {
+        pollOptionTallyRepository.increment(4L, 40L, "voting-api-1", 3);
+        pollOptionTallyRepository.increment(4L, 40L, "voting-api-2", 2);
+        pollOptionTallyRepository.increment(4L, 41L, "voting-api-2", 1);
+
+        assertEquals(Map.of(40L, 5L, 41L, 1L), pollOptionTallyRepository.findCountsByPoll(4L).stream()
+                .collect(Collectors.toMap(OptionCount::optionId, OptionCount::count)));
+    }
+
+    @Test
+    public void reconcile_replaces_counts_of_other_nodes() {
+        voteRepository.save(Vote.builder()
+                .poll(5)
+                .optionId(50L)
+                .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                .build());
+        pollOptionTallyRepository.increment(5L, 50L, "voting-api-1", 7);
+        pollOptionTallyRepository.increment(5L, 50L, "voting-api-2", 3);
+
+        pollOptionTallyRepository.removeOtherNodes(5L, "voting-api-1");
+        pollOptionTallyRepository.reconcile(5L, "voting-api-1");
+
+        assertEquals(Map.of(50L, 1L), counts(5L));
+        assertEquals(1, pollOptionTallyRepository.findByPoll(5L).size());
+    }
+
+    private Map<Long, Long> counts(long poll) {
+        return pollOptionTallyRepository.findByPoll(poll).stream()
+                .collect(Collectors.toMap(PollOptionTally::getOptionId, PollOptionTally::getCount));
+    }
+}
@@ -0,0 +1,134 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.Vote;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sharded-vote-repository-test",
+        "voting.shards.enabled=true",
+        "voting.shards.count=3",
+        "voting.shards.url=jdbc:h2:mem:sharded-vote-repository-test-{shard};DB_CLOSE_DELAY=-1"
+})
+public class ShardedVoteRepositoryTest {
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private VoteShards voteShards;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void votes_are_stored_in_the_shard_of_their_poll() {
+        List<Vote> votes = new ArrayList<>();
+        for (long poll = 100; poll < 106; poll++) {
+            votes.add(vote(poll, 1L));
+        }
+
+        voteRepository.insertAll(votes);
+
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from vote where poll >= 100 and poll < 106", Long.class));
+        for (long poll = 100; poll < 106; poll++) {
+            for (int shard = 0; shard < voteShards.getCount(); shard++) {
+                assertEquals(shard == voteShards.shardOf(poll) ? 1 : 0, voteShards.getJdbcTemplates().get(shard)
+                        .queryForObject("select count(*) from vote where poll = ?", Long.class, poll));
+            }
+        }
+    }
+
+    @Test
+    public void votes_of_a_poll_are_read_from_its_shard() {
+        for (long optionId : new long[] {20L, 21L, 21L, 21L}) {
+            voteRepository.insert(vote(2, optionId));
+        }
+
+        assertEquals(4, voteRepository.findVotesByPoll(2L).size());
+        assertEquals(Set.of(new OptionCount(20L, 1), new OptionCount(21L, 3)),
+                Set.copyOf(voteRepository.countVotesByOption(2L)));
+
+        Slice<Vote> first = voteRepository.findByPollAndIdGreaterThanOrderById(2L, 0, PageRequest.ofSize(3));
+        assertEquals(3, first.getContent().size());
+        assertTrue(first.hasNext());
+        Slice<Vote> second = voteRepository.findByPollAndIdGreaterThanOrderById(2L, first.getContent().getLast().getId(),
+                PageRequest.ofSize(3));
+        assertEquals(1, second.getContent().size());
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    public void polls_and_votes_are_counted_across_shards() {
+        long stored = voteRepository.count();
+        List<Vote> votes = new ArrayList<>();
+        for (long poll = 300; poll < 310; poll++) {
+            votes.add(vote(poll, 1L));
+        }
+
+        voteRepository.insertAll(votes);
+
+        assertEquals(stored + 10, voteRepository.count());
+        assertTrue(voteRepository.findPolls().containsAll(List.of(300L, 301L, 302L, 303L, 304L, 305L, 306L, 307L, 308L, 309L)));
+    }
+
+    @Test
+    public void ballot_key_is_cast_once_per_poll() {
+        voteRepository.insert(Vote.builder().poll(5).optionId(50L).ballotKey("ballot-1").build());
+        voteRepository.insert(Vote.builder().poll(6).optionId(60L).ballotKey("ballot-1").build());
+
+        assertTrue(voteRepository.existsByPollAndBallotKey(5, "ballot-1"));
+        assertFalse(voteRepository.existsByPollAndBallotKey(5, "ballot-2"));
+        assertThrows(DataIntegrityViolationException.class, () -> voteRepository.insert(
+                Vote.builder().poll(5).optionId(51L).ballotKey("ballot-1").build()));
+    }
+
+    @Test
+    public void ballots_inserted_again_are_stored_once() {
+        List<Vote> votes = List.of(vote(400, 1L), vote(401, 1L), vote(402, 1L));
+        voteRepository.insertAll(votes);
+
+        voteRepository.insertAll(votes);
+
+        for (long poll = 400; poll < 403; poll++) {
+            assertEquals(1, voteRepository.findVotesByPoll(poll).size());
+        }
+    }
+
+    @Test
+    public void ballots_of_a_feed_are_stored_once_up_to_a_position() {
+        List<Vote> batch = List.of(vote(500, 1L), vote(501, 1L), Vote.builder().poll(500).optionId(2L).ballotKey("ballot-1").build());
+        assertEquals(List.of(), voteRepository.insertAll(batch, "feed", 3));
+
+        // fed again from the log, with no identities
+        List<Vote> again = List.of(vote(500, 1L), vote(501, 1L), Vote.builder().poll(500).optionId(2L).ballotKey("ballot-1").build());
+        assertEquals(List.of(), voteRepository.insertAll(again, "feed", 3));
+        Vote repeated = Vote.builder().poll(500).optionId(2L).ballotKey("ballot-1").build();
+        assertEquals(List.of(repeated), voteRepository.insertAll(List.of(repeated, vote(500, 1L)), "feed", 5));
+
+        assertEquals(3, voteRepository.findVotesByPoll(500L).size());
+        assertEquals(1, voteRepository.findVotesByPoll(501L).size());
+        assertTrue(voteRepository.findFeedPositions("feed").containsAll(List.of(5L, 3L)));
+    }
+
+    private static Vote vote(long poll, long optionId) {
+        return Vote.builder()
+                .poll(poll)
+                .optionId(optionId)
+                .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                .build();
+    }
+}
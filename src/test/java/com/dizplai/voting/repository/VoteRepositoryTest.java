@@ -0,0 +1,106 @@
+package com.dizplai.voting.repository;
+
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.Vote;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:vote-repository-test",
+        "voting.id.allocation-size.vote_seq=20"
+})
+public class VoteRepositoryTest {
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void vote_ids_are_reserved_in_blocks_of_allocation_size() {
+        List<Vote> votes = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            votes.add(Vote.builder()
+                    .poll(1)
+                    .optionId(1L)
+                    .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                    .build());
+        }
+
+        List<Vote> saved = voteRepository.saveAllAndFlush(votes);
+
+        // 30 ids out of two blocks of 20, with the sequence called once per block
+        for (int i = 1; i < saved.size(); i++) {
+            assertEquals(saved.get(i - 1).getId() + 1, saved.get(i).getId());
+        }
+        assertEquals(20, jdbcTemplate.queryForObject(
+                "select increment from information_schema.sequences where lower(sequence_name) = 'vote_seq'", Long.class));
+        assertEquals(saved.getFirst().getId() + 40, jdbcTemplate.queryForObject(
+                "select base_value from information_schema.sequences where lower(sequence_name) = 'vote_seq'", Long.class));
+    }
+
+    @Test
+    public void votes_of_a_poll_are_counted_by_option() {
+        for (long optionId : new long[] {30L, 31L, 31L, 31L}) {
+            voteRepository.save(Vote.builder()
+                    .poll(3)
+                    .optionId(optionId)
+                    .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                    .build());
+        }
+
+        assertEquals(Set.of(new OptionCount(30L, 1), new OptionCount(31L, 3)),
+                Set.copyOf(voteRepository.countVotesByOption(3L)));
+    }
+
+    @Test
+    public void votes_of_a_poll_are_counted_from_the_covering_index() {
+        String plan = jdbcTemplate.queryForObject(
+                "explain select option_id, count(*) from vote where poll = 1 group by option_id", String.class);
+
+        assertTrue(plan.contains("IDX_VOTE_POLL_OPTION"), plan);
+    }
+
+    @Test
+    public void votes_of_a_poll_are_ordered_by_cast_on_from_the_index() {
+        String plan = jdbcTemplate.queryForObject(
+                "explain select id, option_id, cast_on from vote where poll = 1 order by poll, cast_on", String.class);
+
+        assertTrue(plan.contains("IDX_VOTE_POLL_CAST_ON"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    public void page_of_votes_is_read_in_index_order() {
+        String plan = jdbcTemplate.queryForObject(
+                "explain select id from vote where poll = 1 and id > 0 order by poll, id fetch first 100 rows only", String.class);
+
+        assertTrue(plan.contains("IDX_VOTE_POLL:"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    public void ballot_key_is_cast_once_per_poll() {
+        voteRepository.saveAndFlush(Vote.builder().poll(5).optionId(50L).ballotKey("ballot-1").build());
+        voteRepository.saveAndFlush(Vote.builder().poll(6).optionId(60L).ballotKey("ballot-1").build());
+        voteRepository.saveAndFlush(Vote.builder().poll(5).optionId(50L).build());
+        voteRepository.saveAndFlush(Vote.builder().poll(5).optionId(50L).build());
+
+        assertTrue(voteRepository.existsByPollAndBallotKey(5, "ballot-1"));
+        assertFalse(voteRepository.existsByPollAndBallotKey(5, "ballot-2"));
+        assertThrows(DataIntegrityViolationException.class, () -> voteRepository.saveAndFlush(
+                Vote.builder().poll(5).optionId(51L).ballotKey("ballot-1").build()));
+    }
+}
@@ -0,0 +1,76 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.config.PollLifecycleProperties;
+import com.dizplai.voting.model.Vote;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BallotArchiveTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void pages_are_read_across_chunks() {
+        BallotArchive archive = archive();
+        // identities with gaps, as the identities of the instances are allocated in blocks
+        Map<Long, Long> counts = archive.write(1L, LongStream.range(0, 10_000).mapToObj(i -> vote(i * 2 + 1)));
+        assertEquals(Map.of(3L, 10_000L), counts);
+
+        List<Long> ids = new ArrayList<>();
+        long after = 0;
+        while (true) {
+            List<Vote> page = archive.read(1L, after, 1000);
+            page.stream().limit(1000).forEach(vote -> ids.add(vote.getId()));
+            if (page.size() <= 1000) {
+                break;
+            }
+            after = page.get(999).getId();
+        }
+        assertEquals(LongStream.range(0, 10_000).map(i -> i * 2 + 1).boxed().toList(), ids);
+        assertEquals(List.of(8193L, 8195L), archive.read(1L, 8191L, 1).stream().map(Vote::getId).toList());
+
+        List<Vote> all = new ArrayList<>();
+        archive.read(1L, all::add);
+        assertEquals(10_000, all.size());
+        assertEquals(LocalDateTime.of(2024, 9, 25, 10, 30, 45), all.getLast().getCastOn());
+    }
+
+    @Test
+    public void archive_cut_short_is_not_read() throws Exception {
+        BallotArchive archive = archive();
+        archive.write(1L, LongStream.range(1, 100).mapToObj(BallotArchiveTest::vote));
+        Path path = directory.resolve("poll-1.ballots.gz");
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 4));
+
+        assertThrows(IllegalStateException.class, () -> archive.read(1L, 0, 10));
+    }
+
+    private BallotArchive archive() {
+        return new BallotArchive(new PollLifecycleProperties(directory, Duration.ofMinutes(1), Duration.ofSeconds(10)),
+                new ClusterProperties("local", false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(30), ""));
+    }
+
+    private static Vote vote(long id) {
+        return Vote.builder()
+                .id(id)
+                .poll(1L)
+                .optionId(3L)
+                .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                .build();
+    }
+}
@@ -0,0 +1,139 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.model.Vote;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BallotLogTest {
+    private static final LocalDateTime CAST_ON = LocalDateTime.of(2024, 9, 25, 10, 30, 45, 123_456_000);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appended_ballots_are_read_back() {
+        BallotLog ballotLog = BallotLog.open(directory, 1 << 20, true);
+
+        assertEquals(0, ballotLog.append(vote(3L, null, null)));
+        assertEquals(1, ballotLog.append(vote(4L, "2f1c7a4e-0d7b-4b8e-9a51-3c0e8e1f6d2b", -7046029254386353131L)));
+
+        Vote first = ballotLog.read(0);
+        Vote second = ballotLog.read(1);
+        assertEquals(1L, first.getPoll());
+        assertEquals(3L, first.getOptionId());
+        assertEquals(CAST_ON, first.getCastOn());
+        assertNull(first.getBallotKey());
+        assertNull(first.getVoterHash());
+        assertEquals(4L, second.getOptionId());
+        assertEquals("2f1c7a4e-0d7b-4b8e-9a51-3c0e8e1f6d2b", second.getBallotKey());
+        assertEquals(-7046029254386353131L, second.getVoterHash());
+        assertNull(ballotLog.read(2));
+        assertEquals(2, ballotLog.end());
+    }
+
+    @Test
+    void reopened_log_continues_after_the_last_whole_ballot() throws Exception {
+        BallotLog ballotLog = BallotLog.open(directory, 1 << 20, false);
+        for (int i = 0; i < 3; i++) {
+            ballotLog.append(vote(3L, null, null));
+        }
+        ballotLog.close();
+
+        // tear the third ballot
+        try (RandomAccessFile file = new RandomAccessFile(segments()[0].toFile(), "rw")) {
+            file.seek(2L * BallotLog.RECORD_SIZE + 20);
+            file.write(0x7f);
+        }
+        BallotLog reopened = BallotLog.open(directory, 1 << 20, false);
+
+        assertEquals(2, reopened.end());
+        assertNotNull(reopened.read(1));
+        assertNull(reopened.read(2));
+        assertEquals(2, reopened.append(vote(4L, null, null)));
+        assertEquals(4L, reopened.read(2).getOptionId());
+    }
+
+    @Test
+    void segments_roll_and_the_fed_ones_are_deleted() {
+        BallotLog ballotLog = BallotLog.open(directory, 4 * BallotLog.RECORD_SIZE, true);
+        for (int i = 0; i < 10; i++) {
+            ballotLog.append(vote(i, null, null));
+        }
+
+        assertEquals(3, segments().length);
+        ballotLog.deleteBefore(9);
+
+        assertEquals(1, segments().length);
+        assertEquals(8, ballotLog.start());
+        assertNull(ballotLog.read(3));
+        assertEquals(9L, ballotLog.read(9).getOptionId());
+    }
+
+    @Test
+    void log_skips_to_a_later_ballot_in_a_new_segment() {
+        BallotLog ballotLog = BallotLog.open(directory, 1 << 20, true);
+        ballotLog.append(vote(3L, null, null));
+        ballotLog.skipTo(100);
+        ballotLog.close();
+
+        BallotLog reopened = BallotLog.open(directory, 1 << 20, true);
+
+        assertEquals(100, reopened.end());
+        assertEquals(100, reopened.append(vote(4L, null, null)));
+        assertEquals(3L, reopened.read(0).getOptionId());
+    }
+
+    @Test
+    void concurrent_appends_get_every_sequence_once() throws Exception {
+        BallotLog ballotLog = BallotLog.open(directory, 64 * BallotLog.RECORD_SIZE, true);
+        Set<Long> sequences = ConcurrentHashMap.newKeySet();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int thread = 0; thread < 8; thread++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        sequences.add(ballotLog.append(vote(3L, null, null)));
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        }
+
+        assertEquals(4000, sequences.size());
+        assertEquals(4000, ballotLog.end());
+        for (long sequence = 0; sequence < 4000; sequence++) {
+            assertNotNull(ballotLog.read(sequence));
+        }
+    }
+
+    private Path[] segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toArray(Path[]::new);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Vote vote(long optionId, String ballotKey, Long voterHash) {
+        return Vote.builder()
+                .poll(1)
+                .optionId(optionId)
+                .castOn(CAST_ON)
+                .ballotKey(ballotKey)
+                .voterHash(voterHash)
+                .build();
+    }
+}
@@ -0,0 +1,141 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.error.PollNotFoundException;
+import com.dizplai.voting.model.BulkVoteRequest;
+import com.dizplai.voting.model.BulkVoteResponse;
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.PollRequest;
+import com.dizplai.voting.model.VoteRequest;
+import com.dizplai.voting.repository.PollOptionRepository;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:bulk-vote-service-test")
+public class BulkVoteServiceTest {
+    @TempDir
+    static Path voters;
+
+    @DynamicPropertySource
+    static void voterProperties(DynamicPropertyRegistry registry) {
+        registry.add("voting.voters.directory", voters::toString);
+    }
+
+    @Autowired
+    private BulkVoteService bulkVoteService;
+    @Autowired
+    private VoteService voteService;
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private PollOptionRepository pollOptionRepository;
+    @Autowired
+    private PollOptionTallyRepository pollOptionTallyRepository;
+
+    private long pollId;
+
+    @BeforeEach()
+    public void setup() {
+        pollId = voteService.createPoll(new PollRequest("Who will win the Premier League?", List.of("Manchester City", "Liverpool", "Arsenal")));
+    }
+
+    @Test
+    public void unknown_poll_is_not_found() {
+        assertThrows(PollNotFoundException.class, () -> bulkVoteService.castVotes(pollId + 1000, BulkVoteRequest.builder()
+                .counts(Map.of("Arsenal", 3L))
+                .build()));
+    }
+
+    @Test
+    public void counts_and_ballots_are_saved_in_one_request() {
+        BulkVoteResponse response = bulkVoteService.castVotes(pollId, BulkVoteRequest.builder()
+                .counts(Map.of("Arsenal", 3L))
+                .ballots(List.of(new VoteRequest("Liverpool", null), new VoteRequest("Arsenal", null)))
+                .build());
+
+        assertEquals(5, response.accepted());
+        assertNull(response.errors());
+        assertEquals("80%", shares(response.results()).get("Arsenal"));
+        assertEquals(Map.of("Arsenal", 4L, "Liverpool", 1L), counts(voteRepository.countVotesByOption(pollId)));
+        assertEquals(Map.of("Arsenal", 4L, "Liverpool", 1L, "Manchester City", 0L),
+                counts(pollOptionTallyRepository.findCountsByPoll(pollId)));
+    }
+
+    @Test
+    public void atomic_request_with_an_invalid_vote_saves_nothing() {
+        BulkVoteResponse response = bulkVoteService.castVotes(pollId, BulkVoteRequest.builder()
+                .counts(Map.of("Arsenal", 3L, "Liverpool", 0L))
+                .ballots(List.of(new VoteRequest("Liverpool", null), new VoteRequest("Everton", null)))
+                .build());
+
+        assertEquals(0, response.accepted());
+        assertEquals(List.of("ballots[1]", "counts.Liverpool"),
+                response.errors().stream().map(BulkVoteResponse.Error::item).sorted().toList());
+        assertNull(response.results());
+        assertTrue(voteRepository.countVotesByOption(pollId).isEmpty());
+    }
+
+    @Test
+    public void request_that_is_not_atomic_saves_the_valid_votes() {
+        BulkVoteResponse response = bulkVoteService.castVotes(pollId, BulkVoteRequest.builder()
+                .ballots(List.of(new VoteRequest("Liverpool", null), new VoteRequest("Everton", null)))
+                .atomic(false)
+                .build());
+
+        assertEquals(1, response.accepted());
+        assertEquals(1, response.rejected());
+        assertEquals("100%", shares(response.results()).get("Liverpool"));
+    }
+
+    @Test
+    public void one_vote_per_voter_poll_rejects_counts_and_repeated_voters() {
+        long limited = voteService.createPoll(new PollRequest("Who will win the Premier League?", List.of("Liverpool", "Arsenal"), true));
+
+        BulkVoteResponse response = bulkVoteService.castVotes(limited, BulkVoteRequest.builder()
+                .counts(Map.of("Arsenal", 3L))
+                .ballots(List.of(new VoteRequest("Liverpool", "voter-1"), new VoteRequest("Arsenal", "voter-1"),
+                        new VoteRequest("Arsenal", "voter-2")))
+                .atomic(false)
+                .build());
+
+        assertEquals(2, response.accepted());
+        assertEquals(List.of("ballots[1]", "counts.Arsenal"),
+                response.errors().stream().map(BulkVoteResponse.Error::item).sorted().toList());
+    }
+
+    @Test
+    public void hundred_thousand_ballots_are_saved() {
+        BulkVoteResponse response = bulkVoteService.castVotes(pollId, BulkVoteRequest.builder()
+                .ballots(Collections.nCopies(100_000, new VoteRequest("Manchester City", null)))
+                .build());
+
+        assertEquals(100_000, response.accepted());
+        assertEquals(Map.of("Manchester City", 100_000L), counts(voteRepository.countVotesByOption(pollId)));
+    }
+
+    private Map<String, Long> counts(List<OptionCount> counts) {
+        Map<Long, String> texts = pollOptionRepository.findByPollOrderByOrdinal(pollId).stream()
+                .collect(Collectors.toMap(PollOption::getId, PollOption::getOption));
+        return counts.stream().collect(Collectors.toMap(count -> texts.get(count.optionId()), OptionCount::count));
+    }
+
+    private static Map<String, String> shares(List<OptionResponse> responses) {
+        return responses.stream().collect(Collectors.toMap(OptionResponse::option, OptionResponse::count));
+    }
+}
@@ -0,0 +1,87 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.IdempotencyProperties;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.repository.VoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IdempotencyIndexTest {
+    private final VoteRepository voteRepository = mock(VoteRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<OptionResponse> first = List.of(OptionResponse.builder().option("Arsenal").count("100%").poll("1").build());
+    private final List<OptionResponse> current = List.of(OptionResponse.builder().option("Arsenal").count("50%").poll("1").build());
+    private final AtomicInteger casts = new AtomicInteger();
+
+    private IdempotencyIndex idempotencyIndex;
+
+    @BeforeEach()
+    public void setup() {
+        idempotencyIndex = new IdempotencyIndex(voteRepository,
+                new IdempotencyProperties(Duration.ofMinutes(10), 1000, 0.01, 100), meterRegistry);
+    }
+
+    @Test
+    public void retry_is_answered_with_the_first_result() {
+        assertSame(first, idempotencyIndex.submit(1L, "ballot-1", cast(), () -> current));
+        assertSame(first, idempotencyIndex.submit(1L, "ballot-1", cast(), () -> current));
+
+        assertEquals(1, casts.get());
+        assertEquals(1, meterRegistry.counter("voting.votes.replayed").count());
+        verify(voteRepository, never()).existsByPollAndBallotKey(anyLong(), anyString());
+    }
+
+    @Test
+    public void same_key_in_another_poll_is_cast() {
+        idempotencyIndex.submit(1L, "ballot-1", cast(), () -> current);
+        idempotencyIndex.submit(2L, "ballot-1", cast(), () -> current);
+
+        assertEquals(2, casts.get());
+    }
+
+    @Test
+    public void expired_retry_is_found_in_the_data_store() throws InterruptedException {
+        idempotencyIndex = new IdempotencyIndex(voteRepository,
+                new IdempotencyProperties(Duration.ofMillis(200), 1000, 0.01, 100), meterRegistry);
+        when(voteRepository.existsByPollAndBallotKey(1L, "ballot-1")).thenReturn(true);
+        idempotencyIndex.submit(1L, "ballot-1", cast(), () -> current);
+
+        // the result expires after a window, the filter remembers the key for another
+        Thread.sleep(250);
+
+        assertSame(current, idempotencyIndex.submit(1L, "ballot-1", cast(), () -> current));
+        assertEquals(1, casts.get());
+    }
+
+    @Test
+    public void failed_vote_may_be_retried() {
+        assertThrows(IllegalStateException.class, () -> idempotencyIndex.submit(1L, "ballot-1", () -> {
+            throw new IllegalStateException("store failed");
+        }, () -> current));
+
+        when(voteRepository.existsByPollAndBallotKey(1L, "ballot-1")).thenReturn(false);
+        assertSame(first, idempotencyIndex.submit(1L, "ballot-1", cast(), () -> current));
+        assertEquals(1, casts.get());
+    }
+
+    private Supplier<List<OptionResponse>> cast() {
+        return () -> {
+            casts.incrementAndGet();
+            return first;
+        };
+    }
+}
@@ -0,0 +1,180 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.BallotLogProperties;
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.model.BallotLogPosition;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.repository.BallotLogPositionRepository;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.tally.TallyEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LogBallotStoreTest {
+    private final VoteRepository voteRepository = mock(VoteRepository.class);
+    private final PollOptionTallyRepository pollOptionTallyRepository = mock(PollOptionTallyRepository.class);
+    private final BallotLogPositionRepository ballotLogPositionRepository = mock(BallotLogPositionRepository.class);
+    private final TallyEngine tallyEngine = mock(TallyEngine.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void appended_ballots_are_fed_in_batches_with_the_position() throws Exception {
+        List<Vote> saved = new ArrayList<>();
+        when(voteRepository.insertAll(anyList(), anyString(), anyLong())).thenAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(0));
+            return List.of();
+        });
+
+        LogBallotStore store = store();
+        for (int i = 0; i < 250; i++) {
+            store.store(vote(null));
+        }
+        store.shutdown();
+
+        assertEquals(250, saved.size());
+        assertEquals(0, store.getLag());
+        ArgumentCaptor<BallotLogPosition> positions = ArgumentCaptor.forClass(BallotLogPosition.class);
+        verify(ballotLogPositionRepository, atLeastOnce()).save(positions.capture());
+        assertEquals(directory.toString(), positions.getValue().getDirectory());
+        assertEquals(250, positions.getValue().getPosition());
+    }
+
+    @Test
+    public void ballots_not_fed_are_saved_when_the_store_starts_again() throws Exception {
+        when(voteRepository.insertAll(anyList(), anyString(), anyLong())).thenThrow(new IllegalStateException("data store is down"));
+        LogBallotStore stopped = store();
+        for (int i = 0; i < 10; i++) {
+            stopped.store(vote(null));
+        }
+        stopped.shutdown();
+        assertEquals(10, stopped.getLag());
+
+        AtomicInteger saved = new AtomicInteger();
+        doAnswer(invocation -> {
+            saved.addAndGet(((List<?>) invocation.getArgument(0)).size());
+            return List.of();
+        }).when(voteRepository).insertAll(anyList(), anyString(), anyLong());
+        LogBallotStore started = store();
+
+        // replayed before the store is returned
+        assertEquals(10, saved.get());
+        assertEquals(0, started.getLag());
+        verify(pollOptionTallyRepository).increment(1L, 3L, "local", 10L);
+        verify(tallyEngine).evict(1L);
+        started.shutdown();
+    }
+
+    @Test
+    public void ballot_with_a_stored_key_is_dropped_and_not_counted() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<Vote> saved = new ArrayList<>();
+        when(voteRepository.insertAll(anyList(), anyString(), anyLong())).thenAnswer(invocation -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new DataIntegrityViolationException("uk_vote_poll_ballot_key");
+            }
+            saved.addAll(invocation.getArgument(0));
+            return List.of();
+        });
+        when(voteRepository.existsByPollAndBallotKey(1L, "stored")).thenReturn(true);
+
+        LogBallotStore store = store();
+        store.store(vote("stored"));
+        store.store(vote("new"));
+        store.store(vote(null));
+        store.shutdown();
+
+        assertEquals(2, saved.size());
+        assertEquals("new", saved.getFirst().getBallotKey());
+        verify(tallyEngine).record(1L, 3L, -1);
+        verify(tallyEngine, never()).evict(any(Long.class));
+    }
+
+    @Test
+    public void ballots_a_shard_left_out_are_not_counted() throws Exception {
+        when(voteRepository.insertAll(anyList(), anyString(), anyLong()))
+                .thenAnswer(invocation -> ((List<Vote>) invocation.getArgument(0)).stream()
+                        .filter(vote -> "stored".equals(vote.getBallotKey()))
+                        .toList());
+
+        LogBallotStore store = store();
+        store.store(vote("stored"));
+        store.store(vote("new"));
+        store.shutdown();
+
+        verify(pollOptionTallyRepository).increment(1L, 3L, "local", 1L);
+        verify(tallyEngine).record(1L, 3L, -1);
+    }
+
+    @Test
+    public void ballots_replayed_end_at_the_positions_stored_in_the_shards() throws Exception {
+        when(voteRepository.insertAll(anyList(), anyString(), anyLong())).thenThrow(new IllegalStateException("data store is down"));
+        LogBallotStore stopped = store();
+        for (int i = 0; i < 10; i++) {
+            stopped.store(vote(null));
+        }
+        stopped.shutdown();
+        clearInvocations(voteRepository);
+
+        List<Integer> batches = new ArrayList<>();
+        doAnswer(invocation -> {
+            batches.add(((List<?>) invocation.getArgument(0)).size());
+            return List.of();
+        }).when(voteRepository).insertAll(anyList(), anyString(), anyLong());
+        when(voteRepository.findFeedPositions(directory.toString())).thenReturn(List.of(4L));
+        LogBallotStore started = store();
+
+        assertEquals(List.of(4, 6), batches);
+        verify(voteRepository).insertAll(anyList(), eq(directory.toString()), eq(4L));
+        verify(voteRepository).insertAll(anyList(), eq(directory.toString()), eq(10L));
+        started.shutdown();
+    }
+
+    private LogBallotStore store() {
+        return new LogBallotStore(voteRepository, pollOptionTallyRepository, ballotLogPositionRepository, tallyEngine,
+                transactionManager, mock(TaskScheduler.class),
+                new BallotLogProperties(true, directory, DataSize.ofKilobytes(4), BallotLogProperties.Fsync.GROUP,
+                        Duration.ofSeconds(1), 100, Duration.ofMillis(10)),
+                new ClusterProperties("local", false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(30), ""),
+                new SimpleMeterRegistry());
+    }
+
+    private static Vote vote(String ballotKey) {
+        return Vote.builder()
+                .poll(1)
+                .optionId(3L)
+                .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                .ballotKey(ballotKey)
+                .build();
+    }
+}
@@ -0,0 +1,53 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.CacheConfig;
+import com.dizplai.voting.config.PollCacheProperties;
+import com.dizplai.voting.model.Poll;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.PollResponse;
+import com.dizplai.voting.repository.PollOptionRepository;
+import com.dizplai.voting.repository.PollRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PollCacheWarmerTest {
+    private final PollRepository pollRepository = mock(PollRepository.class);
+    private final PollOptionRepository pollOptionRepository = mock(PollOptionRepository.class);
+    private final CacheManager cacheManager = new ConcurrentMapCacheManager();
+
+    @Test
+    public void most_recent_open_polls_are_cached() {
+        when(pollRepository.findOpen(any(LocalDateTime.class), any(Pageable.class))).thenAnswer(invocation -> {
+            Pageable page = invocation.getArgument(1);
+            return new SliceImpl<>(page.getPageNumber() > 0 ? List.of() : List.of(
+                    Poll.builder().id(3L).question("Who will win the Premier League?").build(),
+                    Poll.builder().id(2L).question("Who will win the FA Cup?").build(),
+                    Poll.builder().id(1L).question("Who will win the League Cup?").build()), PageRequest.of(0, 1000), false);
+        });
+        when(pollOptionRepository.findByPollInOrderByPollAscOrdinalAsc(List.of(3L, 2L))).thenReturn(List.of(
+                PollOption.builder().id(20L).poll(2).ordinal(0).option("Chelsea").build(),
+                PollOption.builder().id(21L).poll(2).ordinal(1).option("Arsenal").build(),
+                PollOption.builder().id(30L).poll(3).ordinal(0).option("Liverpool").build()));
+
+        new PollCacheWarmer(pollRepository, pollOptionRepository, cacheManager, new PollCacheProperties(true, 2)).warmUp();
+
+        assertEquals(new PollResponse(2L, "Who will win the FA Cup?", List.of("Chelsea", "Arsenal")),
+                cacheManager.getCache(CacheConfig.POLLS).get(2L, PollResponse.class));
+        assertEquals(new PollResponse(3L, "Who will win the Premier League?", List.of("Liverpool")),
+                cacheManager.getCache(CacheConfig.POLLS).get(3L, PollResponse.class));
+        assertNull(cacheManager.getCache(CacheConfig.POLLS).get(1L));
+    }
+}
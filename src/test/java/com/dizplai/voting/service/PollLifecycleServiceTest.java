@@ -0,0 +1,173 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.error.PollClosedException;
+import com.dizplai.voting.model.BulkVoteRequest;
+import com.dizplai.voting.model.Poll;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.PollRequest;
+import com.dizplai.voting.model.PollResult;
+import com.dizplai.voting.model.PollStatus;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.model.VoteResponse;
+import com.dizplai.voting.repository.PollRepository;
+import com.dizplai.voting.repository.PollResultRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:poll-lifecycle-service-test",
+        "voting.polls.compaction-delay=0s",
+        "voting.polls.check-interval=1h"
+})
+public class PollLifecycleServiceTest {
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void directoryProperties(DynamicPropertyRegistry registry) {
+        registry.add("voting.voters.directory", () -> directory.resolve("voters").toString());
+        registry.add("voting.polls.archive-directory", () -> directory.resolve("archive").toString());
+    }
+
+    @Autowired
+    private PollLifecycleService pollLifecycleService;
+    @Autowired
+    private VoteService voteService;
+    @Autowired
+    private BulkVoteService bulkVoteService;
+    @Autowired
+    private VoteRepository voteRepository;
+    @Autowired
+    private PollRepository pollRepository;
+    @Autowired
+    private PollResultRepository pollResultRepository;
+    @Autowired
+    private BallotArchive ballotArchive;
+
+    @Test
+    public void closed_poll_rejects_votes() {
+        long pollId = voteService.createPoll(new PollRequest("Who will win the Premier League?", List.of("Liverpool", "Arsenal")));
+        voteService.castVote(pollId, "Arsenal");
+
+        pollLifecycleService.close(pollId);
+
+        assertThrows(PollClosedException.class, () -> voteService.castVote(pollId, "Arsenal"));
+        assertThrows(PollClosedException.class, () -> bulkVoteService.castVotes(pollId, BulkVoteRequest.builder()
+                .counts(Map.of("Arsenal", 3L))
+                .build()));
+        assertNotNull(voteService.getPoll(Long.toString(pollId)).closesAt());
+    }
+
+    @Test
+    public void closed_poll_is_compacted_and_its_ballots_archived() {
+        long pollId = voteService.createPoll(new PollRequest("Who will win the Premier League?", List.of("Liverpool", "Arsenal", "Chelsea")));
+        voteService.castVote(pollId, "Arsenal", null, "ballot-1");
+        voteService.castVote(pollId, "Arsenal");
+        voteService.castVote(pollId, "Arsenal");
+        voteService.castVote(pollId, "Liverpool");
+
+        pollLifecycleService.close(pollId);
+        pollLifecycleService.check();
+
+        assertEquals(PollStatus.ARCHIVED, pollRepository.findById(pollId).orElseThrow().getStatus());
+        assertTrue(voteRepository.findVotesByPoll(pollId).isEmpty());
+        assertEquals(4, pollResultRepository.findByPoll(pollId).stream().mapToLong(PollResult::getCount).sum());
+        assertEquals(Map.of("Liverpool", "25%", "Arsenal", "75%", "Chelsea", "0%"),
+                shares(voteService.getResults(Long.toString(pollId), true)));
+
+        List<Vote> votes = voteService.getVotes(Long.toString(pollId));
+        assertEquals(List.of("Arsenal", "Arsenal", "Arsenal", "Liverpool"), votes.stream().map(Vote::getOption).toList());
+        assertEquals("ballot-1", votes.getFirst().getBallotKey());
+        assertNotNull(votes.getFirst().getCastOn());
+
+        VoteResponse first = voteService.getVotes(Long.toString(pollId), 0, 3);
+        assertEquals(3, first.votes().size());
+        VoteResponse second = voteService.getVotes(Long.toString(pollId), first.next(), 3);
+        assertEquals(List.of("Liverpool"), second.votes().stream().map(Vote::getOption).toList());
+        assertNull(second.next());
+
+        List<Vote> exported = new ArrayList<>();
+        voteService.exportVotes(pollId, exported::add);
+        assertEquals(4, exported.size());
+    }
+
+    @Test
+    public void closed_poll_without_archive_is_read_from_the_vote_table() {
+        long pollId = voteService.createPoll(new PollRequest("Who will win the Champions League?", List.of("Liverpool", "Arsenal")));
+        voteService.castVote(pollId, "Liverpool");
+        voteService.castVote(pollId, "Arsenal");
+
+        // closed by an instance that does not share the archive directory
+        pollRepository.markClosed(pollId);
+        pollLifecycleService.check();
+
+        assertEquals(PollStatus.CLOSED, pollRepository.findById(pollId).orElseThrow().getStatus());
+        assertEquals(List.of("Liverpool", "Arsenal"), voteService.getVotes(Long.toString(pollId)).stream()
+                .map(Vote::getOption).toList());
+        List<Vote> exported = new ArrayList<>();
+        voteService.exportVotes(pollId, exported::add);
+        assertEquals(2, exported.size());
+    }
+
+    @Test
+    public void ballot_stored_after_the_archive_is_kept() {
+        long pollId = voteService.createPoll(new PollRequest("Who will win the Europa League?", List.of("Liverpool", "Arsenal")));
+        voteService.castVote(pollId, "Liverpool");
+        voteService.castVote(pollId, "Arsenal");
+        pollLifecycleService.close(pollId);
+        ballotArchive.write(pollId, voteRepository.findVotesByPoll(pollId).stream());
+        pollRepository.markClosed(pollId);
+
+        // fed from the write-behind queue of another instance after the archive was written
+        Vote late = voteRepository.findVotesByPoll(pollId).getFirst();
+        voteRepository.insert(Vote.builder().poll(pollId).optionId(late.getOptionId()).castOn(LocalDateTime.now()).build());
+        pollLifecycleService.check();
+
+        assertEquals(PollStatus.ARCHIVED, pollRepository.findById(pollId).orElseThrow().getStatus());
+        assertEquals(1, voteRepository.findVotesByPoll(pollId).size());
+    }
+
+    @Test
+    public void open_poll_is_not_compacted() {
+        long pollId = voteService.createPoll(new PollRequest("Who will win the FA Cup?", List.of("Chelsea", "Arsenal")));
+        voteService.castVote(pollId, "Chelsea");
+
+        pollLifecycleService.check();
+
+        assertEquals(PollStatus.OPEN, pollRepository.findById(pollId).orElseThrow().getStatus());
+        assertEquals(1, voteRepository.findVotesByPoll(pollId).size());
+        assertTrue(pollResultRepository.findByPoll(pollId).isEmpty());
+    }
+
+    @Test
+    public void closed_poll_is_not_listed_as_open() {
+        long open = voteService.createPoll(new PollRequest("Who will win the Carabao Cup?", List.of("Chelsea", "Arsenal")));
+        long closed = voteService.createPoll(new PollRequest("Who will win the Community Shield?", List.of("Chelsea", "Arsenal")));
+
+        pollLifecycleService.close(closed);
+
+        List<Long> polls = pollRepository.findOpen(LocalDateTime.now(), PageRequest.of(0, 1000)).stream()
+                .map(Poll::getId).toList();
+        assertTrue(polls.contains(open));
+        assertFalse(polls.contains(closed));
+    }
+
+    private static Map<String, String> shares(List<OptionResponse> responses) {
+        return responses.stream().collect(Collectors.toMap(OptionResponse::option, OptionResponse::count));
+    }
+}
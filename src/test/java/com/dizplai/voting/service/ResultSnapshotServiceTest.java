@@ -0,0 +1,114 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.model.NodeCount;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.ResultSnapshot;
+import com.dizplai.voting.repository.PollOptionRepository;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.PollRepository;
+import com.dizplai.voting.repository.PollResultRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.tally.TallyEngine;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResultSnapshotServiceTest {
+    private final VoteRepository voteRepository = mock(VoteRepository.class);
+    private final PollOptionRepository pollOptionRepository = mock(PollOptionRepository.class);
+    private final PollOptionTallyRepository pollOptionTallyRepository = mock(PollOptionTallyRepository.class);
+    private final PollRepository pollRepository = mock(PollRepository.class);
+    private final PollResultRepository pollResultRepository = mock(PollResultRepository.class);
+    private final VoteService voteService = mock(VoteService.class);
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<PollOption> options = new ArrayList<>();
+
+    private TallyEngine tallyEngine;
+    private ResultSnapshotService resultSnapshotService;
+
+    @BeforeEach()
+    public void setup() {
+        tallyEngine = new TallyEngine(voteRepository, pollRepository, pollOptionRepository, pollOptionTallyRepository,
+                pollResultRepository, new ClusterProperties("local", false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(30), ""));
+        resultSnapshotService = new ResultSnapshotService(tallyEngine, voteService, mapper, new SimpleMeterRegistry());
+        for (String option : new String[] {"Manchester City", "Liverpool", "Arsenal"}) {
+            options.add(PollOption.builder()
+                    .id(options.size() + 10L)
+                    .poll(1)
+                    .ordinal(options.size())
+                    .option(option)
+                    .build());
+        }
+        when(pollOptionRepository.findByPollOrderByOrdinal(1L)).thenReturn(options);
+        when(pollOptionTallyRepository.findNodeCountsByPoll(1L)).thenReturn(List.of(new NodeCount(10L, "local", 3), new NodeCount(11L, "local", 1)));
+    }
+
+    @Test
+    public void unchanged_results_are_serialized_once() throws Exception {
+        ResultSnapshot first = resultSnapshotService.getResults("1", true);
+        ResultSnapshot second = resultSnapshotService.getResults("1", true);
+
+        assertNotNull(first.etag());
+        assertSame(first, second);
+        assertEquals("75%", share(first, "Manchester City"));
+    }
+
+    @Test
+    public void vote_changes_the_tag_of_the_results() throws Exception {
+        ResultSnapshot before = resultSnapshotService.getResults("1", true);
+
+        tallyEngine.record(1L, 11L);
+        ResultSnapshot after = resultSnapshotService.getResults("1", true);
+
+        assertNotEquals(before.etag(), after.etag());
+        assertEquals("40%", share(after, "Liverpool"));
+    }
+
+    @Test
+    public void vote_does_not_change_the_options() {
+        ResultSnapshot before = resultSnapshotService.getResults("1", false);
+
+        tallyEngine.record(1L, 11L);
+
+        assertSame(before, resultSnapshotService.getResults("1", false));
+    }
+
+    @Test
+    public void poll_detail_is_loaded_once_per_option_count() {
+        resultSnapshotService.getPoll("1");
+        tallyEngine.record(1L, 12L);
+        resultSnapshotService.getPoll("1");
+
+        verify(voteService, times(1)).getPoll("1");
+    }
+
+    @Test
+    public void unknown_poll_results_have_no_tag() {
+        ResultSnapshot snapshot = resultSnapshotService.getResults("2", true);
+
+        assertNull(snapshot.etag());
+        assertEquals("[]", new String(snapshot.body()));
+    }
+
+    private String share(ResultSnapshot snapshot, String option) throws Exception {
+        for (JsonNode response : mapper.readTree(snapshot.body())) {
+            if (option.equals(response.get("option").asText())) {
+                return response.get("count").asText();
+            }
+        }
+        return null;
+    }
+}
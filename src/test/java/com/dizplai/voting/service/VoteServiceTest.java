@@ -1,32 +1,56 @@
 package com.dizplai.voting.service;
 
+import com.dizplai.voting.error.AlreadyVotedException;
+import com.dizplai.voting.model.OptionResponse;
 import com.dizplai.voting.model.Poll;
+import com.dizplai.voting.model.PollOption;
 import com.dizplai.voting.model.PollRequest;
+import com.dizplai.voting.model.PollResponse;
 import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.repository.PollOptionRepository;
 import com.dizplai.voting.repository.PollRepository;
 import com.dizplai.voting.repository.VoteRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
-import java.time.LocalDateTime;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
 public class VoteServiceTest {
+    @TempDir
+    static Path voters;
+
+    @DynamicPropertySource
+    static void voterProperties(DynamicPropertyRegistry registry) {
+        registry.add("voting.voters.directory", voters::toString);
+    }
+
+
     @MockBean
     private VoteRepository voteRepository;
     @MockBean
     private PollRepository pollRepository;
+    @MockBean
+    private PollOptionRepository pollOptionRepository;
 
     @Mock
     private Poll mockPoll;
@@ -36,27 +60,27 @@ public class VoteServiceTest {
     @Autowired
     private VoteService voteService;
 
-    private final List<Vote> options = new ArrayList<>();
+    private final List<PollOption> options = new ArrayList<>();
 
     @BeforeEach()
     public void setup() {
-        options.add(Vote.builder()
+        options.add(PollOption.builder()
                 .poll(1)
+                .ordinal(0)
                 .option("Manchester City")
                 .id(1L)
-                .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
                 .build());
-        options.add(Vote.builder()
+        options.add(PollOption.builder()
                 .poll(1)
+                .ordinal(1)
                 .option("Liverpool")
-                .id(1L)
-                .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                .id(2L)
                 .build());
-        options.add(Vote.builder()
+        options.add(PollOption.builder()
                 .poll(1)
+                .ordinal(2)
                 .option("Arsenal")
-                .id(1L)
-                .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                .id(3L)
                 .build());
     }
 
@@ -68,13 +92,64 @@ public class VoteServiceTest {
         when(mockPoll.getQuestion()).thenReturn("Who will win the Premier League?");
         when(mockPoll.getId()).thenReturn(1L);
         when(pollRepository.saveAndFlush(any(Poll.class))).thenReturn(newPoll);
-        when(voteRepository.saveAllAndFlush(options)).thenReturn(options);
+        when(pollOptionRepository.saveAllAndFlush(options)).thenReturn(options);
 
         Long pollId = voteService.createPoll(mockPollRequest);
 
         assertEquals(1L, pollId);
     }
 
+    @Test
+    public void poll_detail_is_read_once() {
+        when(pollOptionRepository.findByPollOrderByOrdinal(2L)).thenReturn(options);
+        when(pollRepository.findById(2L)).thenReturn(Optional.of(Poll.builder().id(2L).question("Who will win the Premier League?").build()));
+
+        PollResponse first = voteService.getPoll("2");
+        PollResponse second = voteService.getPoll("2");
+
+        assertEquals(List.of("Manchester City", "Liverpool", "Arsenal"), second.options());
+        assertSame(first, second);
+        verify(pollRepository, times(1)).findById(2L);
+    }
+
+    @Test
+    public void created_poll_is_cached() {
+        Poll newPoll = Poll.builder().id(3L).question("Who will win the Premier League?").build();
+
+        when(pollRepository.saveAndFlush(any(Poll.class))).thenReturn(newPoll);
+        when(pollOptionRepository.saveAllAndFlush(any())).thenReturn(options);
+
+        voteService.createPoll(new PollRequest("Who will win the Premier League?", List.of("Manchester City", "Liverpool", "Arsenal")));
+
+        assertEquals(new PollResponse(3L, "Who will win the Premier League?", List.of("Manchester City", "Liverpool", "Arsenal")),
+                voteService.getPoll("3"));
+        verify(pollRepository, times(0)).findById(3L);
+    }
+
+    @Test
+    public void retried_vote_is_saved_once() {
+        when(pollOptionRepository.findByPollOrderByOrdinal(4L)).thenReturn(options);
+        when(voteRepository.insert(any(Vote.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<OptionResponse> first = voteService.castVote(4L, "Arsenal", null, "ballot-1");
+        List<OptionResponse> retry = voteService.castVote(4L, "Arsenal", null, "ballot-1");
+
+        assertSame(first, retry);
+        verify(voteRepository, times(1)).insert(any(Vote.class));
+    }
+
+    @Test
+    public void voter_votes_once_in_a_one_vote_per_voter_poll() {
+        when(pollOptionRepository.findByPollOrderByOrdinal(5L)).thenReturn(options);
+        when(pollRepository.findById(5L)).thenReturn(Optional.of(Poll.builder().id(5L).question("Who will win the Premier League?").oneVotePerVoter(true).build()));
+        when(voteRepository.insert(any(Vote.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        voteService.castVote(5L, "Arsenal", "voter-1", null);
+
+        assertThrows(AlreadyVotedException.class, () -> voteService.castVote(5L, "Liverpool", "voter-1", null));
+        verify(voteRepository, times(1)).insert(any(Vote.class));
+    }
+
     private static PollRequest getRequest() {
         return new PollRequest("Who will win the Premier League?", Arrays.asList(new String[]
                 {"Manchester City"}));
@@ -0,0 +1,108 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.VoterProperties;
+import com.dizplai.voting.error.AlreadyVotedException;
+import com.dizplai.voting.error.VoterTokenRequiredException;
+import com.dizplai.voting.model.Poll;
+import com.dizplai.voting.repository.PollRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VoterRegistryTest {
+    private final PollRepository pollRepository = mock(PollRepository.class);
+    private final VoteRepository voteRepository = mock(VoteRepository.class);
+
+    @TempDir
+    Path directory;
+
+    private VoterRegistry voterRegistry;
+
+    @BeforeEach()
+    public void setup() {
+        voterRegistry = registry();
+        when(pollRepository.findById(1L)).thenReturn(Optional.of(Poll.builder().id(1L).question("Who will win the Premier League?").oneVotePerVoter(true).build()));
+        when(pollRepository.findById(2L)).thenReturn(Optional.of(Poll.builder().id(2L).question("Who will win the Premier League?").build()));
+        when(voteRepository.streamVoterHashesByPoll(1L)).thenReturn(Stream.empty());
+    }
+
+    @Test
+    public void voter_votes_once() {
+        assertNotNull(voterRegistry.register(1L, "voter-1"));
+        assertNotNull(voterRegistry.register(1L, "voter-2"));
+
+        assertThrows(AlreadyVotedException.class, () -> voterRegistry.register(1L, "voter-1"));
+    }
+
+    @Test
+    public void vote_without_token_is_rejected() {
+        assertThrows(VoterTokenRequiredException.class, () -> voterRegistry.register(1L, null));
+    }
+
+    @Test
+    public void poll_without_limit_accepts_any_vote() {
+        assertNull(voterRegistry.register(2L, "voter-1"));
+        assertNull(voterRegistry.register(2L, "voter-1"));
+        assertNull(voterRegistry.register(2L, null));
+    }
+
+    @Test
+    public void released_voter_may_vote_again() {
+        Long hash = voterRegistry.register(1L, "voter-1");
+        voterRegistry.release(1L, hash);
+
+        assertEquals(hash, voterRegistry.register(1L, "voter-1"));
+    }
+
+    @Test
+    public void voters_are_reopened_without_reading_the_votes() {
+        voterRegistry.register(1L, "voter-1");
+        voterRegistry.stop();
+
+        VoterRegistry restarted = registry();
+
+        assertThrows(AlreadyVotedException.class, () -> restarted.register(1L, "voter-1"));
+        verify(voteRepository, times(1)).streamVoterHashesByPoll(1L);
+    }
+
+    @Test
+    public void missing_voters_are_rebuilt_from_the_votes() {
+        when(voteRepository.streamVoterHashesByPoll(1L)).thenReturn(Stream.of(VoterRegistry.hash(1L, "voter-1")));
+
+        assertThrows(AlreadyVotedException.class, () -> voterRegistry.register(1L, "voter-1"));
+        verify(voteRepository, never()).streamVoterHashesByPoll(2L);
+    }
+
+    @Test
+    public void unknown_poll_is_not_kept() {
+        assertFalse(voterRegistry.isLimited(3L));
+
+        // created under the identifier looked up before
+        when(pollRepository.findById(3L)).thenReturn(Optional.of(Poll.builder().id(3L).question("Who will win the FA Cup?").oneVotePerVoter(true).build()));
+        when(voteRepository.streamVoterHashesByPoll(3L)).thenReturn(Stream.empty());
+
+        assertTrue(voterRegistry.isLimited(3L));
+        assertThrows(VoterTokenRequiredException.class, () -> voterRegistry.register(3L, null));
+    }
+
+    private VoterRegistry registry() {
+        return new VoterRegistry(pollRepository, voteRepository, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                mock(TaskScheduler.class), new VoterProperties(directory, 16, Duration.ofSeconds(1)));
+    }
+}
@@ -0,0 +1,176 @@
+package com.dizplai.voting.service;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.config.WriteBehindProperties;
+import com.dizplai.voting.error.BallotQueueFullException;
+import com.dizplai.voting.model.Vote;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import com.dizplai.voting.tally.TallyEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WriteBehindBallotStoreTest {
+    private final VoteRepository voteRepository = mock(VoteRepository.class);
+    private final PollOptionTallyRepository pollOptionTallyRepository = mock(PollOptionTallyRepository.class);
+    private final TallyEngine tallyEngine = mock(TallyEngine.class);
+    private final VoterRegistry voterRegistry = mock(VoterRegistry.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @Test
+    public void queued_ballots_are_saved_in_batches_and_flushed_on_shutdown() throws Exception {
+        AtomicInteger saved = new AtomicInteger();
+        AtomicInteger largestBatch = new AtomicInteger();
+        when(voteRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<Vote> batch = invocation.getArgument(0);
+            saved.addAndGet(batch.size());
+            largestBatch.accumulateAndGet(batch.size(), Math::max);
+            return batch;
+        });
+
+        WriteBehindBallotStore store = new WriteBehindBallotStore(voteRepository, pollOptionTallyRepository, tallyEngine,
+                voterRegistry, transactionManager,
+                new WriteBehindProperties(true, 10_000, 100, Duration.ofSeconds(1), WriteBehindProperties.Backpressure.BLOCK),
+                new ClusterProperties("local", false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(30), ""),
+                new SimpleMeterRegistry());
+        for (int i = 0; i < 1_000; i++) {
+            store.store(vote());
+        }
+        store.shutdown();
+
+        assertEquals(1_000, saved.get());
+        assertEquals(100, largestBatch.get());
+        verify(pollOptionTallyRepository, times(10)).increment(1L, 3L, "local", 100L);
+        assertEquals(0, store.getQueueDepth());
+    }
+
+    @Test
+    public void full_queue_rejects_ballot() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(voteRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return invocation.getArgument(0);
+        });
+
+        WriteBehindBallotStore store = new WriteBehindBallotStore(voteRepository, pollOptionTallyRepository, tallyEngine,
+                voterRegistry, transactionManager,
+                new WriteBehindProperties(true, 2, 1, Duration.ZERO, WriteBehindProperties.Backpressure.REJECT),
+                new ClusterProperties("local", false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(30), ""),
+                new SimpleMeterRegistry());
+        store.store(vote());
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        store.store(vote());
+        store.store(vote());
+
+        assertThrows(BallotQueueFullException.class, () -> store.store(vote()));
+
+        release.countDown();
+        store.shutdown();
+    }
+
+    @Test
+    public void failed_batch_is_retried_until_it_is_saved() throws Exception {
+        CountDownLatch saved = new CountDownLatch(1);
+        when(voteRepository.insertAll(anyList()))
+                .thenThrow(new CannotAcquireLockException("Timeout trying to lock table"))
+                .thenAnswer(invocation -> {
+                    saved.countDown();
+                    return invocation.getArgument(0);
+                });
+
+        WriteBehindBallotStore store = store(Duration.ZERO);
+        store.store(vote());
+
+        assertTrue(saved.await(5, TimeUnit.SECONDS));
+        store.shutdown();
+
+        verify(voteRepository, times(2)).insertAll(anyList());
+        verify(pollOptionTallyRepository).increment(1L, 3L, "local", 1L);
+        verify(tallyEngine, never()).evict(anyLong());
+        verify(tallyEngine, never()).record(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void batch_failing_while_stopping_is_abandoned() throws Exception {
+        when(voteRepository.insertAll(anyList())).thenThrow(new CannotAcquireLockException("Timeout trying to lock table"));
+
+        WriteBehindBallotStore store = store(Duration.ZERO);
+        Vote vote = vote();
+        vote.setVoterHash(42L);
+        store.store(vote);
+        store.shutdown();
+
+        verify(tallyEngine).record(1L, 3L, -1);
+        verify(voterRegistry).release(1L, 42L);
+        verify(tallyEngine, never()).evict(anyLong());
+    }
+
+    @Test
+    public void ballot_with_a_stored_key_is_dropped_from_its_batch() throws Exception {
+        CountDownLatch saved = new CountDownLatch(1);
+        List<Vote> batch = new ArrayList<>();
+        when(voteRepository.insertAll(anyList()))
+                .thenThrow(new DataIntegrityViolationException("Unique index or primary key violation: uk_vote_poll_ballot_key"))
+                .thenAnswer(invocation -> {
+                    batch.addAll(invocation.getArgument(0));
+                    saved.countDown();
+                    return invocation.getArgument(0);
+                });
+        when(voteRepository.existsByPollAndBallotKeyAndIdNot(1L, "ballot-1", null)).thenReturn(true);
+
+        WriteBehindBallotStore store = store(Duration.ofSeconds(1));
+        Vote retried = vote();
+        retried.setBallotKey("ballot-1");
+        store.store(vote());
+        store.store(retried);
+        store.store(vote());
+
+        assertTrue(saved.await(5, TimeUnit.SECONDS));
+        store.shutdown();
+
+        assertEquals(2, batch.size());
+        assertTrue(batch.stream().allMatch(vote -> vote.getBallotKey() == null));
+        verify(pollOptionTallyRepository).increment(1L, 3L, "local", 2L);
+        verify(tallyEngine).record(1L, 3L, -1);
+    }
+
+    private WriteBehindBallotStore store(Duration flushInterval) {
+        return new WriteBehindBallotStore(voteRepository, pollOptionTallyRepository, tallyEngine, voterRegistry,
+                transactionManager,
+                new WriteBehindProperties(true, 100, 10, flushInterval, WriteBehindProperties.Backpressure.BLOCK),
+                new ClusterProperties("local", false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(30), ""),
+                new SimpleMeterRegistry());
+    }
+
+    private static Vote vote() {
+        return Vote.builder()
+                .poll(1)
+                .optionId(3L)
+                .castOn(LocalDateTime.of(2024, 9, 25, 10, 30, 45))
+                .build();
+    }
+}
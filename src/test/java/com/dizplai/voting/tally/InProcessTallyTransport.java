@@ -0,0 +1,31 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.model.TallyDelta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delivers the tallies to the TallyExchange of the peers in the same JVM, in place of HttpTallyTransport.
+ */
+public class InProcessTallyTransport implements TallyTransport {
+    private final List<TallyExchange> peers = new ArrayList<>();
+    private final List<TallyDelta> published = new ArrayList<>();
+
+    public void connect(TallyExchange peer) {
+        peers.add(peer);
+    }
+
+    @Override
+    public void publish(TallyDelta delta) {
+        published.add(delta);
+        peers.forEach(peer -> peer.receive(delta));
+    }
+
+    /**
+     * @return - the tallies published so far, oldest first
+     */
+    public List<TallyDelta> getPublished() {
+        return published;
+    }
+}
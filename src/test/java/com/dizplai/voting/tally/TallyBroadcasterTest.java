@@ -0,0 +1,200 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.StreamProperties;
+import com.dizplai.voting.error.PollNotFoundException;
+import com.dizplai.voting.model.OptionResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TallyBroadcasterTest {
+    private final TallyEngine tallyEngine = mock(TallyEngine.class);
+
+    private TallyBroadcaster tallyBroadcaster;
+
+    @BeforeEach()
+    public void setup() {
+        tallyBroadcaster = new TallyBroadcaster(tallyEngine, new ObjectMapper(), mock(TaskScheduler.class),
+                new StreamProperties(4), new SimpleMeterRegistry());
+        when(tallyEngine.find(1L)).thenReturn(new PollTally(1L));
+        when(tallyEngine.toPollResponses(1L, true)).thenReturn(shares("0%", "0%"));
+    }
+
+    @AfterEach()
+    public void teardown() {
+        tallyBroadcaster.stop();
+    }
+
+    @Test
+    public void viewer_is_sent_the_distribution_on_subscribe() throws Exception {
+        RecordingEmitter viewer = new RecordingEmitter();
+
+        tallyBroadcaster.subscribe(1L, viewer);
+        viewer.await(1);
+
+        assertEquals(1, viewer.events.size());
+        assertTrue(viewer.events.getFirst().contains("event:votes"));
+        assertTrue(viewer.events.getFirst().contains("\"option\":\"Arsenal\",\"count\":\"0%\""));
+    }
+
+    @Test
+    public void distribution_is_composed_once_for_all_viewers() throws Exception {
+        List<RecordingEmitter> viewers = List.of(new RecordingEmitter(), new RecordingEmitter(), new RecordingEmitter());
+        viewers.forEach(viewer -> tallyBroadcaster.subscribe(1L, viewer));
+
+        when(tallyEngine.toPollResponses(1L, true)).thenReturn(shares("25%", "75%"));
+        tallyBroadcaster.publish();
+
+        // once when the first viewer joined, once for the update
+        verify(tallyEngine, times(2)).toPollResponses(1L, true);
+        for (RecordingEmitter viewer : viewers) {
+            viewer.await(2);
+            assertTrue(viewer.events.getLast().contains("\"option\":\"Arsenal\",\"count\":\"75%\""));
+        }
+    }
+
+    @Test
+    public void unchanged_distribution_is_not_sent() throws Exception {
+        RecordingEmitter viewer = new RecordingEmitter();
+        tallyBroadcaster.subscribe(1L, viewer);
+        viewer.await(1);
+
+        tallyBroadcaster.publish();
+        tallyBroadcaster.publish();
+
+        assertEquals(1, viewer.events.size());
+    }
+
+    @Test
+    public void failed_viewer_is_dropped() throws Exception {
+        RecordingEmitter viewer = new RecordingEmitter();
+        tallyBroadcaster.subscribe(1L, viewer);
+        RecordingEmitter other = new RecordingEmitter();
+        tallyBroadcaster.subscribe(1L, other);
+        viewer.await(1);
+        other.await(1);
+        viewer.fail = true;
+
+        when(tallyEngine.toPollResponses(1L, true)).thenReturn(shares("25%", "75%"));
+        tallyBroadcaster.publish();
+        other.await(1);
+        assertTrue(viewer.completed.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, tallyBroadcaster.getViewers(1L));
+    }
+
+    @Test
+    public void slow_viewer_skips_to_the_latest_distribution() throws Exception {
+        RecordingEmitter slow = new RecordingEmitter();
+        RecordingEmitter other = new RecordingEmitter();
+        tallyBroadcaster.subscribe(1L, slow);
+        tallyBroadcaster.subscribe(1L, other);
+        slow.await(1);
+        other.await(1);
+        slow.blocked = new CountDownLatch(1);
+
+        when(tallyEngine.toPollResponses(1L, true)).thenReturn(shares("25%", "75%"));
+        tallyBroadcaster.publish();
+        assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+        when(tallyEngine.toPollResponses(1L, true)).thenReturn(shares("50%", "50%"));
+        tallyBroadcaster.publish();
+        when(tallyEngine.toPollResponses(1L, true)).thenReturn(shares("75%", "25%"));
+        tallyBroadcaster.publish();
+
+        // the other viewer is not held up by the slow one, it may skip to the latest distribution as well
+        assertTrue(other.awaitLast("\"option\":\"Arsenal\",\"count\":\"25%\""));
+        assertEquals(1, slow.events.size());
+        slow.blocked.countDown();
+        slow.await(2);
+
+        // the 50% update was replaced while the slow viewer was sending
+        assertEquals(3, slow.events.size());
+        assertTrue(slow.events.getLast().contains("\"option\":\"Arsenal\",\"count\":\"25%\""));
+    }
+
+    @Test
+    public void unknown_poll_is_not_subscribed() {
+        assertThrows(PollNotFoundException.class, () -> tallyBroadcaster.subscribe(2L, new RecordingEmitter()));
+
+        assertEquals(0, tallyBroadcaster.getViewers(2L));
+    }
+
+    private static List<OptionResponse> shares(String liverpool, String arsenal) {
+        return List.of(
+                OptionResponse.builder().option("Liverpool").count(liverpool).poll("1").build(),
+                OptionResponse.builder().option("Arsenal").count(arsenal).poll("1").build());
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final Semaphore sent = new Semaphore(0);
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile boolean fail;
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private volatile CountDownLatch blocked = new CountDownLatch(0);
+
+        @Override
+        public void send(Set<ResponseBodyEmitter.DataWithMediaType> items) throws IOException {
+            if (fail) {
+                throw new IOException("Broken pipe");
+            }
+            try {
+                if (blocked.getCount() > 0) {
+                    sending.countDown();
+                }
+                blocked.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            StringBuilder event = new StringBuilder();
+            items.forEach(item -> event.append(item.getData()));
+            events.add(event.toString());
+            sent.release();
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            completed.countDown();
+        }
+
+        /**
+         * Wait for a number of events sent since the last wait.
+         */
+        private void await(int count) throws InterruptedException {
+            assertTrue(sent.tryAcquire(count, 5, TimeUnit.SECONDS));
+        }
+
+        /**
+         * Wait for the last event sent to contain the given text.
+         */
+        private boolean awaitLast(String text) throws InterruptedException {
+            while (events.isEmpty() || !events.getLast().contains(text)) {
+                if (!sent.tryAcquire(5, TimeUnit.SECONDS)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.error.PollClosedException;
+import com.dizplai.voting.error.UnknownOptionException;
+import com.dizplai.voting.model.NodeCount;
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.Poll;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.PollResult;
+import com.dizplai.voting.model.PollStatus;
+import com.dizplai.voting.model.TallyDelta;
+import com.dizplai.voting.repository.PollOptionRepository;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.PollRepository;
+import com.dizplai.voting.repository.PollResultRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TallyEngineTest {
+    private final VoteRepository voteRepository = mock(VoteRepository.class);
+    private final PollOptionRepository pollOptionRepository = mock(PollOptionRepository.class);
+    private final PollOptionTallyRepository pollOptionTallyRepository = mock(PollOptionTallyRepository.class);
+    private final PollRepository pollRepository = mock(PollRepository.class);
+    private final PollResultRepository pollResultRepository = mock(PollResultRepository.class);
+    private final List<PollOption> options = new ArrayList<>();
+
+    private TallyEngine tallyEngine;
+
+    @BeforeEach()
+    public void setup() {
+        tallyEngine = new TallyEngine(voteRepository, pollRepository, pollOptionRepository, pollOptionTallyRepository,
+                pollResultRepository, new ClusterProperties("local", false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(30), ""));
+        for (String option : new String[] {"Manchester City", "Liverpool", "Arsenal"}) {
+            options.add(PollOption.builder()
+                    .id(options.size() + 10L)
+                    .poll(1)
+                    .ordinal(options.size())
+                    .option(option)
+                    .build());
+        }
+        when(pollOptionRepository.findByPollOrderByOrdinal(1L)).thenReturn(options);
+    }
+
+    @Test
+    public void tally_is_seeded_from_option_counts() {
+        when(pollOptionTallyRepository.findNodeCountsByPoll(1L)).thenReturn(List.of(new NodeCount(10L, "local", 3), new NodeCount(11L, "local", 10)));
+
+        assertEquals(Map.of("Manchester City", "23.08%", "Liverpool", "76.92%", "Arsenal", "0%"),
+                shares(tallyEngine.toPollResponses(1L, true)));
+        verify(voteRepository, times(0)).countVotesByOption(1L);
+    }
+
+    @Test
+    public void tally_is_seeded_from_votes_when_not_counted() {
+        when(voteRepository.countVotesByOption(1L)).thenReturn(List.of(new OptionCount(10L, 1), new OptionCount(12L, 3)));
+
+        assertEquals(Map.of("Manchester City", "25%", "Liverpool", "0%", "Arsenal", "75%"),
+                shares(tallyEngine.toPollResponses(1L, true)));
+    }
+
+    @Test
+    public void recorded_votes_are_counted_without_reloading() {
+        for (int i = 0; i < 3; i++) {
+            tallyEngine.record(1L, tallyEngine.resolve(1L, "Arsenal").getId());
+        }
+        tallyEngine.record(1L, tallyEngine.resolve(1L, "Liverpool").getId());
+
+        assertEquals(Map.of("Manchester City", "0%", "Liverpool", "25%", "Arsenal", "75%"),
+                shares(tallyEngine.toPollResponses(1L, true)));
+        verify(pollOptionRepository, times(1)).findByPollOrderByOrdinal(1L);
+        verify(voteRepository, times(1)).countVotesByOption(1L);
+    }
+
+    @Test
+    public void options_are_listed_without_vote_share() {
+        List<OptionResponse> responses = tallyEngine.toPollResponses(1L, false);
+
+        assertEquals(3, responses.size());
+        responses.forEach(response -> assertEquals(null, response.count()));
+        responses.forEach(response -> assertEquals("1", response.poll()));
+    }
+
+    @Test
+    public void vote_for_unknown_option_is_rejected() {
+        assertThrows(UnknownOptionException.class, () -> tallyEngine.resolve(1L, "Everton"));
+        assertThrows(UnknownOptionException.class, () -> tallyEngine.resolve(1L, null));
+
+        assertEquals(3, tallyEngine.toPollResponses(1L, true).size());
+        verify(pollOptionRepository, never()).saveAndFlush(any(PollOption.class));
+    }
+
+    @Test
+    public void vote_for_unknown_poll_is_rejected_and_not_kept() {
+        assertThrows(UnknownOptionException.class, () -> tallyEngine.resolve(2L, "Arsenal"));
+
+        assertTrue(tallyEngine.getTallies().isEmpty());
+    }
+
+    @Test
+    public void poll_found_while_it_is_seeded_is_loaded_once() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(pollOptionRepository.findByPollOrderByOrdinal(1L)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            return options;
+        });
+        AtomicReference<PollTally> found = new AtomicReference<>();
+        AtomicReference<PollTally> seeded = new AtomicReference<>();
+
+        Thread finder = new Thread(() -> found.set(tallyEngine.find(1L)));
+        finder.start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Thread seeder = new Thread(() -> seeded.set(tallyEngine.seed(1L)));
+        seeder.start();
+        // waiting for the lock held by the finder
+        while (seeder.isAlive() && seeder.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+        finder.join();
+        seeder.join();
+
+        assertSame(found.get(), seeded.get());
+        verify(pollOptionRepository, times(1)).findByPollOrderByOrdinal(1L);
+    }
+
+    @Test
+    public void options_beyond_the_array_limit_are_found() {
+        List<PollOption> many = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            many.add(PollOption.builder().id(100L + i).poll(3).ordinal(i).option("Option " + i).build());
+        }
+        when(pollOptionRepository.findByPollOrderByOrdinal(3L)).thenReturn(many);
+
+        assertEquals(109L, tallyEngine.resolve(3L, "Option 9").getId());
+        assertEquals(100L, tallyEngine.resolve(3L, "Option 0").getId());
+        assertThrows(UnknownOptionException.class, () -> tallyEngine.resolve(3L, "Option 10"));
+    }
+
+    @Test
+    public void vote_for_closed_poll_is_rejected() {
+        when(pollRepository.findById(1L)).thenReturn(Optional.of(Poll.builder().id(1L)
+                .closesAt(LocalDateTime.now().minusSeconds(1)).status(PollStatus.OPEN).build()));
+
+        assertThrows(PollClosedException.class, () -> tallyEngine.resolve(1L, "Arsenal"));
+        assertThrows(UnknownOptionException.class, () -> tallyEngine.resolve(1L, "Everton"));
+    }
+
+    @Test
+    public void closed_poll_is_seeded_from_its_results_and_frozen() {
+        when(pollRepository.findById(1L)).thenReturn(Optional.of(Poll.builder().id(1L)
+                .closesAt(LocalDateTime.now().minusHours(1)).status(PollStatus.ARCHIVED).build()));
+        when(pollResultRepository.findByPoll(1L)).thenReturn(List.of(new PollResult(1L, 10L, 1), new PollResult(1L, 12L, 3)));
+
+        PollTally tally = tallyEngine.seed(1L);
+        tally.increment(11L);
+        tally.merge("local", List.of(new TallyDelta.Counter(1L, "peer", 11L, 5, 0)));
+
+        assertTrue(tally.isFrozen());
+        assertTrue(tally.getCounters("local").isEmpty());
+        assertEquals(Map.of("Manchester City", "25%", "Liverpool", "0%", "Arsenal", "75%"),
+                shares(tallyEngine.toPollResponses(1L, true)));
+        verify(pollOptionTallyRepository, never()).findNodeCountsByPoll(1L);
+        verify(voteRepository, never()).countVotesByOption(1L);
+    }
+
+    @Test
+    public void unknown_poll_returns_no_options() {
+        assertTrue(tallyEngine.toPollResponses(2L, true).isEmpty());
+    }
+
+    private static Map<String, String> shares(List<OptionResponse> responses) {
+        return responses.stream().collect(Collectors.toMap(OptionResponse::option, OptionResponse::count));
+    }
+}
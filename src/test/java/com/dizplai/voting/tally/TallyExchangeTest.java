@@ -0,0 +1,141 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.TallyDelta;
+import com.dizplai.voting.repository.PollOptionRepository;
+import com.dizplai.voting.repository.PollOptionTallyRepository;
+import com.dizplai.voting.repository.PollRepository;
+import com.dizplai.voting.repository.PollResultRepository;
+import com.dizplai.voting.repository.VoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TallyExchangeTest {
+    private static final List<PollOption> OPTIONS = List.of(
+            PollOption.builder().id(10L).poll(1).ordinal(0).option("Arsenal").build(),
+            PollOption.builder().id(11L).poll(1).ordinal(1).option("Liverpool").build());
+
+    @Test
+    public void votes_of_both_nodes_are_merged() {
+        Node first = new Node("voting-api-1", Duration.ofSeconds(30));
+        Node second = new Node("voting-api-2", Duration.ofSeconds(30));
+        first.connect(second);
+
+        first.vote(10L, 3);
+        second.vote(10L, 1);
+        second.vote(11L, 2);
+        first.exchange.exchange();
+        second.exchange.exchange();
+
+        assertEquals(Map.of("Arsenal", "66.67%", "Liverpool", "33.33%"), first.shares());
+        assertEquals(6, first.total());
+        assertEquals(Map.of("Arsenal", "66.67%", "Liverpool", "33.33%"), second.shares());
+        assertEquals(6, second.total());
+    }
+
+    @Test
+    public void tallies_delivered_twice_are_counted_once() {
+        Node first = new Node("voting-api-1", Duration.ofSeconds(30));
+        Node second = new Node("voting-api-2", Duration.ofSeconds(30));
+        first.connect(second);
+
+        first.vote(11L, 5);
+        first.exchange.exchange();
+        TallyDelta delta = first.transport.getPublished().getLast();
+        second.exchange.receive(delta);
+        second.exchange.receive(delta);
+
+        assertEquals(Map.of("Arsenal", "0%", "Liverpool", "100%"), second.shares());
+        assertEquals(5, second.total());
+    }
+
+    @Test
+    public void removed_votes_are_merged() {
+        Node first = new Node("voting-api-1", Duration.ofSeconds(30));
+        Node second = new Node("voting-api-2", Duration.ofSeconds(30));
+        first.connect(second);
+
+        first.vote(10L, 3);
+        first.exchange.exchange();
+        first.vote(10L, -1);
+        first.exchange.exchange();
+
+        assertEquals(Map.of("Arsenal", "100%", "Liverpool", "0%"), second.shares());
+        assertEquals(2, second.total());
+        assertEquals(2, first.transport.getPublished().size());
+    }
+
+    @Test
+    public void restarted_node_takes_its_votes_back_from_a_peer() {
+        Node first = new Node("voting-api-1", Duration.ofSeconds(30));
+        Node second = new Node("voting-api-2", Duration.ZERO);
+        first.connect(second);
+        first.vote(10L, 4);
+        first.exchange.exchange();
+
+        // the votes of the first node were not stored before it stopped
+        Node restarted = new Node("voting-api-1", Duration.ofSeconds(30));
+        restarted.connect(second);
+        assertEquals(0, restarted.total());
+        second.exchange.exchange();
+
+        assertEquals(Map.of("Arsenal", "100%", "Liverpool", "0%"), restarted.shares());
+        assertEquals(4, restarted.total());
+        restarted.vote(10L, 1);
+        restarted.exchange.exchange();
+        assertEquals(5, second.total());
+    }
+
+    /**
+     * An instance with its own tallies, data store and transport.
+     */
+    private static class Node {
+        private final TallyEngine tallyEngine;
+        private final InProcessTallyTransport transport = new InProcessTallyTransport();
+        private final TallyExchange exchange;
+
+        Node(String nodeId, Duration fullStateInterval) {
+            PollOptionRepository pollOptionRepository = mock(PollOptionRepository.class);
+            when(pollOptionRepository.findByPollOrderByOrdinal(1L)).thenReturn(OPTIONS);
+            ClusterProperties properties = new ClusterProperties(nodeId, true, List.of(), Duration.ofSeconds(1),
+                    fullStateInterval, "secret");
+            tallyEngine = new TallyEngine(mock(VoteRepository.class), mock(PollRepository.class), pollOptionRepository,
+                    mock(PollOptionTallyRepository.class), mock(PollResultRepository.class), properties);
+            exchange = new TallyExchange(tallyEngine, transport, mock(TaskScheduler.class), properties,
+                    new SimpleMeterRegistry());
+        }
+
+        void connect(Node peer) {
+            transport.connect(peer.exchange);
+            peer.transport.connect(exchange);
+        }
+
+        void vote(long optionId, long votes) {
+            tallyEngine.record(1L, optionId, votes);
+        }
+
+        /**
+         * The share of each option, the counts are only listed with the shares since the percentages were added.
+         */
+        Map<String, String> shares() {
+            return tallyEngine.toPollResponses(1L, true).stream()
+                    .collect(Collectors.toMap(OptionResponse::option, OptionResponse::count));
+        }
+
+        long total() {
+            return tallyEngine.seed(1L).getTotal();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.model.PollOption;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class VoteRateMeterTest {
+    private final TallyEngine tallyEngine = mock(TallyEngine.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PollTally tally = new PollTally(1L);
+
+    private VoteRateMeter voteRateMeter;
+
+    @BeforeEach()
+    public void setup() {
+        tally.addOption(PollOption.builder().id(10L).poll(1).ordinal(0).option("Arsenal").build());
+        when(tallyEngine.getTallies()).thenReturn(List.of(tally));
+        voteRateMeter = new VoteRateMeter(tallyEngine, meterRegistry);
+    }
+
+    @Test
+    public void rate_of_poll_with_votes_is_published() throws Exception {
+        voteRateMeter.sample();
+        tally.add(10L, 50);
+        Thread.sleep(10);
+        voteRateMeter.sample();
+
+        Gauge rate = meterRegistry.find(VoteRateMeter.RATE).tag("poll", "1").gauge();
+        assertTrue(rate.value() > 0);
+    }
+
+    @Test
+    public void poll_without_votes_is_not_published() {
+        voteRateMeter.sample();
+        voteRateMeter.sample();
+
+        assertNull(meterRegistry.find(VoteRateMeter.RATE).tag("poll", "1").gauge());
+    }
+}
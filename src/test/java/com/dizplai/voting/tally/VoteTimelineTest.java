@@ -0,0 +1,141 @@
+package com.dizplai.voting.tally;
+
+import com.dizplai.voting.config.ClusterProperties;
+import com.dizplai.voting.config.TimelineProperties;
+import com.dizplai.voting.model.PollOption;
+import com.dizplai.voting.model.TimelineCount;
+import com.dizplai.voting.model.TimelineResolution;
+import com.dizplai.voting.model.TimelineResponse;
+import com.dizplai.voting.repository.PollTimelineRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VoteTimelineTest {
+    // the start of an hour, so the first bucket of every width starts at it
+    private static final long START = 1_728_216_000L;
+
+    private final PollTimelineRepository pollTimelineRepository = mock(PollTimelineRepository.class);
+    private final TallyEngine tallyEngine = mock(TallyEngine.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+    private VoteTimeline voteTimeline;
+
+    @BeforeEach()
+    public void setup() {
+        PollTally tally = new PollTally(1L);
+        for (String option : new String[] {"Manchester City", "Liverpool", "Arsenal"}) {
+            tally.addOption(PollOption.builder()
+                    .id(tally.getOptionCount() + 10L)
+                    .poll(1)
+                    .ordinal(tally.getOptionCount())
+                    .option(option)
+                    .build());
+        }
+        when(tallyEngine.find(1L)).thenReturn(tally);
+        when(tallyEngine.seed(1L)).thenReturn(tally);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        voteTimeline = new VoteTimeline(pollTimelineRepository, tallyEngine, transactionTemplate, mock(TaskScheduler.class),
+                new ClusterProperties("local", false, List.of(), Duration.ofSeconds(1), Duration.ofSeconds(30), ""),
+                new TimelineProperties(4, Duration.ofSeconds(10)));
+    }
+
+    @Test
+    public void votes_are_counted_in_buckets_of_each_width() {
+        voteTimeline.record(1L, 10L, 2, START + 5);
+        voteTimeline.record(1L, 11L, 1, START + 15);
+        voteTimeline.record(1L, 10L, 1, START + 65);
+        voteTimeline.record(1L, 99L, 1, START + 65);
+
+        TimelineResponse seconds = voteTimeline.getTimeline(1L, TimelineResolution.TEN_SECONDS, 3, START + 70);
+        assertEquals(List.of("Manchester City", "Liverpool", "Arsenal"), seconds.options());
+        assertEquals(List.of(START + 50, START + 60, START + 70), seconds.buckets().stream()
+                .map(bucket -> bucket.start().atZone(ZoneId.systemDefault()).toEpochSecond()).toList());
+        assertArrayEquals(new long[] {0, 0, 0}, seconds.buckets().get(0).votes());
+        assertArrayEquals(new long[] {1, 0, 0}, seconds.buckets().get(1).votes());
+
+        TimelineResponse minutes = voteTimeline.getTimeline(1L, TimelineResolution.ONE_MINUTE, 2, START + 70);
+        assertArrayEquals(new long[] {2, 1, 0}, minutes.buckets().get(0).votes());
+        assertArrayEquals(new long[] {1, 0, 0}, minutes.buckets().get(1).votes());
+
+        TimelineResponse hours = voteTimeline.getTimeline(1L, TimelineResolution.ONE_HOUR, 1, START + 70);
+        assertArrayEquals(new long[] {3, 1, 0}, hours.buckets().getFirst().votes());
+
+        // the buckets asked for are held in memory
+        verify(pollTimelineRepository, never()).findCounts(anyLong(), anyInt(), anyLong(), anyLong(), anyString(), anyLong());
+    }
+
+    @Test
+    public void buckets_older_than_the_ring_are_read_from_the_rollup() {
+        long first = TimelineResolution.TEN_SECONDS.bucketOf(START);
+        voteTimeline.record(1L, 12L, 4, START + 55);
+        when(pollTimelineRepository.findCounts(1L, 10, first, first + 5, "local", first + 2))
+                .thenReturn(List.of(new TimelineCount(first, 10L, 7), new TimelineCount(first + 1, 12L, 1)));
+
+        TimelineResponse timeline = voteTimeline.getTimeline(1L, TimelineResolution.TEN_SECONDS, 6, START + 55);
+
+        assertEquals(6, timeline.buckets().size());
+        assertArrayEquals(new long[] {7, 0, 0}, timeline.buckets().get(0).votes());
+        assertArrayEquals(new long[] {0, 0, 1}, timeline.buckets().get(1).votes());
+        assertArrayEquals(new long[] {0, 0, 4}, timeline.buckets().get(5).votes());
+    }
+
+    @Test
+    public void timeline_not_in_memory_is_read_from_the_rollup() {
+        long bucket = TimelineResolution.ONE_HOUR.bucketOf(START);
+        when(pollTimelineRepository.findCounts(1L, 3600, bucket, bucket, "local", Long.MAX_VALUE))
+                .thenReturn(List.of(new TimelineCount(bucket, 11L, 42)));
+
+        TimelineResponse timeline = voteTimeline.getTimeline(1L, TimelineResolution.ONE_HOUR, 1, START + 70);
+
+        assertArrayEquals(new long[] {0, 42, 0}, timeline.buckets().getFirst().votes());
+    }
+
+    @Test
+    public void flush_adds_the_votes_counted_since_the_last_flush() {
+        long now = Instant.now().getEpochSecond();
+        long bucket = TimelineResolution.TEN_SECONDS.bucketOf(now);
+        // counted by this instance before it stopped
+        when(pollTimelineRepository.findNodeCounts(1L, 10, bucket - 3, "local"))
+                .thenReturn(List.of(new TimelineCount(bucket, 10L, 5)));
+
+        voteTimeline.record(1L, 10L, 2, now);
+        voteTimeline.flush();
+        voteTimeline.record(1L, 10L, 1, now);
+        voteTimeline.flush();
+        voteTimeline.flush();
+
+        verify(pollTimelineRepository).increment(1L, 10, bucket, 10L, "local", 2);
+        verify(pollTimelineRepository).increment(1L, 10, bucket, 10L, "local", 1);
+        verify(pollTimelineRepository).increment(1L, 60, TimelineResolution.ONE_MINUTE.bucketOf(now), 10L, "local", 2);
+        verify(pollTimelineRepository).increment(1L, 3600, TimelineResolution.ONE_HOUR.bucketOf(now), 10L, "local", 1);
+        verify(pollTimelineRepository, times(6)).increment(anyLong(), anyInt(), anyLong(), anyLong(), anyString(), anyLong());
+        assertArrayEquals(new long[] {8, 0, 0}, voteTimeline.getTimeline(1L, TimelineResolution.TEN_SECONDS, 1, now)
+                .buckets().getFirst().votes());
+    }
+}
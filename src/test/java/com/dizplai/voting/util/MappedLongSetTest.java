@@ -0,0 +1,81 @@
+package com.dizplai.voting.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedLongSetTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void values_are_added_once() {
+        MappedLongSet set = MappedLongSet.open(directory.resolve("poll-1.voters"), 16);
+
+        assertTrue(set.add(42L));
+        assertFalse(set.add(42L));
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+        assertTrue(set.contains(42L));
+        assertTrue(set.contains(0L));
+        assertFalse(set.contains(43L));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    void values_survive_reopening_the_file() {
+        Path path = directory.resolve("poll-1.voters");
+        MappedLongSet set = MappedLongSet.open(path, 16);
+        for (long value = 1; value <= 1000; value++) {
+            set.add(value * 7919);
+        }
+        set.close();
+
+        MappedLongSet reopened = MappedLongSet.open(path, 16);
+
+        assertEquals(1000, reopened.size());
+        for (long value = 1; value <= 1000; value++) {
+            assertTrue(reopened.contains(value * 7919));
+        }
+        assertFalse(reopened.add(7919L));
+    }
+
+    @Test
+    void table_grows_to_stay_below_the_load_factor() {
+        MappedLongSet set = MappedLongSet.open(directory.resolve("poll-1.voters"), 16);
+        for (long value = 1; value <= 100_000; value++) {
+            set.add(value);
+        }
+
+        // 100000 values fit in 2^18 slots at 70%
+        assertEquals(64 + (1 << 18) * 8L, set.footprint());
+        assertEquals(100_000, set.size());
+    }
+
+    @Test
+    void matches_a_hash_set_through_adds_and_removes() {
+        MappedLongSet set = MappedLongSet.open(directory.resolve("poll-1.voters"), 16);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            // a small range of values so that runs of slots are long and removes shift them
+            long value = random.nextInt(5_000) - 100;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        for (long value = -100; value < 4_900; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+}
@@ -1,12 +1,55 @@
 package com.dizplai.voting.util;
 
+import com.dizplai.voting.model.OptionCount;
+import com.dizplai.voting.model.OptionResponse;
+import com.dizplai.voting.model.PollOption;
 import org.junit.jupiter.api.Test;
 
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.Locale;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class MessageUtilTest {
 
     @Test
     void toPollResponses() {
+        List<OptionResponse> responses = MessageUtil.toPollResponses(new String[] {"Liverpool", "Manchester City", "Arsenal"},
+                new long[] {3, 10, 0}, "1", true);
+
+        assertEquals(List.of(
+                OptionResponse.builder().option("Liverpool").count("23.08%").poll("1").build(),
+                OptionResponse.builder().option("Manchester City").count("76.92%").poll("1").build(),
+                OptionResponse.builder().option("Arsenal").count("0%").poll("1").build()), responses);
+    }
+
+    @Test
+    void toPollResponses_from_option_counts() {
+        List<PollOption> options = List.of(
+                PollOption.builder().id(10L).poll(1).ordinal(0).option("Liverpool").build(),
+                PollOption.builder().id(11L).poll(1).ordinal(1).option("Manchester City").build(),
+                PollOption.builder().id(12L).poll(1).ordinal(2).option("Arsenal").build());
+
+        List<OptionResponse> responses = MessageUtil.toPollResponses(options,
+                List.of(new OptionCount(11L, 10), new OptionCount(10L, 3)), "1", true);
+
+        assertEquals(List.of(
+                OptionResponse.builder().option("Liverpool").count("23.08%").poll("1").build(),
+                OptionResponse.builder().option("Manchester City").count("76.92%").poll("1").build(),
+                OptionResponse.builder().option("Arsenal").count("0%").poll("1").build()), responses);
+    }
+
+    @Test
+    void toPercentage_matches_decimal_format() {
+        // the percentages have a decimal point whatever the default locale
+        DecimalFormat format = new DecimalFormat("#.##", DecimalFormatSymbols.getInstance(Locale.ROOT));
+        for (int total = 1; total <= 1000; total++) {
+            for (int votes = 0; votes <= total; votes++) {
+                float percentage = (float) votes / total * 100.0f;
+                assertEquals(format.format(percentage) + "%", MessageUtil.toPercentage(percentage));
+            }
+        }
     }
-}
\ No newline at end of file
+}
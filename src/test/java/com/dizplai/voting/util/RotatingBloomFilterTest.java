@@ -0,0 +1,48 @@
+package com.dizplai.voting.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RotatingBloomFilterTest {
+
+    @Test
+    void added_keys_are_found() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10_000, 0.01, TimeUnit.MINUTES.toNanos(10));
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("1:ballot-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("1:ballot-" + i));
+        }
+    }
+
+    @Test
+    void false_positive_rate_is_near_the_configured_rate() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10_000, 0.01, TimeUnit.MINUTES.toNanos(10));
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("1:ballot-" + i);
+        }
+        int found = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("2:ballot-" + i)) {
+                found++;
+            }
+        }
+        assertTrue(found < 2_000, "false positives: " + found);
+    }
+
+    @Test
+    void keys_are_forgotten_after_two_windows() throws InterruptedException {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1_000, 0.01, TimeUnit.MILLISECONDS.toNanos(50));
+        filter.put("1:ballot-1");
+
+        Thread.sleep(60);
+        assertTrue(filter.mightContain("1:ballot-1"));
+
+        Thread.sleep(60);
+        assertFalse(filter.mightContain("1:ballot-1"));
+    }
+}